@@ -48,6 +48,7 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
 
     private static final Logger log = LoggerFactory.getLogger(BitronixTransaction.class);
 
+    private final BitronixTransactionManager transactionManager;
     private final XAResourceManager resourceManager;
     private final Scheduler<Synchronization> synchronizationScheduler = new Scheduler<>();
     private final List<TransactionStatusChangeListener> transactionStatusListeners = new ArrayList<>();
@@ -70,6 +71,16 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
 
 
     public BitronixTransaction() {
+        this(null);
+    }
+
+    /**
+     * Create a transaction whose status changes are accounted for by a transaction manager.
+     *
+     * @param transactionManager the transaction manager creating the transaction, or null.
+     */
+    BitronixTransaction(BitronixTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
         Uid gtrid = UidGenerator.generateUid();
         if (log.isDebugEnabled()) {
             log.debug("creating new transaction with GTRID [{}]", gtrid);
@@ -302,7 +313,7 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
                 log.debug("{} interested resource(s)", interestedResources.size());
             }
 
-            committer.commit(this, interestedResources);
+            committer.commit(this, interestedResources, resourceManager.size() == 1 || preparer.isOnePhase());
 
             if (resourceManager.size() == 0 && TransactionManagerServices.getConfiguration().isDebugZeroResourceTransaction()) {
                 log.warn(buildZeroTransactionDebugMessage(activationStackTrace, new StackTrace()));
@@ -406,24 +417,31 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
         taskScheduler.scheduleTransactionTimeout(this, timeoutDate);
     }
 
-
     public void setStatus(int status) throws BitronixSystemException {
         setStatus(status, resourceManager.collectUniqueNames());
     }
 
     public void setStatus(int status, Set<String> uniqueNames) throws BitronixSystemException {
         try {
-            boolean force = (resourceManager.size() > 1) && (status == Status.STATUS_COMMITTING);
+            // a transaction with zero or one writing resource is committed in a single phase, recovery never needs its records
+            boolean twoPhase = resourceManager.size() > 1 && !preparer.isOnePhase();
+            boolean journaled = twoPhase || !TransactionManagerServices.getConfiguration().isSkipSingleResourceJournaling();
+            boolean force = twoPhase && (status == Status.STATUS_COMMITTING);
             if (log.isDebugEnabled()) {
-                log.debug("changing transaction status to " + Decoder.decodeStatus(status) + (force ? " (forced)" : ""));
+                log.debug("changing transaction status to " + Decoder.decodeStatus(status) + (force ? " (forced)" : "") + (journaled ? "" : " (not journaled)"));
             }
 
             int oldStatus = this.status;
             this.status = status;
-            Journal journal = TransactionManagerServices.getJournal();
-            journal.log(status, resourceManager.getGtrid(), uniqueNames);
-            if (force) {
-                journal.force();
+            if (journaled) {
+                Journal journal = TransactionManagerServices.getJournal();
+                journal.log(status, resourceManager.getGtrid(), uniqueNames);
+                if (force) {
+                    journal.force();
+                }
+            }
+            if (transactionManager != null) {
+                transactionManager.statusChanged(journaled);
             }
 
             if (status == Status.STATUS_ACTIVE) {
@@ -545,7 +563,14 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
      * @throws BitronixSystemException when a resource could not rollback prepapared state.
      */
     private void rollbackPrepareFailure(RollbackException rbEx) throws BitronixSystemException {
-        List<XAResourceHolderState> interestedResources = resourceManager.getAllResources();
+        List<XAResourceHolderState> interestedResources = new ArrayList<>(resourceManager.getAllResources());
+        List<XAResourceHolderState> timedOutResources = preparer.getTimedOutResources();
+        if (!timedOutResources.isEmpty()) {
+            // their prepare call may still be running, rolling back concurrently on the same connection is unsafe
+            log.warn("not rolling back resource(s) " + Decoder.collectResourcesNames(timedOutResources) +
+                    " which did not answer prepare in time, leaving them to the recoverer");
+            interestedResources.removeIf(resource -> containsSame(timedOutResources, resource));
+        }
         try {
             rollbacker.rollback(this, interestedResources);
             if (log.isDebugEnabled()) {
@@ -568,6 +593,15 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
         }
     }
 
+    private static boolean containsSame(List<XAResourceHolderState> resources, XAResourceHolderState resource) {
+        for (XAResourceHolderState candidate : resources) {
+            if (candidate == resource) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Run all registered Synchronizations' beforeCompletion() method. Be aware that this method can change the
      * transaction status to mark it as rollback only for instance.
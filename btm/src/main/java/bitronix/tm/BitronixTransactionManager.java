@@ -37,18 +37,22 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Implementation of {@link TransactionManager} and {@link UserTransaction}.
  *
  * @author Ludovic Orban
  */
-public class BitronixTransactionManager implements TransactionManager, UserTransaction, Referenceable, Service {
+public class BitronixTransactionManager implements TransactionManager, UserTransaction, Referenceable, Service, BitronixTransactionManagerMBean {
 
     private static final Logger log = LoggerFactory.getLogger(BitronixTransactionManager.class);
     private static final String MDC_GTRID_KEY = "btm-gtrid";
 
     private final SortedMap<BitronixTransaction, ClearContextSynchronization> inFlightTransactions;
+    private final LongAdder journaledStatusChanges = new LongAdder();
+    private final LongAdder skippedStatusChanges = new LongAdder();
+    private final String jmxName;
 
     private volatile boolean shuttingDown;
 
@@ -83,6 +87,10 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
             LocalDateTime nextExecutionDate = Instant.ofEpochMilli(MonotonicClock.currentTimeMillis()).plus(backgroundRecoveryInterval)
                     .atZone(ZoneId.systemDefault()).toLocalDateTime();
             TransactionManagerServices.getTaskScheduler().scheduleRecovery(TransactionManagerServices.getRecoverer(), nextExecutionDate);
+
+            String serverId = configuration.getServerId();
+            jmxName = "bitronix.tm:type=TransactionManager,ServerId=" + ManagementRegistrar.makeValidName(serverId == null ? "" : serverId);
+            ManagementRegistrar.register(jmxName, this);
         } catch (IOException ex) {
             throw new InitializationException("cannot open disk journal", ex);
         } catch (Exception ex) {
@@ -336,6 +344,42 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
         }
     }
 
+    /**
+     * Return the amount of transaction status changes which got written to the journal since this transaction manager
+     * got started. Reset on shutdown.
+     *
+     * @return the amount of journaled status changes.
+     */
+    @Override
+    public long getJournaledStatusChangeCount() {
+        return journaledStatusChanges.sum();
+    }
+
+    /**
+     * Return the amount of transaction status changes which were not written to the journal because the transaction
+     * had at most one enlisted resource, since this transaction manager got started. Reset on shutdown.
+     *
+     * @return the amount of skipped status changes.
+     * @see bitronix.tm.Configuration#isSkipSingleResourceJournaling()
+     */
+    @Override
+    public long getSkippedStatusChangeCount() {
+        return skippedStatusChanges.sum();
+    }
+
+    /**
+     * Account for a status change of a transaction created by this transaction manager.
+     *
+     * @param journaled true if the status change got written to the journal, false if it was skipped.
+     */
+    void statusChanged(boolean journaled) {
+        if (journaled) {
+            journaledStatusChanges.increment();
+        } else {
+            skippedStatusChanges.increment();
+        }
+    }
+
     /**
      * Get the transaction currently registered on the current thread context.
      *
@@ -393,6 +437,9 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
 
         log.info("shutting down Bitronix Transaction Manager");
         internalShutdown();
+        ManagementRegistrar.unregister(jmxName);
+        journaledStatusChanges.reset();
+        skippedStatusChanges.reset();
 
         if (log.isDebugEnabled()) {
             log.debug("shutting down resource loader");
@@ -494,7 +541,7 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
      * @return the created transaction.
      */
     private BitronixTransaction createTransaction() {
-        BitronixTransaction transaction = new BitronixTransaction();
+        BitronixTransaction transaction = new BitronixTransaction(this);
         ThreadContext.getThreadContext().setTransaction(transaction);
         MDC.put(MDC_GTRID_KEY, transaction.getGtrid());
 
@@ -55,12 +55,30 @@ public class Configuration implements Service {
     private volatile String logPart2Filename;
     private volatile boolean forcedWriteEnabled;
     private volatile boolean forceBatchingEnabled;
+    private volatile boolean writeBatchingEnabled;
+    private volatile boolean directIoEnabled;
+    private volatile Duration forceBatchMaxWait;
+    private volatile Duration flushInterval;
+    private volatile int forceBatchMaxSize;
     private volatile int maxLogSizeInMb;
+    private volatile int logFormatVersion;
+    private volatile int checkpointIntervalInKb;
+    private volatile String segmentDirectory;
+    private volatile int segmentCount;
+    private volatile int shardCount;
+    private volatile int overflowThreshold;
+    private volatile String provisioning;
+    private volatile String replicationTarget;
     private volatile boolean filterLogStatus;
     private volatile boolean skipCorruptedLogs;
     private volatile boolean asynchronous2Pc;
+    private volatile String asyncExecutor;
+    private volatile int asyncExecutorCoreThreads;
+    private volatile int asyncExecutorMaxThreads;
+    private volatile int asyncExecutorQueueSize;
     private volatile boolean warnAboutZeroResourceTransaction;
     private volatile boolean debugZeroResourceTransaction;
+    private volatile boolean skipSingleResourceJournaling;
     private volatile Duration defaultTransactionTimeout;
     private volatile Duration gracefulShutdownInterval;
     private volatile Duration backgroundRecoveryInterval;
@@ -110,12 +128,30 @@ public class Configuration implements Service {
             logPart2Filename = getString(properties, "bitronix.tm.journal.disk.logPart2Filename", "btm2.tlog");
             forcedWriteEnabled = getBoolean(properties, "bitronix.tm.journal.disk.forcedWriteEnabled", true);
             forceBatchingEnabled = getBoolean(properties, "bitronix.tm.journal.disk.forceBatchingEnabled", true);
+            forceBatchMaxWait = getDuration(properties, "bitronix.tm.journal.disk.forceBatchMaxWait", Duration.ZERO);
+            forceBatchMaxSize = getInt(properties, "bitronix.tm.journal.disk.forceBatchMaxSize", 64);
+            flushInterval = getDuration(properties, "bitronix.tm.journal.disk.flushInterval", Duration.ZERO);
+            writeBatchingEnabled = getBoolean(properties, "bitronix.tm.journal.disk.writeBatchingEnabled", false);
+            directIoEnabled = getBoolean(properties, "bitronix.tm.journal.disk.directIoEnabled", false);
             maxLogSizeInMb = getInt(properties, "bitronix.tm.journal.disk.maxLogSize", 2);
+            logFormatVersion = getInt(properties, "bitronix.tm.journal.disk.logFormatVersion", 1);
+            checkpointIntervalInKb = getInt(properties, "bitronix.tm.journal.disk.checkpointIntervalInKb", 0);
+            segmentDirectory = getString(properties, "bitronix.tm.journal.disk.segmentDirectory", "btm-segments");
+            segmentCount = getInt(properties, "bitronix.tm.journal.disk.segmentCount", 4);
+            shardCount = getInt(properties, "bitronix.tm.journal.disk.shardCount", 4);
+            overflowThreshold = getInt(properties, "bitronix.tm.journal.disk.overflowThreshold", 0);
+            provisioning = getString(properties, "bitronix.tm.journal.disk.provisioning", "zero");
+            replicationTarget = getString(properties, "bitronix.tm.journal.disk.replicationTarget", null);
             filterLogStatus = getBoolean(properties, "bitronix.tm.journal.disk.filterLogStatus", false);
             skipCorruptedLogs = getBoolean(properties, "bitronix.tm.journal.disk.skipCorruptedLogs", false);
             asynchronous2Pc = getBoolean(properties, "bitronix.tm.2pc.async", false);
+            asyncExecutor = getString(properties, "bitronix.tm.2pc.asyncExecutor", "cached");
+            asyncExecutorCoreThreads = getInt(properties, "bitronix.tm.2pc.asyncExecutorCoreThreads", 8);
+            asyncExecutorMaxThreads = getInt(properties, "bitronix.tm.2pc.asyncExecutorMaxThreads", 64);
+            asyncExecutorQueueSize = getInt(properties, "bitronix.tm.2pc.asyncExecutorQueueSize", 1024);
             warnAboutZeroResourceTransaction = getBoolean(properties, "bitronix.tm.2pc.warnAboutZeroResourceTransactions", true);
             debugZeroResourceTransaction = getBoolean(properties, "bitronix.tm.2pc.debugZeroResourceTransactions", false);
+            skipSingleResourceJournaling = getBoolean(properties, "bitronix.tm.2pc.skipSingleResourceJournaling", false);
             defaultTransactionTimeout = getDuration(properties, "bitronix.tm.timer.defaultTransactionTimeout", Duration.ofSeconds(60L));
             gracefulShutdownInterval = getDuration(properties, "bitronix.tm.timer.gracefulShutdownInterval", Duration.ofSeconds(60L));
             backgroundRecoveryInterval = getDuration(properties, "bitronix.tm.timer.backgroundRecoveryInterval", Duration.ofSeconds(60L));
@@ -233,7 +269,8 @@ public class Configuration implements Service {
     }
 
     /**
-     * Are disk forces batched? Disabling batching can seriously lower the transaction manager's throughput.
+     * Are disk forces batched? When enabled, concurrent transactions requesting a disk force are grouped so that a
+     * single force covers all of them. Disabling batching can seriously lower the transaction manager's throughput.
      * <p>Property name:<br><b>bitronix.tm.journal.disk.forceBatchingEnabled -</b> <i>(defaults to true)</i></p>
      *
      * @return true if disk forces are batched, false otherwise.
@@ -251,11 +288,143 @@ public class Configuration implements Service {
      */
     public Configuration setForceBatchingEnabled(boolean forceBatchingEnabled) {
         checkNotStarted();
-        log.warn("forceBatchingEnabled is not longer used");
         this.forceBatchingEnabled = forceBatchingEnabled;
         return this;
     }
 
+    /**
+     * Maximum amount of time the thread performing a batched disk force waits for other transactions to join the
+     * batch before forcing. Raising this value trades a little latency for fewer disk forces.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.forceBatchMaxWait -</b> <i>(defaults to PT0S)</i></p>
+     *
+     * @return the maximum amount of time to wait for a batch to fill up.
+     * @see #isForceBatchingEnabled()
+     */
+    public Duration getForceBatchMaxWait() {
+        return forceBatchMaxWait;
+    }
+
+    /**
+     * Set the maximum amount of time the thread performing a batched disk force waits for other transactions to join
+     * the batch before forcing.
+     *
+     * @param forceBatchMaxWait the maximum amount of time to wait for a batch to fill up.
+     * @return this.
+     * @see #getForceBatchMaxWait()
+     */
+    public Configuration setForceBatchMaxWait(Duration forceBatchMaxWait) {
+        checkNotStarted();
+        this.forceBatchMaxWait = forceBatchMaxWait;
+        return this;
+    }
+
+    /**
+     * Amount of transactions in a batch after which the thread performing a batched disk force stops waiting for more
+     * to join. Only meaningful when {@link #getForceBatchMaxWait()} is not zero.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.forceBatchMaxSize -</b> <i>(defaults to 64)</i></p>
+     *
+     * @return the maximum batch size.
+     */
+    public int getForceBatchMaxSize() {
+        return forceBatchMaxSize;
+    }
+
+    /**
+     * Set the amount of transactions in a batch after which the thread performing a batched disk force stops waiting
+     * for more to join.
+     *
+     * @param forceBatchMaxSize the maximum batch size.
+     * @return this.
+     * @see #getForceBatchMaxSize()
+     */
+    public Configuration setForceBatchMaxSize(int forceBatchMaxSize) {
+        checkNotStarted();
+        this.forceBatchMaxSize = forceBatchMaxSize;
+        return this;
+    }
+
+    /**
+     * Interval at which a background thread forces the journal, relaxing durability. When not zero, transactions do
+     * not wait for the journal to be forced anymore and the records written during the last interval can be lost if
+     * the machine crashes. Unlike disabling {@link #isForcedWriteEnabled()}, the journal still regularly gets safely
+     * on disk.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.flushInterval -</b> <i>(defaults to PT0S)</i></p>
+     *
+     * @return the interval between two background forces, zero if every transaction forces the journal.
+     */
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Set the interval at which a background thread forces the journal, relaxing durability.
+     *
+     * @param flushInterval the interval between two background forces, zero if every transaction forces the journal.
+     * @return this.
+     * @see #getFlushInterval()
+     */
+    public Configuration setFlushInterval(Duration flushInterval) {
+        checkNotStarted();
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * Are journal writes batched? When enabled, records logged concurrently by several transactions are combined into
+     * a single gathering write call instead of one write call each. Records are only combined when they pile up behind
+     * a write in progress, no transaction ever waits for others to join a batch. Has no effect on memory mapped
+     * journals.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.writeBatchingEnabled -</b> <i>(defaults to false)</i></p>
+     *
+     * @return true if journal writes are batched, false otherwise.
+     */
+    public boolean isWriteBatchingEnabled() {
+        return writeBatchingEnabled;
+    }
+
+    /**
+     * Set if journal writes are batched.
+     *
+     * @param writeBatchingEnabled true if journal writes are batched, false otherwise.
+     * @return this.
+     * @see #isWriteBatchingEnabled()
+     */
+    public Configuration setWriteBatchingEnabled(boolean writeBatchingEnabled) {
+        checkNotStarted();
+        this.writeBatchingEnabled = writeBatchingEnabled;
+        return this;
+    }
+
+    /**
+     * Is the journal written with direct I/O? When enabled, journal fragments are opened with the
+     * <code>O_DIRECT</code> flag and written in whole blocks from aligned buffers, bypassing the operating system's
+     * page cache: the journal stops evicting pages of other applications and disk forces take a more predictable
+     * time. Writes are then never batched. The file system holding the journal must support direct I/O. Has no
+     * effect on memory mapped journals.
+     * <p>Records are not block-aligned so each write rewrites the whole last block of the log, forced records it
+     * holds included: a write torn by a crash can damage already committed records. Only enable this on storage
+     * guaranteeing atomic writes of file system blocks.</p>
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.directIoEnabled -</b> <i>(defaults to false)</i></p>
+     *
+     * @return true if the journal is written with direct I/O, false otherwise.
+     */
+    public boolean isDirectIoEnabled() {
+        return directIoEnabled;
+    }
+
+    /**
+     * Set if the journal is written with direct I/O.
+     *
+     * @param directIoEnabled true if the journal is written with direct I/O, false otherwise.
+     * @return this.
+     * @see #isDirectIoEnabled()
+     */
+    public Configuration setDirectIoEnabled(boolean directIoEnabled) {
+        checkNotStarted();
+        this.directIoEnabled = directIoEnabled;
+        return this;
+    }
+
     /**
      * Maximum size in megabytes of the journal fragments. Larger logs allow transactions to stay longer in-doubt but
      * the TM pauses longer when a fragment is full.
@@ -281,6 +450,219 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * Version of the format in which records are written to empty journal fragments. Version 2 interns the unique
+     * names in each fragment and uses variable length fields and CRC32C checksums, making records about half as
+     * large. Version 1 is the original format. Both formats can always be read, but older releases and tools only
+     * understand version 1 so switching to version 2 prevents going back to them. Fragments already holding records
+     * keep their format until they are reused.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.logFormatVersion -</b> <i>(defaults to 1)</i></p>
+     *
+     * @return the record format version, 1 or 2.
+     */
+    public int getLogFormatVersion() {
+        return logFormatVersion;
+    }
+
+    /**
+     * Set the version of the format in which records are written to empty journal fragments.
+     *
+     * @param logFormatVersion the record format version, 1 or 2.
+     * @return this.
+     * @see #getLogFormatVersion()
+     */
+    public Configuration setLogFormatVersion(int logFormatVersion) {
+        checkNotStarted();
+        this.logFormatVersion = logFormatVersion;
+        return this;
+    }
+
+    /**
+     * Amount of kilobytes written to the active journal fragment after which the dangling records are saved to a
+     * checkpoint file next to it. Opening the journal then only requires reading the records written after the last
+     * checkpoint instead of the whole fragment. A checkpoint is also saved when the journal gets closed. Checkpoints
+     * are taken by a background thread and only when forced writes are enabled. With a flush interval, they are only
+     * written after the periodic force covered their records. Set to 0 to disable checkpoints.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.checkpointIntervalInKb -</b> <i>(defaults to 0)</i></p>
+     *
+     * @return the amount of kilobytes written between checkpoints.
+     */
+    public int getCheckpointIntervalInKb() {
+        return checkpointIntervalInKb;
+    }
+
+    /**
+     * Set the amount of kilobytes written to the active journal fragment after which the dangling records are saved
+     * to a checkpoint file.
+     *
+     * @param checkpointIntervalInKb the amount of kilobytes written between checkpoints, 0 to disable them.
+     * @return this.
+     * @see #getCheckpointIntervalInKb()
+     */
+    public Configuration setCheckpointIntervalInKb(int checkpointIntervalInKb) {
+        checkNotStarted();
+        this.checkpointIntervalInKb = checkpointIntervalInKb;
+        return this;
+    }
+
+    /**
+     * Directory in which the segmented journal keeps its segment files.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.segmentDirectory -</b> <i>(defaults to btm-segments)</i></p>
+     *
+     * @return the segmented journal directory.
+     */
+    public String getSegmentDirectory() {
+        return segmentDirectory;
+    }
+
+    /**
+     * Set the directory in which the segmented journal keeps its segment files.
+     *
+     * @param segmentDirectory the segmented journal directory.
+     * @return this.
+     * @see #getSegmentDirectory()
+     */
+    public Configuration setSegmentDirectory(String segmentDirectory) {
+        checkNotStarted();
+        this.segmentDirectory = segmentDirectory;
+        return this;
+    }
+
+    /**
+     * Amount of segment files of the segmented journal, each of them {@link #getMaxLogSizeInMb()} large. More
+     * segments allow more transactions to stay in-doubt before the journal has to move their records to the active
+     * segment. Must be at least 2.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.segmentCount -</b> <i>(defaults to 4)</i></p>
+     *
+     * @return the amount of segment files.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Set the amount of segment files of the segmented journal.
+     *
+     * @param segmentCount the amount of segment files.
+     * @return this.
+     * @see #getSegmentCount()
+     */
+    public Configuration setSegmentCount(int segmentCount) {
+        checkNotStarted();
+        this.segmentCount = segmentCount;
+        return this;
+    }
+
+    /**
+     * Amount of independent pairs of log files of the sharded journal. The records of a transaction always go to the
+     * same shard, so more shards let more transactions log and force concurrently. Changing it between two runs is
+     * allowed, the in-doubt transactions get moved to their new shard when the journal is opened.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.shardCount -</b> <i>(defaults to 4)</i></p>
+     *
+     * @return the amount of shards.
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Set the amount of independent pairs of log files of the sharded journal.
+     *
+     * @param shardCount the amount of shards.
+     * @return this.
+     * @see #getShardCount()
+     */
+    public Configuration setShardCount(int shardCount) {
+        checkNotStarted();
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    /**
+     * Amount of dangling records the disk journal keeps in its log files. When more transactions are in-doubt during a
+     * rollover, ie: because a resource is down for long, the oldest ones are moved to an overflow store file next to
+     * the first log file so that they do not get copied on every rollover anymore. They are removed from it as they
+     * get committed, ie: by the recovery once the resource is back. Zero disables the overflow store.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.overflowThreshold -</b> <i>(defaults to 0)</i></p>
+     *
+     * @return the amount of dangling records kept in the log files, zero if they all are.
+     */
+    public int getOverflowThreshold() {
+        return overflowThreshold;
+    }
+
+    /**
+     * Set the amount of dangling records the disk journal keeps in its log files.
+     *
+     * @param overflowThreshold the amount of dangling records kept in the log files, zero if they all are.
+     * @return this.
+     * @see #getOverflowThreshold()
+     */
+    public Configuration setOverflowThreshold(int overflowThreshold) {
+        checkNotStarted();
+        this.overflowThreshold = overflowThreshold;
+        return this;
+    }
+
+    /**
+     * How the disk journals allocate the disk space of new log files. Can be <code>zero</code>, <code>sparse</code> or
+     * <code>background</code>.
+     * <p><code>zero</code> fills the files with zeroes when they get created so that all their blocks are allocated
+     * upfront, <code>sparse</code> only sets their length and lets the file system allocate blocks as records get
+     * written, <code>background</code> creates them sparse then zero fills the log file not in use on a background
+     * thread while the transaction manager runs. The segmented journal zero fills its segments unless this is
+     * <code>sparse</code>. This only matters when log files get created, ie: on the first start.</p>
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.provisioning -</b> <i>(defaults to zero)</i></p>
+     *
+     * @return the provisioning of new log files.
+     */
+    public String getProvisioning() {
+        return provisioning;
+    }
+
+    /**
+     * Set how the disk journals allocate the disk space of new log files. Can be <code>zero</code>,
+     * <code>sparse</code> or <code>background</code>.
+     *
+     * @param provisioning the provisioning of new log files.
+     * @return this.
+     * @see #getProvisioning()
+     */
+    public Configuration setProvisioning(String provisioning) {
+        checkNotStarted();
+        this.provisioning = provisioning;
+        return this;
+    }
+
+    /**
+     * Address of the {@link bitronix.tm.journal.JournalStandby} the disk journal ships its records to, as
+     * <code>host:port</code>. Records are shipped by a background thread which reconnects whenever the connection is
+     * lost. Forcing the journal waits until the standby acknowledged the committing records, as long as it is
+     * connected and answers within 5 seconds, otherwise the standby gets resynchronized once it is back: a standby
+     * which was not connected when the primary died may miss committing records and is not a safe recovery source.
+     * Other records may be missed by the standby, which then only recovers transactions that already completed. The
+     * sharded journal does not replicate. Null disables replication.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.replicationTarget -</b> <i>(defaults to null)</i></p>
+     *
+     * @return the address of the journal standby.
+     */
+    public String getReplicationTarget() {
+        return replicationTarget;
+    }
+
+    /**
+     * Set the address of the {@link bitronix.tm.journal.JournalStandby} the disk journal ships its records to.
+     *
+     * @param replicationTarget the address of the journal standby, as <code>host:port</code>.
+     * @return this.
+     * @see #getReplicationTarget()
+     */
+    public Configuration setReplicationTarget(String replicationTarget) {
+        checkNotStarted();
+        this.replicationTarget = replicationTarget;
+        return this;
+    }
+
     /**
      * Should only mandatory logs be written? Enabling this parameter lowers space usage of the fragments but makes
      * debugging more complex.
@@ -356,6 +738,111 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * The threads executing two phase commit when it is asynchronous. Can be <code>cached</code>, <code>virtual</code>
+     * or <code>bounded</code>.
+     * <p><code>cached</code> runs the XA calls on a cached pool of platform threads, <code>virtual</code> runs each of
+     * them on its own virtual thread which makes many concurrent commits much cheaper. Virtual threads require a JVM
+     * supporting them, the cached pool is used instead when they are not available. <code>bounded</code> runs them on
+     * a pool of platform threads sized by {@link #getAsyncExecutorCoreThreads()}, {@link #getAsyncExecutorMaxThreads()}
+     * and {@link #getAsyncExecutorQueueSize()}. This is ignored unless {@link #isAsynchronous2Pc()} is true.</p>
+     * <p>Property name:<br><b>bitronix.tm.2pc.asyncExecutor -</b> <i>(defaults to cached)</i></p>
+     *
+     * @return the threads executing asynchronous two phase commit.
+     */
+    public String getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Set the threads executing two phase commit when it is asynchronous. Can be <code>cached</code>,
+     * <code>virtual</code> or <code>bounded</code>.
+     *
+     * @param asyncExecutor the threads executing asynchronous two phase commit.
+     * @return this.
+     * @see #getAsyncExecutor()
+     */
+    public Configuration setAsyncExecutor(String asyncExecutor) {
+        checkNotStarted();
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
+    /**
+     * The amount of threads the <code>bounded</code> asynchronous two phase commit executor keeps even when idle.
+     * <p>Property name:<br><b>bitronix.tm.2pc.asyncExecutorCoreThreads -</b> <i>(defaults to 8)</i></p>
+     *
+     * @return the amount of core threads of the bounded executor.
+     * @see #getAsyncExecutor()
+     */
+    public int getAsyncExecutorCoreThreads() {
+        return asyncExecutorCoreThreads;
+    }
+
+    /**
+     * Set the amount of threads the <code>bounded</code> asynchronous two phase commit executor keeps even when idle.
+     *
+     * @param asyncExecutorCoreThreads the amount of core threads of the bounded executor.
+     * @return this.
+     * @see #getAsyncExecutorCoreThreads()
+     */
+    public Configuration setAsyncExecutorCoreThreads(int asyncExecutorCoreThreads) {
+        checkNotStarted();
+        this.asyncExecutorCoreThreads = asyncExecutorCoreThreads;
+        return this;
+    }
+
+    /**
+     * The maximum amount of threads of the <code>bounded</code> asynchronous two phase commit executor. Threads above
+     * the core ones are only started when the queue is full, then the submitting threads execute the jobs themselves.
+     * <p>Property name:<br><b>bitronix.tm.2pc.asyncExecutorMaxThreads -</b> <i>(defaults to 64)</i></p>
+     *
+     * @return the maximum amount of threads of the bounded executor.
+     * @see #getAsyncExecutor()
+     */
+    public int getAsyncExecutorMaxThreads() {
+        return asyncExecutorMaxThreads;
+    }
+
+    /**
+     * Set the maximum amount of threads of the <code>bounded</code> asynchronous two phase commit executor.
+     *
+     * @param asyncExecutorMaxThreads the maximum amount of threads of the bounded executor.
+     * @return this.
+     * @see #getAsyncExecutorMaxThreads()
+     */
+    public Configuration setAsyncExecutorMaxThreads(int asyncExecutorMaxThreads) {
+        checkNotStarted();
+        this.asyncExecutorMaxThreads = asyncExecutorMaxThreads;
+        return this;
+    }
+
+    /**
+     * The amount of jobs the <code>bounded</code> asynchronous two phase commit executor queues when all its core
+     * threads are busy. 0 disables queuing.
+     * <p>Property name:<br><b>bitronix.tm.2pc.asyncExecutorQueueSize -</b> <i>(defaults to 1024)</i></p>
+     *
+     * @return the queue size of the bounded executor.
+     * @see #getAsyncExecutor()
+     */
+    public int getAsyncExecutorQueueSize() {
+        return asyncExecutorQueueSize;
+    }
+
+    /**
+     * Set the amount of jobs the <code>bounded</code> asynchronous two phase commit executor queues when all its core
+     * threads are busy.
+     *
+     * @param asyncExecutorQueueSize the queue size of the bounded executor.
+     * @return this.
+     * @see #getAsyncExecutorQueueSize()
+     */
+    public Configuration setAsyncExecutorQueueSize(int asyncExecutorQueueSize) {
+        checkNotStarted();
+        this.asyncExecutorQueueSize = asyncExecutorQueueSize;
+        return this;
+    }
+
     /**
      * Should transactions executed without a single enlisted resource result in a warning or not? Most of the time
      * transactions executed with no enlisted resource reflect a bug or a mis-configuration somewhere.
@@ -410,6 +897,33 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * Should the status changes of transactions with zero or one enlisted resource be kept out of the journal? Those
+     * transactions are committed in a single phase so recovery never needs their records, skipping them saves a
+     * journal write for each status change. This also applies to transactions in which a single resource wrote when
+     * the others are detected as read-only, see {@link bitronix.tm.resource.jdbc.PoolingDataSource#isDetectReadOnlyBranches()}.
+     * <p>Property name:<br><b>bitronix.tm.2pc.skipSingleResourceJournaling -</b> <i>(defaults to false)</i></p>
+     *
+     * @return true if status changes of transactions with zero or one enlisted resource should not be journaled.
+     */
+    public boolean isSkipSingleResourceJournaling() {
+        return skipSingleResourceJournaling;
+    }
+
+    /**
+     * Set if status changes of transactions with zero or one enlisted resource should be kept out of the journal.
+     *
+     * @param skipSingleResourceJournaling true if status changes of transactions with zero or one enlisted resource
+     *                                     should not be journaled.
+     * @return this.
+     * @see #isSkipSingleResourceJournaling()
+     */
+    public Configuration setSkipSingleResourceJournaling(boolean skipSingleResourceJournaling) {
+        checkNotStarted();
+        this.skipSingleResourceJournaling = skipSingleResourceJournaling;
+        return this;
+    }
+
     /**
      * Default transaction timeout in seconds.
      * <p>Property name:<br><b>bitronix.tm.timer.defaultTransactionTimeout -</b> <i>(defaults to 60)</i></p>
@@ -599,7 +1113,12 @@ public class Configuration implements Service {
     }
 
     /**
-     * Get the journal implementation. Can be <code>disk</code>, <code>null</code> or a class name.
+     * Get the journal implementation. Can be <code>disk</code>, <code>mmap</code>, <code>segmented</code>,
+     * <code>sharded</code>, <code>null</code> or a class name.
+     * <p><code>mmap</code> is the disk journal with memory mapped log files, <code>segmented</code> is the journal
+     * rolling over a directory of segment files, <code>sharded</code> is the journal spreading transactions over
+     * several disk journals.</p>
+     * <p>Property name:<br><b>bitronix.tm.journal -</b> <i>(defaults to disk)</i></p>
      *
      * @return the journal name.
      */
@@ -608,7 +1127,8 @@ public class Configuration implements Service {
     }
 
     /**
-     * Set the journal name. Can be <code>disk</code>, <code>null</code> or a class name.
+     * Set the journal name. Can be <code>disk</code>, <code>mmap</code>, <code>segmented</code>, <code>sharded</code>,
+     * <code>null</code> or a class name.
      *
      * @param journal the journal name.
      * @return this.
@@ -18,12 +18,16 @@ package bitronix.tm;
 import bitronix.tm.journal.DiskJournal;
 import bitronix.tm.journal.Journal;
 import bitronix.tm.journal.NullJournal;
+import bitronix.tm.journal.SegmentedJournal;
+import bitronix.tm.journal.ShardedJournal;
 import bitronix.tm.recovery.Recoverer;
 import bitronix.tm.resource.ResourceLoader;
 import bitronix.tm.timer.TaskScheduler;
 import bitronix.tm.twopc.executor.AsyncExecutor;
+import bitronix.tm.twopc.executor.BoundedExecutor;
 import bitronix.tm.twopc.executor.Executor;
 import bitronix.tm.twopc.executor.SyncExecutor;
+import bitronix.tm.twopc.executor.VirtualThreadExecutor;
 import bitronix.tm.utils.ClassLoaderUtils;
 import bitronix.tm.utils.DefaultExceptionAnalyzer;
 import bitronix.tm.utils.ExceptionAnalyzer;
@@ -121,6 +125,12 @@ public class TransactionManagerServices {
                 journal = new NullJournal();
             } else if ("disk".equals(configuredJournal)) {
                 journal = new DiskJournal();
+            } else if ("mmap".equals(configuredJournal)) {
+                journal = new DiskJournal(true);
+            } else if ("segmented".equals(configuredJournal)) {
+                journal = new SegmentedJournal();
+            } else if ("sharded".equals(configuredJournal)) {
+                journal = new ShardedJournal();
             } else {
                 try {
                     Class<?> clazz = ClassLoaderUtils.loadClass(configuredJournal);
@@ -198,7 +208,20 @@ public class TransactionManagerServices {
     public static Executor getExecutor() {
         Executor executor = executorRef.get();
         if (executor == null) {
-            if (getConfiguration().isAsynchronous2Pc()) {
+            if (getConfiguration().isAsynchronous2Pc() && "virtual".equals(getConfiguration().getAsyncExecutor())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("using VirtualThreadExecutor");
+                }
+                executor = new VirtualThreadExecutor();
+            } else if (getConfiguration().isAsynchronous2Pc() && "bounded".equals(getConfiguration().getAsyncExecutor())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("using BoundedExecutor");
+                }
+                executor = new BoundedExecutor();
+            } else if (getConfiguration().isAsynchronous2Pc()) {
+                if (!"cached".equals(getConfiguration().getAsyncExecutor())) {
+                    log.warn("unsupported 2PC executor '" + getConfiguration().getAsyncExecutor() + "', must be cached, virtual or bounded, using cached");
+                }
                 if (log.isDebugEnabled()) {
                     log.debug("using AsyncExecutor");
                 }
@@ -55,6 +55,8 @@ public class XAResourceHolderState {
     private volatile LocalDateTime transactionTimeoutDate;
     private volatile boolean isTimeoutAlreadySet;
     private volatile boolean failed;
+    private volatile boolean executionTracked;
+    private volatile boolean written;
     private volatile int hashCode;
 
     public XAResourceHolderState(XAResourceHolder resourceHolder, ResourceBean bean) {
@@ -100,6 +102,10 @@ public class XAResourceHolderState {
         return xaResourceHolder.getXAResource();
     }
 
+    public ResourceBean getResourceBean() {
+        return bean;
+    }
+
     public XAResourceHolder getXAResourceHolder() {
         return xaResourceHolder;
     }
@@ -144,6 +150,28 @@ public class XAResourceHolderState {
         return failed;
     }
 
+    /**
+     * Record a statement execution on the resource while this branch was active.
+     *
+     * @param write true if the statement may have modified data.
+     */
+    public void trackExecution(boolean write) {
+        executionTracked = true;
+        if (write) {
+            written = true;
+        }
+    }
+
+    /**
+     * A branch is known to be read-only when executions on it have been tracked and none of them wrote, as it is then
+     * certain its resource records them. Branches of resources which do not track executions are never read-only.
+     *
+     * @return true if the branch can be completed without being prepared.
+     */
+    public boolean isReadOnly() {
+        return executionTracked && !written;
+    }
+
     public void end(int flags) throws XAException {
         boolean ended = this.ended;
         boolean suspended = this.suspended;
@@ -281,6 +309,7 @@ public class XAResourceHolderState {
                 (started ? " (started)" : "") +
                 (ended ? " (ended)" : "") +
                 (suspended ? " (suspended)" : "") +
+                (isReadOnly() ? " (read-only)" : "") +
                 " with XID " + xid;
     }
 }
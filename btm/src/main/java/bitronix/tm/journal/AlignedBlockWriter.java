@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes to a log file opened for direct I/O, bypassing the page cache.
+ * <p>Direct I/O requires writes of whole blocks from block-aligned memory at block-aligned file positions. Data is
+ * copied into an aligned direct buffer covering all the blocks it touches and the blocks are written entirely. The
+ * bytes of the first and last blocks lying outside of the written data are filled with the current content of those
+ * blocks, which is kept in memory for the most recently written blocks and read from the file otherwise. Bytes of the
+ * last block past the end of the data are padded with whatever the file held there, so the position of the data is
+ * never altered and the log file format stays the same.</p>
+ * <p>Records are not aligned on block boundaries: the block holding the end of the log is rewritten by every write that
+ * touches it, including the already forced records it holds. A write torn by a crash or power loss can then damage
+ * records that were durable before it started, committing records included. Direct I/O must only be used on storage
+ * which guarantees that a write of a file system block is atomic.</p>
+ * <p>Writes are serialized as concurrent writes to the same block would otherwise overwrite each other. All writes to
+ * the file must go through this writer, header included.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class AlignedBlockWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(AlignedBlockWriter.class);
+
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int CACHED_BLOCKS = 8;
+
+    private final FileChannel readChannel;
+    private final FileChannel directChannel;
+    private final int blockSize;
+    private final Map<Long, byte[]> blocks = new LinkedHashMap<Long, byte[]>(CACHED_BLOCKS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+    private ByteBuffer buffer;
+
+    /**
+     * Open a file for direct I/O.
+     *
+     * @param file        the file to write to.
+     * @param readChannel a regular channel of the file, used to read the blocks not kept in memory.
+     * @throws IOException if the file system does not support direct I/O or if an I/O error occurs.
+     */
+    AlignedBlockWriter(File file, FileChannel readChannel) throws IOException {
+        this.readChannel = readChannel;
+        this.blockSize = getBlockSize(file);
+        try {
+            this.directChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT);
+        } catch (UnsupportedOperationException ex) {
+            throw new IOException("direct I/O is not supported for transaction log file " + file.getName(), ex);
+        }
+        this.buffer = allocate(16 * blockSize);
+
+        if (log.isDebugEnabled()) {
+            log.debug("opened {} for direct I/O with a block size of {} bytes", file, blockSize);
+        }
+    }
+
+    private static int getBlockSize(File file) {
+        try {
+            long blockSize = Files.getFileStore(file.toPath()).getBlockSize();
+            if (blockSize > 0L && blockSize <= 64 * 1024 && Long.bitCount(blockSize) == 1) {
+                return Math.max(DEFAULT_BLOCK_SIZE, (int) blockSize);
+            }
+        } catch (IOException | UnsupportedOperationException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug("cannot get the block size of " + file + ", assuming " + DEFAULT_BLOCK_SIZE + " bytes", ex);
+            }
+        }
+        return DEFAULT_BLOCK_SIZE;
+    }
+
+    /**
+     * @return the size of the blocks writes are aligned on.
+     */
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Write data at the specified file position.
+     *
+     * @param src      the data, between the buffer's position and limit. The buffer's position is moved to its limit.
+     * @param position the file position at which the data must be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    synchronized void write(ByteBuffer src, long position) throws IOException {
+        final int length = src.remaining();
+        final long firstBlock = position - position % blockSize;
+        final long endBlock = ceil(position + length);
+        final int span = (int) (endBlock - firstBlock);
+        final long lastBlock = endBlock - blockSize;
+
+        if (buffer.capacity() < span) {
+            buffer = allocate(Math.max(span, buffer.capacity() * 2));
+        }
+        buffer.clear().limit(span);
+
+        if (position != firstBlock) {
+            loadBlock(firstBlock, 0);
+        }
+        if ((position + length) % blockSize != 0 && (lastBlock != firstBlock || position == firstBlock)) {
+            loadBlock(lastBlock, span - blockSize);
+        }
+
+        buffer.position((int) (position - firstBlock));
+        buffer.put(src);
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            directChannel.write(buffer, firstBlock + buffer.position());
+        }
+
+        cacheBlock(firstBlock, 0);
+        if (lastBlock != firstBlock) {
+            cacheBlock(lastBlock, span - blockSize);
+        }
+    }
+
+    /**
+     * Force the written data to the underlying device.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void force() throws IOException {
+        directChannel.force(false);
+    }
+
+    /**
+     * Close the direct I/O channel.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException {
+        directChannel.close();
+    }
+
+    private void loadBlock(long blockPosition, int offset) throws IOException {
+        byte[] block = blocks.get(blockPosition);
+        if (block != null) {
+            buffer.put(offset, block);
+            return;
+        }
+
+        ByteBuffer dst = buffer.duplicate();
+        dst.limit(offset + blockSize).position(offset);
+        while (dst.hasRemaining()) {
+            if (readChannel.read(dst, blockPosition + dst.position() - offset) < 0) {
+                // past the end of the file, pad with zeroes
+                while (dst.hasRemaining()) {
+                    dst.put((byte) 0);
+                }
+            }
+        }
+    }
+
+    private void cacheBlock(long blockPosition, int offset) {
+        byte[] block = blocks.get(blockPosition);
+        if (block == null) {
+            block = new byte[blockSize];
+            blocks.put(blockPosition, block);
+        }
+        buffer.get(offset, block);
+    }
+
+    private long ceil(long position) {
+        long remainder = position % blockSize;
+        return remainder == 0 ? position : position + blockSize - remainder;
+    }
+
+    private ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size + blockSize).alignedSlice(blockSize);
+    }
+
+}
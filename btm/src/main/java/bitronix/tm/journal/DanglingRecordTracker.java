@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Tracks the resources of the transactions which are not completely committed yet, by GTRID.
+ * <p>Unique names are interned to small ids and the resources of a transaction are kept as an immutable bit set of
+ * those ids, replaced atomically on every update. Transactions are kept in a concurrent skip list ordered by their
+ * GTRID sequence number, so updates of different transactions never contend on a common lock and the dangling
+ * transactions can be listed in the order they started without sorting them.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class DanglingRecordTracker {
+
+    private static final Comparator<Uid> BY_SEQUENCE = Comparator.comparingInt(Uid::extractSequence)
+            .thenComparing((uid1, uid2) -> Arrays.compare(uid1.getArray(), uid2.getArray()));
+
+    private final ConcurrentSkipListMap<Uid, long[]> records = new ConcurrentSkipListMap<>(BY_SEQUENCE);
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+
+    /**
+     * Add resources to a transaction, starting to track it if needed.
+     *
+     * @param gtrid       the GTRID of the transaction.
+     * @param uniqueNames the unique names of the resources.
+     */
+    void add(Uid gtrid, Set<String> uniqueNames) {
+        long[] added = new long[1];
+        for (String uniqueName : uniqueNames) {
+            added = set(added, intern(uniqueName));
+        }
+        records.merge(gtrid, added, DanglingRecordTracker::or);
+    }
+
+    /**
+     * Remove resources from a transaction, stopping to track it when it has none left.
+     *
+     * @param gtrid       the GTRID of the transaction.
+     * @param uniqueNames the unique names of the resources.
+     */
+    void remove(Uid gtrid, Set<String> uniqueNames) {
+        long[] removed = new long[1];
+        for (String uniqueName : uniqueNames) {
+            Integer id = ids.get(uniqueName);
+            if (id != null) {
+                removed = set(removed, id);
+            }
+        }
+        final long[] mask = removed;
+        records.computeIfPresent(gtrid, (uid, bits) -> andNot(bits, mask));
+    }
+
+    /**
+     * @return the resources of the tracked transactions, in the order of their GTRID sequence number.
+     */
+    Map<Uid, Set<String>> snapshot() {
+        String[] names = this.names;
+        Map<Uid, Set<String>> snapshot = new LinkedHashMap<>(records.size() * 2);
+        for (Map.Entry<Uid, long[]> entry : records.entrySet()) {
+            long[] bits = entry.getValue();
+            Set<String> uniqueNames = new TreeSet<>();
+            for (int word = 0; word < bits.length; word++) {
+                for (long remaining = bits[word]; remaining != 0L; remaining &= remaining - 1) {
+                    uniqueNames.add(names[word * 64 + Long.numberOfTrailingZeros(remaining)]);
+                }
+            }
+            snapshot.put(entry.getKey(), uniqueNames);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param gtrid the GTRID of a transaction.
+     * @return true if the transaction is tracked.
+     */
+    boolean contains(Uid gtrid) {
+        return records.containsKey(gtrid);
+    }
+
+    /**
+     * @return the amount of tracked transactions.
+     */
+    int size() {
+        return records.size();
+    }
+
+    /**
+     * Stop tracking all transactions.
+     */
+    void clear() {
+        records.clear();
+    }
+
+    private int intern(String uniqueName) {
+        Integer id = ids.get(uniqueName);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (ids) {
+            id = ids.get(uniqueName);
+            if (id == null) {
+                String[] names = Arrays.copyOf(this.names, this.names.length + 1);
+                id = names.length - 1;
+                names[id] = uniqueName;
+                // the name must be resolvable before its id can be used
+                this.names = names;
+                ids.put(uniqueName, id);
+            }
+            return id;
+        }
+    }
+
+    private static long[] set(long[] bits, int id) {
+        int word = id >>> 6;
+        if (word >= bits.length) {
+            bits = Arrays.copyOf(bits, word + 1);
+        }
+        bits[word] |= 1L << id;
+        return bits;
+    }
+
+    private static long[] or(long[] bits1, long[] bits2) {
+        long[] result = Arrays.copyOf(bits1, Math.max(bits1.length, bits2.length));
+        for (int i = 0; i < bits2.length; i++) {
+            result[i] |= bits2[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return the bits of the first set which are not in the second one, or null if there are none.
+     */
+    private static long[] andNot(long[] bits, long[] mask) {
+        long[] result = bits.clone();
+        boolean empty = true;
+        for (int i = 0; i < result.length; i++) {
+            if (i < mask.length) {
+                result[i] &= ~mask[i];
+            }
+            empty &= result[i] == 0L;
+        }
+        return empty ? null : result;
+    }
+
+}
@@ -19,22 +19,40 @@ import bitronix.tm.BitronixXid;
 import bitronix.tm.Configuration;
 import bitronix.tm.TransactionManagerServices;
 import bitronix.tm.utils.Decoder;
+import bitronix.tm.utils.ManagementRegistrar;
 import bitronix.tm.utils.MonotonicClock;
 import bitronix.tm.utils.Uid;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jakarta.transaction.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Simple implementation of a journal that writes on a two-files disk log.
@@ -42,6 +60,8 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * second file and logging starts again on the latter.</p>
  * <p>This implementation is not highly efficient but quite robust and simple. It is based on one of the implementations
  * proposed by Mike Spille.</p>
+ * <p>Log files can optionally be memory mapped (journal type <code>mmap</code>) in which case records are written
+ * with plain memory stores into the mapping instead of one write call per record.</p>
  * <p>Configurable properties are all starting with <code>bitronix.tm.journal.disk</code>.</p>
  *
  * @author Ludovic Orban
@@ -49,10 +69,29 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @see bitronix.tm.Configuration
  * @see <a href="http://jroller.com/page/pyrasun?entry=xa_exposed_part_iii_the">XA Exposed, Part III: The Implementor's Notebook</a>
  */
-public class DiskJournal implements Journal, MigratableJournal, ReadableJournal {
+public class DiskJournal implements Journal, MigratableJournal, ReadableJournal, DiskJournalMBean {
 
     private static final Logger log = LoggerFactory.getLogger(DiskJournal.class);
 
+    // COMMITTING records start a transaction, the others end it:
+    // COMMITTED is when there was no problem in the transaction
+    // UNKNOWN is when a 2PC transaction heuristically terminated
+    // ROLLEDBACK is when a 1PC transaction rolled back during commit
+    private static final JournalRecordFilter DANGLING_STATUSES = JournalRecordFilter.all()
+            .withStatus(Status.STATUS_COMMITTING, Status.STATUS_COMMITTED, Status.STATUS_UNKNOWN, Status.STATUS_ROLLEDBACK);
+
+    static final String ZERO_PROVISIONING = "zero";
+    static final String SPARSE_PROVISIONING = "sparse";
+    static final String BACKGROUND_PROVISIONING = "background";
+
+    private static final int ZERO_FILL_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Last timestamp written to a log file header by this JVM, so that headers are strictly ordered without having to
+     * wait for the clock to tick.
+     */
+    private static final AtomicLong lastTimestamp = new AtomicLong();
+
     /**
      * The active log appender. This is exactly the same reference as tla1 or tla2 depending on which one is
      * currently active
@@ -71,18 +110,89 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
 
     private final Lock conservativeJournalingLock = new ReentrantLock();
     private final ReadWriteLock swapForceLock = new ReentrantReadWriteLock(true);
-    private final Object positionLock = new Object();
     private final AtomicBoolean needsForce;
+    private final ForceBatcher forceBatcher;
+
+    /**
+     * Thread performing the forces requested by {@link #forceAsync()}. Requests queue up behind the force in progress
+     * and are mostly covered by it, so they complete without another physical force.
+     */
+    private volatile ExecutorService forceExecutor;
+
+    /**
+     * Forces the active log file at a fixed interval when relaxed durability is configured, null otherwise.
+     */
+    private volatile PeriodicFlusher flusher;
+
+    /**
+     * Holds the dangling records moved out of the log files because too many of them piled up, null if none ever did.
+     */
+    private volatile OverflowStore overflowStore;
+    private File overflowFile;
+
+    /**
+     * Zero fill of the passive log file running in the background when the log files got created sparse, and the
+     * sparse log file to zero fill once it becomes passive.
+     */
+    private Future<?> provisioning;
+    private TransactionLogAppender unprovisionedTla;
+
+    /**
+     * Position of the active log file covered by its last checkpoint, and whether a checkpoint is being taken.
+     */
+    private final AtomicLong checkpointPosition = new AtomicLong();
+    private final AtomicBoolean checkpointing = new AtomicBoolean();
+
+    /**
+     * Ships the appended records to a standby when a replication target is configured, null otherwise.
+     */
+    private volatile JournalReplicator replicator;
+
+    private final JournalStatistics statistics = new JournalStatistics();
+    private volatile String jmxName;
 
     private final Configuration configuration;
+    private final boolean memoryMapped;
+    private final File logPart1File;
+    private final File logPart2File;
 
     /**
      * Create an uninitialized disk journal. You must call open() prior you can use it.
      */
     public DiskJournal() {
+        this(false);
+    }
+
+    /**
+     * Create an uninitialized disk journal. You must call open() prior you can use it.
+     *
+     * @param memoryMapped true if the log files should be memory mapped, in which case records are written with plain
+     *                     memory stores instead of one write call each.
+     */
+    public DiskJournal(boolean memoryMapped) {
+        this(null, null, memoryMapped);
+    }
+
+    /**
+     * Create an uninitialized disk journal writing on the specified files instead of the configured ones. You must
+     * call open() prior you can use it.
+     *
+     * @param logPart1File the first log file, or null to use the configured one.
+     * @param logPart2File the second log file, or null to use the configured one.
+     * @param memoryMapped true if the log files should be memory mapped.
+     */
+    DiskJournal(File logPart1File, File logPart2File, boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        this.logPart1File = logPart1File;
+        this.logPart2File = logPart2File;
         configuration = TransactionManagerServices.getConfiguration();
         needsForce = new AtomicBoolean();
         activeTla = new AtomicReference<>();
+        if (configuration.isForceBatchingEnabled()) {
+            forceBatcher = new ForceBatcher(this::forceActiveLogFile, configuration.getForceBatchMaxWait().toNanos(), configuration.getForceBatchMaxSize());
+        } else {
+            forceBatcher = null;
+        }
     }
 
     /**
@@ -110,62 +220,440 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             }
         }
 
-        TransactionLogRecord tlog = new TransactionLogRecord(status, gtrid, uniqueNames);
+        TransactionLogRecordEncoder encoder = TransactionLogRecordEncoder.get();
+        long startNanos = System.nanoTime();
+        int recordSize;
 
         try {
             if (configuration.isConservativeJournaling()) {
                 conservativeJournalingLock.lock();
             }
 
-            synchronized (positionLock) {
-                boolean rollover = activeTla.get().setPositionAndAdvance(tlog);
-                if (rollover) {
-                    // time to swap log files
-                    swapForceLock.writeLock().lock();
-                    try {
-                        swapJournalFiles();
-                        activeTla.get().setPositionAndAdvance(tlog);
-                    } finally {
-                        swapForceLock.writeLock().unlock();
+            while (true) {
+                TransactionLogAppender tla;
+
+                // space is reserved under the read lock so that a swap never happens between reservation and write
+                swapForceLock.readLock().lock();
+                try {
+                    tla = activeTla.get();
+                    // the record is encoded in the format of the file it is written to
+                    ByteBuffer record = encoder.encode(tla, status, gtrid, uniqueNames);
+                    recordSize = record.remaining();
+                    long writePosition = tla.reserve(recordSize);
+                    if (writePosition >= 0L) {
+                        encoder.definitionsReserved();
+                        tla.writeLog(record, writePosition, status, gtrid, uniqueNames);
+                        needsForce.set(true);
+                        if (forceBatcher != null) {
+                            forceBatcher.writeCompleted();
+                        }
+                        PeriodicFlusher flusher = this.flusher;
+                        if (flusher != null) {
+                            flusher.writeCompleted();
+                        }
+                        break;
                     }
+                } finally {
+                    swapForceLock.readLock().unlock();
                 }
 
-                // this read lock MUST be acquired under positionLock
-                swapForceLock.readLock().lock();
+                if (recordSize > tla.getCapacity()) {
+                    throw new IOException("cannot write log, record of " + recordSize + " bytes is larger than the log file capacity");
+                }
+                rollover(tla);
             }
+        } finally {
+            if (configuration.isConservativeJournaling()) {
+                conservativeJournalingLock.unlock();
+            }
+        }
+        statistics.logged(recordSize, System.nanoTime() - startNanos);
 
+        JournalReplicator replicator = this.replicator;
+        if (replicator != null) {
+            replicator.append(status, gtrid, uniqueNames);
+        }
+
+        OverflowStore overflowStore = this.overflowStore;
+        if (overflowStore != null && status != Status.STATUS_COMMITTING && overflowStore.contains(gtrid)) {
+            overflowStore.remove(status, gtrid, uniqueNames);
+        }
+
+        int checkpointIntervalInKb = configuration.getCheckpointIntervalInKb();
+        if (checkpointIntervalInKb > 0) {
+            TransactionLogAppender tla = activeTla.get();
+            if (tla != null && tla.getPosition() - checkpointPosition.get() >= checkpointIntervalInKb * 1024L) {
+                scheduleCheckpoint();
+            }
+        }
+    }
+
+    /**
+     * Let the background force thread take a checkpoint, unless one is already scheduled. Checkpoints are only taken
+     * when forced writes are enabled as they must never cover records that could still be lost.
+     */
+    private void scheduleCheckpoint() {
+        ExecutorService executor = forceExecutor;
+        if (executor == null || !configuration.isForcedWriteEnabled() || !checkpointing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::checkpoint);
+        } catch (RejectedExecutionException ex) {
+            // closing
+            checkpointing.set(false);
+        }
+    }
+
+    /**
+     * Store a checkpoint of the dangling records of the active log file so that the next open only has to read the
+     * records written after it. Failing to write a checkpoint is not fatal, the whole log file is read at open time
+     * instead.
+     * <p>With a flush interval, the checkpoint is written once the periodic force covered its records. Otherwise the
+     * log file is forced before writing it.</p>
+     */
+    private void checkpoint() {
+        try {
+            TransactionLogAppender tla;
+            TransactionLogCheckpoint checkpoint;
+
+            // the write lock drains in-flight writes so that the snapshot exactly covers the records up to its position
+            swapForceLock.writeLock().lock();
             try {
-                activeTla.get().writeLog(tlog);
-                needsForce.set(true);
+                tla = activeTla.get();
+                if (tla == null) {
+                    return;
+                }
+                checkpoint = tla.checkpoint();
+                checkpointPosition.set(checkpoint.getPosition());
             } finally {
-                swapForceLock.readLock().unlock();
+                swapForceLock.writeLock().unlock();
+            }
+
+            PeriodicFlusher flusher = this.flusher;
+            if (flusher == null) {
+                writeCheckpoint(tla, checkpoint);
+                return;
             }
+            try {
+                // all writes covered by the checkpoint completed before the write lock got released
+                flusher.flushed().get();
+            } catch (ExecutionException ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug("records of " + checkpoint + " not flushed, not writing it", ex.getCause());
+                }
+                return;
+            }
+            try {
+                tla.writeCheckpoint(checkpoint);
+            } catch (IOException ex) {
+                log.warn("cannot write checkpoint of " + tla, ex);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         } finally {
-            if (configuration.isConservativeJournaling()) {
-                conservativeJournalingLock.unlock();
+            checkpointing.set(false);
+        }
+    }
+
+    private static void writeCheckpoint(TransactionLogAppender tla, TransactionLogCheckpoint checkpoint) {
+        try {
+            // a checkpoint must never cover records that could still be lost
+            tla.force();
+            tla.writeCheckpoint(checkpoint);
+        } catch (IOException ex) {
+            log.warn("cannot write checkpoint of " + tla, ex);
+        }
+    }
+
+    /**
+     * Swap the log files unless another thread already did it since the specified appender ran out of space.
+     *
+     * @param fullTla the appender that ran out of space.
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private void rollover(TransactionLogAppender fullTla) throws IOException {
+        swapForceLock.writeLock().lock();
+        try {
+            if (activeTla.get() == fullTla) {
+                swapJournalFiles();
             }
+        } finally {
+            swapForceLock.writeLock().unlock();
         }
     }
 
     /**
      * Force active log file to synchronize with the underlying disk device.
+     * <p>When force batching is enabled, concurrent callers are grouped so that a single disk force covers the
+     * records written by all of them. This method returns as soon as all records written by the calling thread before
+     * the call are safely on disk.</p>
+     * <p>When a flush interval is configured, this method returns immediately and the records get forced by a
+     * background thread at the next interval.</p>
+     * <p>When a replication target is configured, this method also waits until the connected standby acknowledged the
+     * committing records logged before the call.</p>
      *
      * @throws java.io.IOException in case of disk IO failure or if the disk journal is not open.
+     * @see bitronix.tm.Configuration#getFlushInterval()
+     * @see bitronix.tm.Configuration#getReplicationTarget()
      */
     @Override
     public void force() throws IOException {
         if (activeTla.get() == null) {
             throw new IOException("cannot force log writing, disk logger is not open");
         }
+        OverflowStore overflowStore = this.overflowStore;
+        if (overflowStore != null) {
+            overflowStore.force();
+        }
+        if (flusher != null) {
+            return;
+        }
+
+        JournalReplicator replicator = this.replicator;
+        long committingSequence = replicator == null ? 0L : replicator.getCommittingSequence();
+        forceActiveLogFileIfNeeded();
+        if (replicator != null) {
+            try {
+                replicator.awaitAcknowledged(committingSequence);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the journal standby to acknowledge committing records");
+            }
+        }
+    }
+
+    /**
+     * Force the active log file, unless forced writes are disabled or nothing was written since the last force.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private void forceActiveLogFileIfNeeded() throws IOException {
+        long startNanos = System.nanoTime();
+        if (forceBatcher != null) {
+            if (configuration.isForcedWriteEnabled()) {
+                forceBatcher.force();
+                statistics.forced(System.nanoTime() - startNanos);
+            }
+            return;
+        }
 
         if (needsForce.get() && configuration.isForcedWriteEnabled()) {
             swapForceLock.writeLock().lock();
             try {
+                long written = statistics.getRecordsWritten();
                 activeTla.get().force();
+                statistics.fsynced(written);
                 needsForce.set(false);
             } finally {
                 swapForceLock.writeLock().unlock();
             }
+            statistics.forced(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Log a new transaction status to journal and get notified once it is safely stored. The record is written by the
+     * calling thread, the force is performed in the background.
+     *
+     * @param status      transaction status to log. See {@link jakarta.transaction.Status} constants.
+     * @param gtrid       raw GTRID of the transaction.
+     * @param uniqueNames unique names of the {@link bitronix.tm.resource.common.ResourceBean}s participating in
+     *                    this transaction.
+     * @return a stage completing when the record is safely on disk.
+     * @see #forceAsync()
+     */
+    @Override
+    public CompletionStage<Void> logAsync(int status, Uid gtrid, Set<String> uniqueNames) {
+        try {
+            log(status, gtrid, uniqueNames);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return forceAsync();
+    }
+
+    /**
+     * Force active log file to synchronize with the underlying disk device without blocking the calling thread.
+     * <p>The force is performed by a background thread. When force batching is enabled, requests made while a force is
+     * in progress are covered by the next one, so that a burst of requests costs at most two physical forces.</p>
+     *
+     * <p>When a flush interval is configured, the stage completes after the next periodic force.</p>
+     *
+     * @return a stage completing when all records written before this call are safely on disk.
+     */
+    @Override
+    public CompletionStage<Void> forceAsync() {
+        ExecutorService executor = forceExecutor;
+        if (activeTla.get() == null || executor == null) {
+            return CompletableFuture.failedFuture(new IOException("cannot force log writing, disk logger is not open"));
+        }
+        PeriodicFlusher flusher = this.flusher;
+        if (flusher != null) {
+            return flusher.flushed();
+        }
+        boolean onDisk = !configuration.isForcedWriteEnabled() || (forceBatcher != null ? !forceBatcher.needsForce() : !needsForce.get());
+        JournalReplicator replicator = this.replicator;
+        if (onDisk && (replicator == null || replicator.isAcknowledged(replicator.getCommittingSequence()))) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> forced = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    force();
+                    forced.complete(null);
+                } catch (IOException | RuntimeException ex) {
+                    forced.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            forced.completeExceptionally(new IOException("cannot force log writing, disk logger is not open", ex));
+        }
+        return forced;
+    }
+
+    /**
+     * Get the durability high-water mark of the journal when a flush interval is configured: all records written
+     * before the returned time are safely on disk, the ones written after it could be lost if the machine crashes.
+     *
+     * @return the time in milliseconds before which all records are safely on disk, or -1 if no flush interval is
+     *         configured or the journal is not open, in which case records are safely on disk once forced.
+     * @see bitronix.tm.Configuration#getFlushInterval()
+     */
+    @Override
+    public long getFlushedTimestamp() {
+        PeriodicFlusher flusher = this.flusher;
+        return flusher == null ? -1L : flusher.getFlushedTimestamp();
+    }
+
+    /**
+     * Get the amount of records written since the last periodic force when a flush interval is configured.
+     *
+     * @return the amount of records that could be lost if the machine crashed now, or 0 if no flush interval is
+     *         configured or the journal is not open.
+     * @see bitronix.tm.Configuration#getFlushInterval()
+     */
+    @Override
+    public long getUnflushedRecordCount() {
+        PeriodicFlusher flusher = this.flusher;
+        return flusher == null ? 0L : Math.max(0L, flusher.getWriteSequence() - flusher.getFlushedSequence());
+    }
+
+    /*
+     * Management interface, the statistics are kept when the journal gets closed then opened again.
+     */
+
+    @Override
+    public long getRecordsWritten() {
+        return statistics.getRecordsWritten();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return statistics.getBytesWritten();
+    }
+
+    @Override
+    public double getRecordsWrittenPerSecond() {
+        return statistics.getRecordsPerSecond();
+    }
+
+    @Override
+    public double getBytesWrittenPerSecond() {
+        return statistics.getBytesPerSecond();
+    }
+
+    @Override
+    public long[] getLogLatencyHistogram() {
+        return statistics.getLogLatencyHistogram();
+    }
+
+    @Override
+    public long[] getForceLatencyHistogram() {
+        return statistics.getForceLatencyHistogram();
+    }
+
+    @Override
+    public long getFsyncCount() {
+        return statistics.getFsyncCount();
+    }
+
+    @Override
+    public double getFsyncsPerSecond() {
+        return statistics.getFsyncsPerSecond();
+    }
+
+    @Override
+    public long[] getFsyncBatchSizeHistogram() {
+        return statistics.getFsyncBatchSizeHistogram();
+    }
+
+    @Override
+    public long getRolloverCount() {
+        return statistics.getRolloverCount();
+    }
+
+    @Override
+    public long getRolloverDurationMillis() {
+        return statistics.getRolloverDurationMillis();
+    }
+
+    @Override
+    public long getLastRolloverDurationMillis() {
+        return statistics.getLastRolloverDurationMillis();
+    }
+
+    @Override
+    public long getRolloverDanglingRecords() {
+        return statistics.getRolloverDanglingRecords();
+    }
+
+    @Override
+    public int getLastRolloverDanglingRecords() {
+        return statistics.getLastRolloverDanglingRecords();
+    }
+
+    /**
+     * Get how full the active log file is.
+     *
+     * @return the percentage of the active log file capacity used by records, or 0 if the journal is not open.
+     */
+    @Override
+    public double getFillPercentage() {
+        TransactionLogAppender tla = activeTla.get();
+        if (tla == null) {
+            return 0.0;
+        }
+        return (tla.getPosition() - TransactionLogHeader.HEADER_LENGTH) * 100.0 / tla.getCapacity();
+    }
+
+    /**
+     * Force the active log file on behalf of a batch of threads. The write lock is only held until in-flight writes
+     * are drained so that the header position covers them, then it is downgraded to a read lock during the physical
+     * force to let writers carry on with the next batch.
+     *
+     * @throws java.io.IOException in case of disk IO failure or if the disk journal is not open.
+     */
+    private void forceActiveLogFile() throws IOException {
+        swapForceLock.writeLock().lock();
+        try {
+            swapForceLock.readLock().lock();
+        } finally {
+            swapForceLock.writeLock().unlock();
+        }
+
+        try {
+            TransactionLogAppender tla = activeTla.get();
+            if (tla == null) {
+                throw new IOException("cannot force log writing, disk logger is not open");
+            }
+            long written = statistics.getRecordsWritten();
+            tla.force();
+            statistics.fsynced(written);
+        } finally {
+            swapForceLock.readLock().unlock();
         }
     }
 
@@ -182,22 +670,19 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             return;
         }
 
-        File file1 = new File(configuration.getLogPart1Filename());
-        File file2 = new File(configuration.getLogPart2Filename());
+        File file1 = logPart1File != null ? logPart1File : new File(configuration.getLogPart1Filename());
+        File file2 = logPart2File != null ? logPart2File : new File(configuration.getLogPart2Filename());
 
+        boolean created = false;
         if (!file1.exists() && !file2.exists()) {
             log.debug("creation of log files");
-            createLogfile(file2, configuration.getMaxLogSizeInMb());
-
-            // make the clock run a little before creating the 2nd log file to ensure the timestamp headers are not the same
-            long before = MonotonicClock.currentTimeMillis();
-            while (MonotonicClock.currentTimeMillis() < before + 100L) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException ex) { /* ignore */ }
-            }
-
-            createLogfile(file1, configuration.getMaxLogSizeInMb());
+            boolean zeroFill = isZeroFilledUpfront(configuration.getProvisioning());
+            // the 1st log file gets the latest timestamp header and becomes the active one
+            createLogfile(file2, configuration.getMaxLogSizeInMb(), zeroFill);
+            createLogfile(file1, configuration.getMaxLogSizeInMb(), zeroFill);
+            // an overflow store is only meaningful along with the log files it was created for
+            Files.deleteIfExists(OverflowStore.getFile(file1).toPath());
+            created = true;
         }
 
         if (file1.length() != file2.length()) {
@@ -212,13 +697,48 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             log.debug("disk journal files max length: {}", maxFileLength);
         }
 
-        tla1 = new TransactionLogAppender(file1, maxFileLength);
-        tla2 = new TransactionLogAppender(file2, maxFileLength);
+        tla1 = new TransactionLogAppender(file1, maxFileLength, memoryMapped, configuration.isWriteBatchingEnabled(),
+                configuration.isDirectIoEnabled());
+        tla2 = new TransactionLogAppender(file2, maxFileLength, memoryMapped, configuration.isWriteBatchingEnabled(),
+                configuration.isDirectIoEnabled());
+        applyLogFormatVersion(tla1);
+        applyLogFormatVersion(tla2);
 
         byte cleanStatus = pickActiveJournalFile(tla1, tla2);
         if (cleanStatus != TransactionLogHeader.CLEAN_LOG_STATE) {
             log.warn("active log file is unclean, did you call BitronixTransactionManager.shutdown() at the end of the last run?");
         }
+        lastTimestamp.accumulateAndGet(Math.max(tla1.getTimestamp(), tla2.getTimestamp()), Math::max);
+        if (created && BACKGROUND_PROVISIONING.equals(configuration.getProvisioning())) {
+            unprovisionedTla = activeTla.get();
+            provisioning = zeroFillInBackground(getPassiveTransactionLogAppender());
+        }
+
+        // records logged during previous runs must be tracked too so that they get copied when the files are swapped
+        TransactionLogAppender tla = activeTla.get();
+        tla.trackDanglingLogs(collectDanglingRecords(tla).values());
+        checkpointPosition.set(tla.getPosition());
+
+        overflowFile = OverflowStore.getFile(file1);
+        if (configuration.getOverflowThreshold() > 0 || overflowFile.exists()) {
+            overflowStore = new OverflowStore(overflowFile, configuration.getMaxLogSizeInMb());
+        }
+
+        forceExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-journal-force").setDaemon(true).build());
+        if (!configuration.getFlushInterval().isZero() && configuration.isForcedWriteEnabled()) {
+            flusher = new PeriodicFlusher(this::forceActiveLogFile, configuration.getFlushInterval().toMillis());
+        }
+
+        // the journals of a sharded journal do not replicate, their records would mix on the standby
+        String replicationTarget = configuration.getReplicationTarget();
+        if (replicationTarget != null && logPart1File == null) {
+            replicator = new JournalReplicator(JournalReplicator.parseTarget(replicationTarget), this::collectTrackedDanglingRecords,
+                    configuration.getGracefulShutdownInterval().toMillis());
+        }
+
+        jmxName = "bitronix.tm:type=Journal,File=" + ManagementRegistrar.makeValidName(file1.getPath());
+        ManagementRegistrar.register(jmxName, this);
 
         if (log.isDebugEnabled()) {
             log.debug("disk journal opened");
@@ -236,6 +756,45 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             return;
         }
 
+        ManagementRegistrar.unregister(jmxName);
+        jmxName = null;
+
+        JournalReplicator replicator = this.replicator;
+        this.replicator = null;
+        if (replicator != null) {
+            replicator.close();
+        }
+
+        PeriodicFlusher flusher = this.flusher;
+        this.flusher = null;
+        if (flusher != null) {
+            try {
+                flusher.close();
+            } catch (IOException ex) {
+                log.error("cannot flush disk journal while closing it", ex);
+            }
+        }
+
+        // let the pending background forces complete before the files get closed
+        ExecutorService executor = forceExecutor;
+        forceExecutor = null;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(configuration.getGracefulShutdownInterval().toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("background journal forces still running while closing the disk journal");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        awaitProvisioning();
+        unprovisionedTla = null;
+
+        // the journal must not be used anymore while closing, so there are no in-flight writes
+        if (configuration.getCheckpointIntervalInKb() > 0 && configuration.isForcedWriteEnabled()) {
+            writeCheckpoint(activeTla.get(), activeTla.get().checkpoint());
+        }
+
         try {
             tla1.close();
         } catch (IOException ex) {
@@ -248,6 +807,14 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             log.error("cannot close " + tla2, ex);
         }
         tla2 = null;
+        if (overflowStore != null) {
+            try {
+                overflowStore.close();
+            } catch (IOException ex) {
+                log.error("cannot close overflow store", ex);
+            }
+            overflowStore = null;
+        }
         activeTla.set(null);
 
         if (log.isDebugEnabled()) {
@@ -275,7 +842,102 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         if (activeTla.get() == null) {
             throw new IOException("cannot collect dangling records, disk logger is not open");
         }
-        return collectDanglingRecords(activeTla.get());
+        Map<Uid, JournalRecord> danglingRecords = collectDanglingRecords(activeTla.get());
+        OverflowStore overflowStore = this.overflowStore;
+        if (overflowStore != null) {
+            for (JournalRecord record : overflowStore.getDanglingRecords().values()) {
+                JournalRecord rec = danglingRecords.get(record.getGtrid());
+                if (rec == null) {
+                    danglingRecords.put(record.getGtrid(), record);
+                } else {
+                    // a rollover may have been interrupted after the record got moved
+                    Set<String> recUniqueNames = new HashSet<>(rec.getUniqueNames());
+                    recUniqueNames.addAll(record.getUniqueNames());
+                    danglingRecords.put(record.getGtrid(), new TransactionLogRecord(rec.getStatus(), rec.getGtrid(), recUniqueNames));
+                }
+            }
+        }
+        return danglingRecords;
+    }
+
+    /**
+     * @return true if a replication target is configured and the standby is connected.
+     */
+    boolean isReplicating() {
+        JournalReplicator replicator = this.replicator;
+        return replicator != null && replicator.isConnected();
+    }
+
+    /**
+     * Collect the dangling records tracked in memory, which cover all the records written so far unlike the active log
+     * file whose header position may lag behind in-flight writes.
+     *
+     * @return the dangling records.
+     * @throws java.io.IOException if the disk journal is not open.
+     */
+    private Collection<JournalRecord> collectTrackedDanglingRecords() throws IOException {
+        Map<Uid, JournalRecord> danglingRecords = new LinkedHashMap<>();
+        swapForceLock.readLock().lock();
+        try {
+            TransactionLogAppender tla = activeTla.get();
+            if (tla == null) {
+                throw new IOException("cannot collect dangling records, disk logger is not open");
+            }
+            for (TransactionLogRecord tlog : tla.getDanglingLogs()) {
+                danglingRecords.put(tlog.getGtrid(), tlog);
+            }
+            OverflowStore overflowStore = this.overflowStore;
+            if (overflowStore != null) {
+                for (JournalRecord record : overflowStore.getDanglingRecords().values()) {
+                    danglingRecords.merge(record.getGtrid(), record, (rec1, rec2) -> {
+                        Set<String> uniqueNames = new HashSet<>(rec1.getUniqueNames());
+                        uniqueNames.addAll(rec2.getUniqueNames());
+                        return new TransactionLogRecord(Status.STATUS_COMMITTING, rec1.getGtrid(), uniqueNames);
+                    });
+                }
+            }
+        } finally {
+            swapForceLock.readLock().unlock();
+        }
+        return danglingRecords.values();
+    }
+
+    /**
+     * Move the dangling records of the configured log files into another journal, so that switching from the disk
+     * journal to one storing its records in other files does not leave in-doubt transactions behind. The moved
+     * records are marked as committed in the log files once they are safe in the other journal.
+     *
+     * @param configuration the configuration holding the log files names.
+     * @param target        the open journal to move the dangling records to.
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    static void moveDanglingRecordsOfLogFiles(Configuration configuration, Journal target) throws IOException {
+        File file1 = new File(configuration.getLogPart1Filename());
+        File file2 = new File(configuration.getLogPart2Filename());
+        if (!file1.exists() || !file2.exists()) {
+            return;
+        }
+
+        DiskJournal journal = new DiskJournal(file1, file2, false);
+        journal.open();
+        try {
+            Collection<JournalRecord> danglingRecords = journal.collectDanglingRecords().values();
+            if (danglingRecords.isEmpty()) {
+                return;
+            }
+            for (JournalRecord record : danglingRecords) {
+                target.log(Status.STATUS_COMMITTING, record.getGtrid(), record.getUniqueNames());
+            }
+            // the records must be safe in their new journal before getting removed from the log files
+            target.force();
+            for (JournalRecord record : danglingRecords) {
+                journal.log(Status.STATUS_COMMITTED, record.getGtrid(), record.getUniqueNames());
+            }
+            journal.force();
+            log.info("moved {} dangling record(s) out of log files {} and {}", danglingRecords.size(), file1, file2);
+        } finally {
+            journal.close();
+        }
     }
 
     /**
@@ -309,6 +971,20 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Records of the active log file are read lazily as the stream gets consumed.</p>
+     */
+    @Override
+    public Stream<JournalRecord> streamRecords(JournalRecordFilter filter, boolean includeInvalid) throws IOException {
+        TransactionLogAppender tla = activeTla.get();
+        if (tla == null) {
+            throw new IOException("cannot read records, disk logger is not open");
+        }
+
+        return streamRecords(tla.getScanner(includeInvalid), filter);
+    }
+
     /*
      * Internal impl.
      */
@@ -320,7 +996,19 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
      * @param maxLogSizeInMb the file size in megabytes to preallocate
      * @throws java.io.IOException in case of disk IO failure.
      */
-    private static void createLogfile(File logfile, int maxLogSizeInMb) throws IOException {
+    static void createLogfile(File logfile, int maxLogSizeInMb) throws IOException {
+        createLogfile(logfile, maxLogSizeInMb, true);
+    }
+
+    /**
+     * Create a fresh log file on disk. If the specified file already exists it will be deleted then recreated.
+     *
+     * @param logfile        the file to create
+     * @param maxLogSizeInMb the file size in megabytes to allocate
+     * @param zeroFill       true if the file must be filled with zeroes, false if it can be created sparse
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    static void createLogfile(File logfile, int maxLogSizeInMb, boolean zeroFill) throws IOException {
         if (logfile.isDirectory()) {
             throw new IOException("log file is referring to a directory: " + logfile.getAbsolutePath());
         }
@@ -333,23 +1021,127 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         if (logfile.getParentFile() != null) {
             logfile.getParentFile().mkdirs();
         }
+        Files.deleteIfExists(TransactionLogCheckpoint.getFile(logfile).toPath());
 
         try (RandomAccessFile raf = new RandomAccessFile(logfile, "rw")) {
 
             raf.seek(TransactionLogHeader.FORMAT_ID_HEADER);
             raf.writeInt(BitronixXid.FORMAT_ID);
-            raf.writeLong(MonotonicClock.currentTimeMillis());
+            raf.writeLong(nextTimestamp());
             raf.writeByte(TransactionLogHeader.CLEAN_LOG_STATE);
             raf.writeLong(TransactionLogHeader.HEADER_LENGTH);
 
-            byte[] buffer = new byte[4096];
-            int length = (maxLogSizeInMb * 1024 * 1024) / 4096;
-            for (int i = 0; i < length; i++) {
-                raf.write(buffer);
+            long length = TransactionLogHeader.HEADER_LENGTH + maxLogSizeInMb * 1024L * 1024L;
+            if (zeroFill) {
+                zeroFill(raf.getChannel(), TransactionLogHeader.HEADER_LENGTH, length);
+            } else {
+                raf.setLength(length);
             }
         }
     }
 
+    /**
+     * Write zeroes over a region of a file.
+     *
+     * @param fileChannel the channel of the file
+     * @param from        the position of the first byte to write
+     * @param to          the position following the last byte to write
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    static void zeroFill(FileChannel fileChannel, long from, long to) throws IOException {
+        ByteBuffer zeroes = ByteBuffer.allocateDirect((int) Math.min(ZERO_FILL_BUFFER_SIZE, Math.max(0L, to - from)));
+        long position = from;
+        while (position < to) {
+            zeroes.clear().limit((int) Math.min(zeroes.capacity(), to - position));
+            while (zeroes.hasRemaining()) {
+                position += fileChannel.write(zeroes, position);
+            }
+        }
+    }
+
+    /**
+     * @param provisioning the configured provisioning of new log files.
+     * @return true if new log files must be zero filled when they get created, false if they can be created sparse.
+     * @throws java.io.IOException if the provisioning is not supported.
+     */
+    static boolean isZeroFilledUpfront(String provisioning) throws IOException {
+        switch (provisioning) {
+            case ZERO_PROVISIONING:
+                return true;
+            case SPARSE_PROVISIONING:
+            case BACKGROUND_PROVISIONING:
+                return false;
+            default:
+                throw new IOException("unsupported log file provisioning '" + provisioning + "', must be " + ZERO_PROVISIONING
+                        + ", " + SPARSE_PROVISIONING + " or " + BACKGROUND_PROVISIONING);
+        }
+    }
+
+    /**
+     * Get a timestamp for a log file header, later than all the ones previously written by this JVM.
+     *
+     * @return the timestamp, in milliseconds.
+     */
+    static long nextTimestamp() {
+        return lastTimestamp.accumulateAndGet(MonotonicClock.currentTimeMillis(), (last, now) -> Math.max(now, last + 1L));
+    }
+
+    /**
+     * Zero fill the unused part of a log file on a background thread.
+     *
+     * @param tla the TransactionLogAppender of the file, which must not be written until the zero fill completed
+     * @return the future of the zero fill.
+     */
+    private static Future<?> zeroFillInBackground(final TransactionLogAppender tla) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-journal-provisioner").setDaemon(true).build());
+        try {
+            return executor.submit(() -> {
+                tla.zeroFill();
+                if (log.isDebugEnabled()) {
+                    log.debug("zero filled {}", tla);
+                }
+                return null;
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Wait for the background zero fill of the passive log file to complete. The file can be used anyway if the zero
+     * fill failed, it only stays sparse.
+     */
+    private void awaitProvisioning() throws IOException {
+        Future<?> provisioning = this.provisioning;
+        if (provisioning == null) {
+            return;
+        }
+        try {
+            provisioning.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the passive log file to be zero filled");
+        } catch (ExecutionException ex) {
+            log.warn("cannot zero fill passive log file, it stays sparse", ex.getCause());
+        }
+        this.provisioning = null;
+    }
+
+    /**
+     * Switch an empty log file to the configured record format. Files holding records keep their format until they
+     * get rewound.
+     *
+     * @param tla the TransactionLogAppender of the file.
+     * @throws java.io.IOException in case of disk IO failure or if the configured format is not supported.
+     */
+    static void applyLogFormatVersion(TransactionLogAppender tla) throws IOException {
+        int logFormatVersion = TransactionManagerServices.getConfiguration().getLogFormatVersion();
+        if (tla.getPosition() == TransactionLogHeader.HEADER_LENGTH && tla.getFormatVersion() != logFormatVersion) {
+            tla.setFormatVersion(logFormatVersion);
+        }
+    }
+
     /**
      * Initialize the activeTla member variable with the TransactionLogAppender object having the latest timestamp
      * header.
@@ -401,21 +1193,33 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         if (log.isDebugEnabled()) {
             log.debug("swapping journal log file to {}", getPassiveTransactionLogAppender());
         }
+        long startNanos = System.nanoTime();
 
         //step 1
         activeTla.get().force();
 
         //step 2
+        awaitProvisioning();
         TransactionLogAppender passiveTla = getPassiveTransactionLogAppender();
         passiveTla.rewind();
+        passiveTla.deleteCheckpoint();
+        passiveTla.setFormatVersion(configuration.getLogFormatVersion());
 
+        // the record waiting for the rollover gets encoded again afterwards, the calling thread's encoder can be reused
+        TransactionLogRecordEncoder encoder = TransactionLogRecordEncoder.get();
         List<TransactionLogRecord> danglingLogs = activeTla.get().getDanglingLogs();
+        int overflowThreshold = configuration.getOverflowThreshold();
+        if (overflowThreshold > 0 && danglingLogs.size() > overflowThreshold) {
+            danglingLogs = moveToOverflowStore(danglingLogs, overflowThreshold);
+        }
         for (TransactionLogRecord tlog : danglingLogs) {
-            boolean rolloverError = passiveTla.setPositionAndAdvance(tlog);
-            if (rolloverError) {
+            ByteBuffer record = encoder.encode(passiveTla, tlog);
+            long writePosition = passiveTla.reserve(record.remaining());
+            if (writePosition < 0L) {
                 throw new IOException("moving in-flight transactions the rollover log file would have resulted in an overflow of that file");
             }
-            passiveTla.writeLog(tlog);
+            encoder.definitionsReserved();
+            passiveTla.writeLog(record, writePosition, tlog.getStatus(), tlog.getGtrid(), tlog.getUniqueNames());
         }
 
         if (log.isDebugEnabled()) {
@@ -425,19 +1229,46 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         activeTla.get().clearDanglingLogs();
 
         //step 3
-        passiveTla.setTimestamp(MonotonicClock.currentTimeMillis());
+        passiveTla.setTimestamp(nextTimestamp());
 
         //step 4
         passiveTla.force();
 
         //step 5
-        activeTla.set(passiveTla);
+        TransactionLogAppender previousTla = activeTla.getAndSet(passiveTla);
+        checkpointPosition.set(passiveTla.getPosition());
+
+        if (previousTla == unprovisionedTla) {
+            unprovisionedTla = null;
+            provisioning = zeroFillInBackground(previousTla);
+        }
+        statistics.rolledOver(System.nanoTime() - startNanos, danglingLogs.size());
 
         if (log.isDebugEnabled()) {
             log.debug("journal log files swapped");
         }
     }
 
+    /**
+     * Move the oldest dangling records to the overflow store so that they do not get copied on every rollover anymore.
+     * They are safely on disk when this method returns.
+     *
+     * @param danglingLogs      the dangling records of the active log file, oldest first.
+     * @param overflowThreshold the amount of dangling records to keep in the log files.
+     * @return the dangling records to copy to the passive log file.
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private List<TransactionLogRecord> moveToOverflowStore(List<TransactionLogRecord> danglingLogs, int overflowThreshold) throws IOException {
+        if (overflowStore == null) {
+            overflowStore = new OverflowStore(overflowFile, configuration.getMaxLogSizeInMb());
+        }
+
+        int overflowing = danglingLogs.size() - overflowThreshold;
+        overflowStore.add(danglingLogs.subList(0, overflowing));
+        log.info("moved {} dangling record(s) to the overflow store, now holding {} of them", overflowing, overflowStore.size());
+        return danglingLogs.subList(overflowing, danglingLogs.size());
+    }
+
     /**
      * @return the TransactionFileAppender of the passive journal file.
      */
@@ -449,44 +1280,64 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
      * Create a Map of TransactionLogRecord with COMMITTING status objects using the GTRID byte[] as key that have
      * no corresponding COMMITTED record
      *
-     * @param tla the TransactionLogAppender to scan
+     * @param tlas the TransactionLogAppenders to scan, oldest first
      * @return a Map using Uid objects GTRID as key and {@link TransactionLogRecord} as value
      * @throws java.io.IOException in case of disk IO failure.
      */
-    private static Map<Uid, JournalRecord> collectDanglingRecords(TransactionLogAppender tla) throws IOException {
+    static Map<Uid, JournalRecord> collectDanglingRecords(List<TransactionLogAppender> tlas) throws IOException {
         Map<Uid, JournalRecord> danglingRecords = new HashMap<>(64);
-        TransactionLogCursor tlc = tla.getCursor();
+        for (TransactionLogAppender tla : tlas) {
+            collectDanglingRecords(danglingRecords, tla, tla.getScanner(false));
+        }
+        return danglingRecords;
+    }
 
-        try {
-            int committing = 0;
-            int committed = 0;
+    /**
+     * Create a Map of TransactionLogRecord with COMMITTING status objects using the GTRID byte[] as key that have
+     * no corresponding COMMITTED record. The last checkpoint of the file is loaded if there is one so that only the
+     * records written after it have to be read.
+     *
+     * @param tla the TransactionLogAppender to scan
+     * @return a Map using Uid objects GTRID as key and {@link TransactionLogRecord} as value
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private static Map<Uid, JournalRecord> collectDanglingRecords(TransactionLogAppender tla) throws IOException {
+        TransactionLogCheckpoint checkpoint = tla.readCheckpoint();
+        if (checkpoint == null) {
+            return collectDanglingRecords(Collections.singletonList(tla));
+        }
 
-            while (true) {
-                TransactionLogRecord tlog;
-                try {
-                    tlog = tlc.readLog();
-                } catch (CorruptedTransactionLogException ex) {
-                    if (TransactionManagerServices.getConfiguration().isSkipCorruptedLogs()) {
-                        log.error("skipping corrupted log", ex);
-                        continue;
-                    }
-                    throw ex;
-                }
+        Map<Uid, JournalRecord> danglingRecords = new HashMap<>(Math.max(64, checkpoint.getDanglingRecords().size() * 2));
+        for (Map.Entry<Uid, Set<String>> entry : checkpoint.getDanglingRecords().entrySet()) {
+            danglingRecords.put(entry.getKey(), new TransactionLogRecord(Status.STATUS_COMMITTING, entry.getKey(), entry.getValue()));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("loaded {}, reading records of {} written after it", checkpoint, tla);
+        }
+        collectDanglingRecords(danglingRecords, tla, tla.getScanner(checkpoint));
+        return danglingRecords;
+    }
 
-                if (tlog == null) {
-                    break;
-                }
+    private static void collectDanglingRecords(Map<Uid, JournalRecord> danglingRecords, TransactionLogAppender tla, TransactionLogScanner tls) throws IOException {
+        int committing = 0;
+        int committed = 0;
 
+        try (Stream<JournalRecord> records = streamRecords(tls, DANGLING_STATUSES)) {
+            for (Iterator<JournalRecord> i = records.iterator(); i.hasNext(); ) {
+                JournalRecord tlog = i.next();
                 int status = tlog.getStatus();
                 if (status == Status.STATUS_COMMITTING) {
-                    danglingRecords.put(tlog.getGtrid(), tlog);
+                    JournalRecord rec = danglingRecords.get(tlog.getGtrid());
+                    if (rec == null) {
+                        danglingRecords.put(tlog.getGtrid(), tlog);
+                    } else {
+                        // the same transaction may have been logged to several files of a segmented journal
+                        Set<String> recUniqueNames = new HashSet<String>(rec.getUniqueNames());
+                        recUniqueNames.addAll(tlog.getUniqueNames());
+                        danglingRecords.put(tlog.getGtrid(), new TransactionLogRecord(rec.getStatus(), rec.getGtrid(), recUniqueNames));
+                    }
                     committing++;
-                }
-
-                // COMMITTED is when there was no problem in the transaction
-                // UNKNOWN is when a 2PC transaction heuristically terminated
-                // ROLLEDBACK is when a 1PC transaction rolled back during commit
-                if (status == Status.STATUS_COMMITTED || status == Status.STATUS_UNKNOWN || status == Status.STATUS_ROLLEDBACK) {
+                } else {
                     JournalRecord rec = danglingRecords.get(tlog.getGtrid());
                     if (rec != null) {
                         Set<String> recUniqueNames = new HashSet<String>(rec.getUniqueNames());
@@ -500,14 +1351,13 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
                     }
                 }
             }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("collected dangling records of " + tla + ", committing: " + committing + ", committed: " + committed + ", delta: " + danglingRecords.size());
-            }
-        } finally {
-            tlc.close();
+        if (log.isDebugEnabled()) {
+            log.debug("collected dangling records of " + tla + ", committing: " + committing + ", committed: " + committed + ", delta: " + danglingRecords.size());
         }
-        return danglingRecords;
     }
 
     /**
@@ -518,19 +1368,77 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
      * @return an iterator over all contained log records.
      * @throws java.io.IOException in case of the initial disk IO failed (subsequent errors are unchecked exceptions).
      */
-    private static Iterator<TransactionLogRecord> iterateRecords(TransactionLogAppender tla, final boolean skipCrcCheck) throws IOException {
-        final TransactionLogCursor tlc = tla.getCursor();
+    static Iterator<TransactionLogRecord> iterateRecords(TransactionLogAppender tla, boolean skipCrcCheck) throws IOException {
+        return iterateRecords(tla.getScanner(skipCrcCheck));
+    }
+
+    /**
+     * Stream the records of log files matching a filter, lazily reading one file after the other.
+     *
+     * @param tlas           the TransactionLogAppenders to scan, oldest first
+     * @param filter         the criteria records must match.
+     * @param includeInvalid sets whether CRC checks are skipped or not.
+     * @return a stream of the matching records which must be closed to release the files.
+     * @throws java.io.IOException in case of the initial disk IO failed (subsequent errors are unchecked exceptions).
+     */
+    static Stream<JournalRecord> streamRecords(List<TransactionLogAppender> tlas, JournalRecordFilter filter, boolean includeInvalid) throws IOException {
+        Stream<JournalRecord> records = Stream.empty();
+        try {
+            for (TransactionLogAppender tla : tlas) {
+                records = Stream.concat(records, streamRecords(tla.getScanner(includeInvalid), filter));
+            }
+            return records;
+        } catch (IOException | RuntimeException ex) {
+            records.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Stream the records read by a scanner matching a filter. Records are decoded as the stream gets consumed so that
+     * only the records ahead of the consumer are held in memory.
+     *
+     * @param tls    the TransactionLogScanner to read, closed with the stream
+     * @param filter the criteria records must match.
+     * @return a stream of the matching records.
+     * @throws java.io.IOException in case of the initial disk IO failed (subsequent errors are unchecked exceptions).
+     */
+    static Stream<JournalRecord> streamRecords(final TransactionLogScanner tls, JournalRecordFilter filter) throws IOException {
+        Iterator<TransactionLogRecord> it;
+        try {
+            it = iterateRecords(tls);
+        } catch (IOException | RuntimeException ex) {
+            tls.close();
+            throw ex;
+        }
+
+        Stream<JournalRecord> records = StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        if (filter != JournalRecordFilter.all()) {
+            records = records.filter(filter);
+        }
+        return records.onClose(() -> {
+            try {
+                tls.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    private static Iterator<TransactionLogRecord> iterateRecords(final TransactionLogScanner tls) throws IOException {
         final Iterator<TransactionLogRecord> it = new Iterator<>() {
             TransactionLogRecord tlog;
+            boolean exhausted;
 
             @Override
             public boolean hasNext() {
-                while (tlog == null) {
+                while (tlog == null && !exhausted) {
                     try {
                         try {
-                            tlog = tlc.readLog(skipCrcCheck);
+                            tlog = tls.readLog();
                             if (tlog == null) {
-                                break;
+                                exhausted = true;
+                                tls.close();
                             }
                         } catch (CorruptedTransactionLogException ex) {
                             if (TransactionManagerServices.getConfiguration().isSkipCorruptedLogs()) {
@@ -540,7 +1448,7 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
                             throw ex;
                         }
                     } catch (IOException e) {
-                        throw new RuntimeException(e);
+                        throw new UncheckedIOException(e);
                     }
                 }
 
@@ -568,11 +1476,8 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         try {
             it.hasNext();
             return it;
-        } catch (RuntimeException ex) {
-            if (ex.getCause() instanceof IOException) {
-                throw (IOException) ex.getCause();
-            }
-            throw ex;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
         }
     }
 }
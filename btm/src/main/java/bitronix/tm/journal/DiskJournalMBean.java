@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+/**
+ * {@link DiskJournal} Management interface.
+ * <p>Histograms have power of two buckets: bucket 0 counts the zero values and bucket <code>i</code> the values from
+ * <code>2^(i-1)</code> inclusive to <code>2^i</code> exclusive. Latencies are in microseconds. Rates are computed
+ * between two reads at least one second apart.</p>
+ *
+ * @author Ludovic Orban
+ */
+public interface DiskJournalMBean {
+
+    long getRecordsWritten();
+
+    long getBytesWritten();
+
+    double getRecordsWrittenPerSecond();
+
+    double getBytesWrittenPerSecond();
+
+    long[] getLogLatencyHistogram();
+
+    long[] getForceLatencyHistogram();
+
+    long getFsyncCount();
+
+    double getFsyncsPerSecond();
+
+    long[] getFsyncBatchSizeHistogram();
+
+    long getRolloverCount();
+
+    long getRolloverDurationMillis();
+
+    long getLastRolloverDurationMillis();
+
+    long getRolloverDanglingRecords();
+
+    int getLastRolloverDanglingRecords();
+
+    double getFillPercentage();
+
+    long getFlushedTimestamp();
+
+    long getUnflushedRecordCount();
+
+}
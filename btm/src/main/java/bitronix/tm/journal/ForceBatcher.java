@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces concurrent disk force requests (group commit).
+ * <p>Every completed journal write gets a sequence number. The first thread asking for a force becomes the leader:
+ * it optionally waits for other threads to join the batch, takes a snapshot of the write sequence then performs a
+ * single force which covers all writes up to that snapshot. Threads asking for a force while another one is in
+ * progress are followers: they only block until a force covering their own writes has completed. If the force they
+ * waited for started too early to cover them, one of them becomes the next leader.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class ForceBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ForceBatcher.class);
+
+    /**
+     * The action performing the physical force.
+     */
+    interface Forcer {
+        void force() throws IOException;
+    }
+
+    private final Forcer forcer;
+    private final long maxWaitNanos;
+    private final int maxBatchSize;
+
+    private final AtomicLong writeSequence = new AtomicLong();
+    private volatile long forcedSequence;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition forceDone = lock.newCondition();
+    private final Condition batchFull = lock.newCondition();
+    private boolean forcing;
+    private int waiting;
+
+    /**
+     * Create a force batcher.
+     *
+     * @param forcer       the action performing the physical force.
+     * @param maxWaitNanos the maximum amount of nanoseconds a leader waits for followers to join its batch before
+     *                     forcing. Zero forces immediately.
+     * @param maxBatchSize the amount of threads in a batch after which the leader stops waiting for more to join.
+     */
+    ForceBatcher(Forcer forcer, long maxWaitNanos, int maxBatchSize) {
+        this.forcer = forcer;
+        this.maxWaitNanos = maxWaitNanos;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Must be called after each completed write that must be covered by subsequent forces.
+     *
+     * @return the sequence number of the write.
+     */
+    long writeCompleted() {
+        return writeSequence.incrementAndGet();
+    }
+
+    /**
+     * @return true if some completed writes are not covered by a force yet.
+     */
+    boolean needsForce() {
+        return forcedSequence < writeSequence.get();
+    }
+
+    /**
+     * @return the sequence number of the last write known to be covered by a force.
+     */
+    long getForcedSequence() {
+        return forcedSequence;
+    }
+
+    /**
+     * Block until all writes completed before this call are covered by a force, either performed by this thread or
+     * by a concurrent one.
+     *
+     * @throws IOException if the force performed by this thread failed.
+     */
+    void force() throws IOException {
+        long target = writeSequence.get();
+        if (forcedSequence >= target) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            while (forcedSequence < target) {
+                if (forcing) {
+                    waiting++;
+                    try {
+                        if (waiting + 1 >= maxBatchSize) {
+                            batchFull.signal();
+                        }
+                        forceDone.awaitUninterruptibly();
+                    } finally {
+                        waiting--;
+                    }
+                    continue;
+                }
+
+                lead();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Perform a force on behalf of the current batch. Must be called with the lock held.
+     *
+     * @throws IOException if the force failed.
+     */
+    private void lead() throws IOException {
+        forcing = true;
+        try {
+            awaitBatch();
+
+            long upTo = writeSequence.get();
+            if (log.isDebugEnabled()) {
+                log.debug("forcing on behalf of {} waiting thread(s), covering writes up to {}", waiting, upTo);
+            }
+            lock.unlock();
+            try {
+                forcer.force();
+            } finally {
+                lock.lock();
+            }
+            if (upTo > forcedSequence) {
+                forcedSequence = upTo;
+            }
+        } finally {
+            forcing = false;
+            forceDone.signalAll();
+        }
+    }
+
+    private void awaitBatch() {
+        long remaining = maxWaitNanos;
+        while (remaining > 0L && waiting + 1 < maxBatchSize) {
+            try {
+                remaining = batchFull.awaitNanos(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+}
@@ -21,6 +21,8 @@ import bitronix.tm.utils.Uid;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Transaction logs journal implementations must implement this interface to provide functionality required by the
@@ -41,6 +43,27 @@ public interface Journal extends Service {
      */
     void log(int status, Uid gtrid, Set<String> uniqueNames) throws IOException;
 
+    /**
+     * Log a new transaction status to journal and get notified once it is safely stored.
+     * <p>The record is added to the journal before this method returns, the returned stage only tracks its
+     * durability. The default implementation blocks in {@link #log(int, Uid, Set)} and {@link #force()}, journals
+     * able to force in the background should override it.</p>
+     *
+     * @param status      transaction status to log.
+     * @param gtrid       GTRID of the transaction.
+     * @param uniqueNames unique names of the RecoverableXAResourceProducers participating in the transaction.
+     * @return a stage completing when the record is synchronized with permanent storage, or exceptionally with an
+     *         {@link IOException} if an I/O error occurs.
+     */
+    default CompletionStage<Void> logAsync(int status, Uid gtrid, Set<String> uniqueNames) {
+        try {
+            log(status, gtrid, uniqueNames);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return forceAsync();
+    }
+
     /**
      * Open the journal. Integrity should be checked and an exception should be thrown in case the journal is corrupt.
      *
@@ -62,6 +85,23 @@ public interface Journal extends Service {
      */
     void force() throws IOException;
 
+    /**
+     * Force journal to synchronize with permanent storage without blocking the calling thread.
+     * <p>The default implementation blocks in {@link #force()}, journals able to force in the background should
+     * override it.</p>
+     *
+     * @return a stage completing when all records logged before this call are synchronized with permanent storage,
+     *         or exceptionally with an {@link IOException} if an I/O error occurs.
+     */
+    default CompletionStage<Void> forceAsync() {
+        try {
+            force();
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Collect all dangling records of the journal, ie: COMMITTING records with no corresponding COMMITTED record.
      *
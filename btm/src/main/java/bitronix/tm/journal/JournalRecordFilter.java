@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Decoder;
+import bitronix.tm.utils.Uid;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+/**
+ * Immutable criteria selecting the journal records returned by {@link ReadableJournal#streamRecords}. Records must
+ * match all the criteria set on a filter, the <code>with</code> methods return a copy of the filter with one more
+ * criterion set.
+ *
+ * @author Ludovic Orban
+ */
+public final class JournalRecordFilter implements Predicate<JournalRecord> {
+
+    private static final JournalRecordFilter ALL = new JournalRecordFilter(null, null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    private final BitSet statuses;
+    private final Uid gtrid;
+    private final String uniqueName;
+    private final long fromTime;
+    private final long toTime;
+
+    private JournalRecordFilter(BitSet statuses, Uid gtrid, String uniqueName, long fromTime, long toTime) {
+        this.statuses = statuses;
+        this.gtrid = gtrid;
+        this.uniqueName = uniqueName;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+    }
+
+    /**
+     * @return a filter matching all records.
+     */
+    public static JournalRecordFilter all() {
+        return ALL;
+    }
+
+    /**
+     * @param statuses the statuses records must have, see {@link jakarta.transaction.Status} constants.
+     * @return a copy of this filter only matching records with one of the specified statuses.
+     */
+    public JournalRecordFilter withStatus(int... statuses) {
+        BitSet bits = new BitSet();
+        for (int status : statuses) {
+            bits.set(status);
+        }
+        return new JournalRecordFilter(bits, gtrid, uniqueName, fromTime, toTime);
+    }
+
+    /**
+     * @param gtrid the GTRID of the transaction records must belong to.
+     * @return a copy of this filter only matching records of the specified transaction.
+     */
+    public JournalRecordFilter withGtrid(Uid gtrid) {
+        return new JournalRecordFilter(statuses, gtrid, uniqueName, fromTime, toTime);
+    }
+
+    /**
+     * @param uniqueName the unique name of a resource records must reference.
+     * @return a copy of this filter only matching records referencing the specified resource.
+     */
+    public JournalRecordFilter withUniqueName(String uniqueName) {
+        return new JournalRecordFilter(statuses, gtrid, uniqueName, fromTime, toTime);
+    }
+
+    /**
+     * @param fromTime the earliest record time, inclusive, in milliseconds.
+     * @param toTime   the latest record time, exclusive, in milliseconds.
+     * @return a copy of this filter only matching records created within the specified time range.
+     */
+    public JournalRecordFilter withTimeRange(long fromTime, long toTime) {
+        return new JournalRecordFilter(statuses, gtrid, uniqueName, fromTime, toTime);
+    }
+
+    /**
+     * @param record the record to check.
+     * @return true if the record matches all the criteria of this filter.
+     */
+    @Override
+    public boolean test(JournalRecord record) {
+        int status = record.getStatus();
+        return (statuses == null || (status >= 0 && statuses.get(status)))
+                && (gtrid == null || gtrid.equals(record.getGtrid()))
+                && (record.getTime() >= fromTime && record.getTime() < toTime)
+                && (uniqueName == null || record.getUniqueNames().contains(uniqueName));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("a JournalRecordFilter matching");
+        if (statuses != null) {
+            sb.append(" statuses=[");
+            for (int status = statuses.nextSetBit(0); status >= 0; status = statuses.nextSetBit(status + 1)) {
+                sb.append(Decoder.decodeStatus(status)).append(statuses.nextSetBit(status + 1) >= 0 ? ", " : "");
+            }
+            sb.append("]");
+        }
+        if (gtrid != null) {
+            sb.append(" gtrid=").append(gtrid);
+        }
+        if (uniqueName != null) {
+            sb.append(" uniqueName=").append(uniqueName);
+        }
+        if (fromTime != Long.MIN_VALUE || toTime != Long.MAX_VALUE) {
+            sb.append(" time=[").append(fromTime).append(", ").append(toTime).append(")");
+        }
+        if (this == ALL) {
+            sb.append(" all records");
+        }
+        return sb.toString();
+    }
+
+}
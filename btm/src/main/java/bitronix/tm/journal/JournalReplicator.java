@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import jakarta.transaction.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships the records appended to a disk journal to a {@link JournalStandby} over a socket.
+ * <p>Records are queued by the logging threads and sent by a background thread. The standby acknowledges the records
+ * once it forced them to its own journal and {@link #awaitAcknowledged(long)} lets the journal wait until a committing
+ * record is safely stored by the standby before reporting it forced: the standby never misses a transaction the
+ * primary started to commit, which would otherwise make recovery presume it aborted. Other records are not waited for,
+ * losing them only makes the standby recover transactions which already completed.</p>
+ * <p>A standby which is not connected or does not acknowledge in time is not waited for, so that it cannot block
+ * transactions: the connection is then dropped and the standby resynchronized once it is back. A standby which was not
+ * connected when the primary died is not a safe recovery source.</p>
+ * <p>Every time a connection is established, the dangling records of the journal are sent first so that the standby
+ * can drop the transactions which completed while it was not connected. The same happens when the queue overflows,
+ * then the queued records are dropped instead of blocking the logging threads. The dangling records are taken after
+ * the queue got cleared so that all the records missing from the queue are covered by them.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class JournalReplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalReplicator.class);
+
+    static final int MAGIC = 0x42544d52;
+    static final byte RECORD = 1;
+    static final byte SNAPSHOT_BEGIN = 2;
+    static final byte SNAPSHOT_END = 3;
+    static final byte ACK = 4;
+
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long RETRY_INTERVAL_MILLIS = 1000L;
+    private static final long ACK_TIMEOUT_MILLIS = 5000L;
+
+    /**
+     * Source of the dangling records sent when the standby must be resynchronized.
+     */
+    interface SnapshotSource {
+        Collection<JournalRecord> danglingRecords() throws IOException;
+    }
+
+    private final InetSocketAddress target;
+    private final SnapshotSource snapshotSource;
+    private final long closeTimeoutMillis;
+    private final BlockingQueue<QueuedRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread sender;
+
+    /**
+     * Guards the sequence of the committing records and the acknowledgements.
+     */
+    private final Object ackLock = new Object();
+    /**
+     * Records sent and not acknowledged yet, as pairs of the amount of records sent on the connection and the highest
+     * committing record sequence they cover.
+     */
+    private final Deque<long[]> unacknowledged = new ArrayDeque<>();
+    private long committingSequence;
+    private long acknowledgedSequence;
+    private long sentCount;
+
+    private volatile boolean connected;
+    private volatile boolean resync;
+    private volatile boolean closing;
+    private volatile Socket socket;
+
+    /**
+     * Create a replicator and start its background thread.
+     *
+     * @param target             the address of the standby.
+     * @param snapshotSource     the source of the dangling records of the journal.
+     * @param closeTimeoutMillis the amount of milliseconds to wait for the queued records to be shipped on close.
+     */
+    JournalReplicator(InetSocketAddress target, SnapshotSource snapshotSource, long closeTimeoutMillis) {
+        this.target = target;
+        this.snapshotSource = snapshotSource;
+        this.closeTimeoutMillis = closeTimeoutMillis;
+        this.sender = new Thread(this::run, "bitronix-journal-replicator");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Parse a <code>host:port</code> replication target.
+     *
+     * @param target the replication target.
+     * @return the address of the standby.
+     * @throws IOException if the target is malformed.
+     */
+    static InetSocketAddress parseTarget(String target) throws IOException {
+        int colon = target.lastIndexOf(':');
+        try {
+            if (colon < 1) {
+                throw new NumberFormatException();
+            }
+            return InetSocketAddress.createUnresolved(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("invalid journal replication target '" + target + "', must be host:port", ex);
+        }
+    }
+
+    /**
+     * Queue a record appended to the journal. Must be called after the record got tracked as dangling by the journal.
+     *
+     * @param status      the status of the record.
+     * @param gtrid       the GTRID of the transaction.
+     * @param uniqueNames the unique names of the resources.
+     */
+    void append(int status, Uid gtrid, Set<String> uniqueNames) {
+        // the dangling records sent when connecting cover everything appended before
+        if (!connected) {
+            return;
+        }
+        TransactionLogRecord tlog = new TransactionLogRecord(status, gtrid, uniqueNames);
+        boolean queued;
+        if (status == Status.STATUS_COMMITTING) {
+            // committing records must be queued in sequence order for acknowledgements to be cumulative
+            synchronized (ackLock) {
+                queued = queue.offer(new QueuedRecord(tlog, ++committingSequence));
+            }
+        } else {
+            queued = queue.offer(new QueuedRecord(tlog, 0L));
+        }
+        if (!queued) {
+            resync = true;
+        }
+    }
+
+    /**
+     * @return the sequence of the last committing record appended, to be passed to {@link #awaitAcknowledged(long)}.
+     */
+    long getCommittingSequence() {
+        synchronized (ackLock) {
+            return committingSequence;
+        }
+    }
+
+    /**
+     * @param sequence a committing record sequence.
+     * @return true if the standby acknowledged the committing records up to the given sequence or is not connected.
+     */
+    boolean isAcknowledged(long sequence) {
+        synchronized (ackLock) {
+            return !connected || acknowledgedSequence >= sequence;
+        }
+    }
+
+    /**
+     * Wait until the standby acknowledged the committing records up to the given sequence. Returns without waiting
+     * when the standby is not connected. When the standby does not acknowledge in time, the connection is dropped so
+     * that the standby gets resynchronized.
+     *
+     * @param sequence the committing record sequence returned by {@link #getCommittingSequence()}.
+     * @throws InterruptedException if the calling thread got interrupted while waiting.
+     */
+    void awaitAcknowledged(long sequence) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MILLIS);
+        synchronized (ackLock) {
+            while (connected && acknowledgedSequence < sequence) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0L) {
+                    log.warn("journal standby {} did not acknowledge committing records within {}ms, resynchronizing it", target, ACK_TIMEOUT_MILLIS);
+                    connected = false;
+                    closeSocket();
+                    return;
+                }
+                ackLock.wait(remainingMillis);
+            }
+        }
+    }
+
+    /**
+     * @return true if connected to the standby.
+     */
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Ship the queued records then stop the background thread.
+     */
+    void close() {
+        closing = true;
+        if (!connected) {
+            // nothing can be shipped, do not wait for the standby to come back
+            closeSocket();
+            sender.interrupt();
+        }
+        try {
+            sender.join(closeTimeoutMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.isAlive()) {
+            log.warn("{} record(s) could not be shipped to journal standby {} before closing", queue.size(), target);
+            closeSocket();
+            sender.interrupt();
+        }
+    }
+
+    private void run() {
+        while (!closing) {
+            boolean established = false;
+            try {
+                Socket socket = new Socket();
+                this.socket = socket;
+                Thread ackReceiver = null;
+                try {
+                    socket.connect(new InetSocketAddress(target.getHostString(), target.getPort()), CONNECT_TIMEOUT_MILLIS);
+                    established = true;
+                    socket.setTcpNoDelay(true);
+                    synchronized (ackLock) {
+                        unacknowledged.clear();
+                        sentCount = 0L;
+                    }
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    ackReceiver = new Thread(() -> receiveAcks(in), "bitronix-journal-replicator-ack");
+                    ackReceiver.setDaemon(true);
+                    ackReceiver.start();
+                    ship(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+                    // tell the standby all records got shipped, it closes the connection once they are all applied
+                    socket.shutdownOutput();
+                    ackReceiver.join();
+                } finally {
+                    synchronized (ackLock) {
+                        connected = false;
+                        ackLock.notifyAll();
+                    }
+                    closeSocket();
+                    if (ackReceiver != null) {
+                        ackReceiver.join();
+                    }
+                }
+            } catch (IOException ex) {
+                if (closing) {
+                    return;
+                }
+                if (established) {
+                    log.warn("lost connection to journal standby " + target + ", reconnecting", ex);
+                } else if (log.isDebugEnabled()) {
+                    log.debug("cannot ship records to journal standby " + target + ", retrying in " + RETRY_INTERVAL_MILLIS + "ms", ex);
+                }
+                try {
+                    Thread.sleep(RETRY_INTERVAL_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void ship(DataOutputStream out) throws IOException, InterruptedException {
+        out.writeInt(MAGIC);
+        connected = true;
+        resync = true;
+        log.info("shipping journal records to standby {}", target);
+
+        while (true) {
+            if (resync) {
+                resync = false;
+                queue.clear();
+                sendSnapshot(out);
+            }
+
+            QueuedRecord queued = queue.poll(100L, TimeUnit.MILLISECONDS);
+            if (queued == null) {
+                out.flush();
+                if (closing) {
+                    return;
+                }
+                continue;
+            }
+            TransactionLogRecord tlog = queued.tlog;
+            writeRecord(out, tlog.getStatus(), tlog.getGtrid(), tlog.getUniqueNames());
+            sent(1, queued.sequence);
+            if (queue.isEmpty()) {
+                out.flush();
+            }
+        }
+    }
+
+    private void sendSnapshot(DataOutputStream out) throws IOException {
+        // committing records are tracked as dangling before being appended: the snapshot covers this sequence
+        long covered = getCommittingSequence();
+        Collection<JournalRecord> danglingRecords = snapshotSource.danglingRecords();
+        out.writeByte(SNAPSHOT_BEGIN);
+        for (JournalRecord record : danglingRecords) {
+            writeRecord(out, record.getStatus(), record.getGtrid(), record.getUniqueNames());
+            sent(1, 0L);
+        }
+        sent(0, covered);
+        out.writeByte(SNAPSHOT_END);
+        out.flush();
+        if (log.isDebugEnabled()) {
+            log.debug("sent {} dangling record(s) to journal standby {}", danglingRecords.size(), target);
+        }
+    }
+
+    /**
+     * Account for records written to the standby.
+     *
+     * @param count    the amount of records written.
+     * @param sequence the highest committing record sequence covered once the standby acknowledged them, 0 if none.
+     */
+    private void sent(int count, long sequence) {
+        synchronized (ackLock) {
+            sentCount += count;
+            if (sequence > 0L) {
+                unacknowledged.addLast(new long[]{sentCount, sequence});
+            }
+        }
+    }
+
+    /**
+     * Read the amount of records the standby acknowledged until the connection gets closed.
+     */
+    private void receiveAcks(DataInputStream in) {
+        try {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return;
+                }
+                if (type != ACK) {
+                    throw new IOException("unexpected frame type " + type + " from journal standby");
+                }
+                long appliedCount = in.readLong();
+                synchronized (ackLock) {
+                    while (!unacknowledged.isEmpty() && unacknowledged.peekFirst()[0] <= appliedCount) {
+                        acknowledgedSequence = Math.max(acknowledgedSequence, unacknowledged.pollFirst()[1]);
+                    }
+                    ackLock.notifyAll();
+                }
+            }
+        } catch (IOException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug("stopped receiving acknowledgements from journal standby " + target, ex);
+            }
+            closeSocket();
+        }
+    }
+
+    private void closeSocket() {
+        Socket socket = this.socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug("error closing socket to journal standby " + target, ex);
+                }
+            }
+        }
+    }
+
+    private static final class QueuedRecord {
+        private final TransactionLogRecord tlog;
+        private final long sequence;
+
+        private QueuedRecord(TransactionLogRecord tlog, long sequence) {
+            this.tlog = tlog;
+            this.sequence = sequence;
+        }
+    }
+
+    static void writeRecord(DataOutputStream out, int status, Uid gtrid, Set<String> uniqueNames) throws IOException {
+        byte[] array = gtrid.getArray();
+        out.writeByte(RECORD);
+        out.writeInt(status);
+        out.writeShort(array.length);
+        out.write(array);
+        out.writeShort(uniqueNames.size());
+        for (String uniqueName : uniqueNames) {
+            out.writeUTF(uniqueName);
+        }
+    }
+
+    static TransactionLogRecord readRecord(DataInputStream in) throws IOException {
+        int status = in.readInt();
+        byte[] array = new byte[in.readUnsignedShort()];
+        in.readFully(array);
+        int count = in.readUnsignedShort();
+        Set<String> uniqueNames = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            uniqueNames.add(in.readUTF());
+        }
+        return new TransactionLogRecord(status, new Uid(array), uniqueNames);
+    }
+
+}
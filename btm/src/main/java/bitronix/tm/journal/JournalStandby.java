@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import jakarta.transaction.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * Hot standby of a disk journal, receiving the records shipped by the journal of another process configured with
+ * {@link bitronix.tm.Configuration#getReplicationTarget()}.
+ * <p>Received records are logged to a local journal, which keeps a live copy of the files of the primary, and the
+ * dangling transactions are tracked in memory. When the primary dies, {@link #getDanglingRecords()} tells right away
+ * which transactions need recovery. To take over, close the standby then start the transaction manager on the files of
+ * the local journal: the checkpoint written when closing it avoids reading them all again.</p>
+ * <p>Only one primary can be connected at a time. Every connection starts with the dangling records of the primary,
+ * the transactions the standby still tracks without the primary having them anymore completed while the standby was
+ * disconnected and are logged as committed.</p>
+ * <p>Committing records are acknowledged to the primary once forced to the local journal and the primary waits for
+ * these acknowledgements before reporting its own records forced, as long as the standby is connected and answers in
+ * time. A standby which was not connected when the primary died may lack transactions the primary started to commit
+ * and is not a safe recovery source: recovering from it would presume them aborted while some of their resources
+ * committed. {@link #isConnected()} tells if the standby was connected.</p>
+ *
+ * @author Ludovic Orban
+ */
+public class JournalStandby {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalStandby.class);
+
+    private final Journal journal;
+    private final int port;
+    private final DanglingRecordTracker danglingRecords = new DanglingRecordTracker();
+
+    private volatile ServerSocket serverSocket;
+    private volatile Socket socket;
+    private volatile Thread receiver;
+    private volatile boolean connected;
+    private volatile long receivedRecordCount;
+
+    /**
+     * Create a standby. You must call start() to let it receive records.
+     *
+     * @param journal the local journal the received records are logged to.
+     * @param port    the port to listen on, 0 to pick a free one.
+     */
+    public JournalStandby(Journal journal, int port) {
+        this.journal = journal;
+        this.port = port;
+    }
+
+    /**
+     * Open the local journal and start listening for a primary.
+     *
+     * @throws IOException if the journal cannot be opened or the port cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        if (receiver != null) {
+            log.warn("journal standby already started");
+            return;
+        }
+
+        journal.open();
+        danglingRecords.clear();
+        for (JournalRecord record : journal.collectDanglingRecords().values()) {
+            danglingRecords.add(record.getGtrid(), record.getUniqueNames());
+        }
+        try {
+            serverSocket = new ServerSocket(port);
+        } catch (IOException ex) {
+            journal.close();
+            throw ex;
+        }
+
+        receiver = new Thread(this::run, "bitronix-journal-standby");
+        receiver.setDaemon(true);
+        receiver.start();
+        log.info("journal standby listening on port {} with {} dangling record(s)", serverSocket.getLocalPort(), danglingRecords.size());
+    }
+
+    /**
+     * @return the port the standby listens on.
+     */
+    public int getLocalPort() {
+        ServerSocket serverSocket = this.serverSocket;
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return true if a primary is connected.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return the amount of records received since the standby got started.
+     */
+    public long getReceivedRecordCount() {
+        return receivedRecordCount;
+    }
+
+    /**
+     * Get the transactions which are not completely committed as of the last record received.
+     *
+     * @return a Map using Uid objects GTRID as key and {@link JournalRecord} as value.
+     */
+    public Map<Uid, JournalRecord> getDanglingRecords() {
+        Map<Uid, Set<String>> snapshot = danglingRecords.snapshot();
+        Map<Uid, JournalRecord> records = new HashMap<>(Math.max(64, snapshot.size() * 2));
+        for (Map.Entry<Uid, Set<String>> entry : snapshot.entrySet()) {
+            records.put(entry.getKey(), new TransactionLogRecord(Status.STATUS_COMMITTING, entry.getKey(), entry.getValue()));
+        }
+        return records;
+    }
+
+    /**
+     * Stop receiving records and close the local journal.
+     *
+     * @throws IOException if the local journal cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        Thread receiver = this.receiver;
+        if (receiver == null) {
+            return;
+        }
+
+        closeQuietly(serverSocket);
+        closeQuietly(socket);
+        try {
+            receiver.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        this.receiver = null;
+        journal.close();
+    }
+
+    private void run() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ex) {
+                // closed
+                return;
+            }
+
+            this.socket = socket;
+            connected = true;
+            try {
+                receive(socket);
+            } catch (IOException ex) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                log.warn("lost connection to journal primary " + socket.getRemoteSocketAddress(), ex);
+            } finally {
+                connected = false;
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void receive(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (in.readInt() != JournalReplicator.MAGIC) {
+            throw new IOException("not a journal replication stream");
+        }
+        log.info("receiving journal records from primary {}", socket.getRemoteSocketAddress());
+
+        Map<Uid, Set<String>> snapshot = null;
+        long appliedCount = 0L;
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                break;
+            }
+            switch (type) {
+                case JournalReplicator.SNAPSHOT_BEGIN:
+                    snapshot = new HashMap<>();
+                    break;
+                case JournalReplicator.RECORD:
+                    TransactionLogRecord tlog = JournalReplicator.readRecord(in);
+                    if (snapshot != null) {
+                        snapshot.computeIfAbsent(tlog.getGtrid(), gtrid -> new HashSet<>()).addAll(tlog.getUniqueNames());
+                    }
+                    apply(tlog.getStatus(), tlog.getGtrid(), tlog.getUniqueNames());
+                    receivedRecordCount++;
+                    appliedCount++;
+                    break;
+                case JournalReplicator.SNAPSHOT_END:
+                    if (snapshot == null) {
+                        throw new IOException("unexpected end of dangling records in journal replication stream");
+                    }
+                    completeMissing(snapshot);
+                    snapshot = null;
+                    break;
+                default:
+                    throw new IOException("unexpected frame type " + type + " in journal replication stream");
+            }
+
+            if (in.available() == 0) {
+                journal.force();
+                // the primary waits for committing records to be acknowledged before reporting them forced
+                out.writeByte(JournalReplicator.ACK);
+                out.writeLong(appliedCount);
+                out.flush();
+            }
+        }
+
+        // the primary waits for the connection to be closed to know all its records got applied
+        journal.force();
+        if (log.isDebugEnabled()) {
+            log.debug("journal primary {} disconnected", socket.getRemoteSocketAddress());
+        }
+    }
+
+    /**
+     * Log as committed the resources of the transactions tracked by the standby which the primary does not have
+     * anymore.
+     */
+    private void completeMissing(Map<Uid, Set<String>> snapshot) throws IOException {
+        int completed = 0;
+        for (Map.Entry<Uid, Set<String>> entry : danglingRecords.snapshot().entrySet()) {
+            Set<String> missing = new HashSet<>(entry.getValue());
+            Set<String> uniqueNames = snapshot.get(entry.getKey());
+            if (uniqueNames != null) {
+                missing.removeAll(uniqueNames);
+            }
+            if (!missing.isEmpty()) {
+                apply(Status.STATUS_COMMITTED, entry.getKey(), missing);
+                completed++;
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("resynchronized with journal primary: {} dangling record(s), {} completed while disconnected", snapshot.size(), completed);
+        }
+    }
+
+    private void apply(int status, Uid gtrid, Set<String> uniqueNames) throws IOException {
+        journal.log(status, gtrid, uniqueNames);
+        if (status == Status.STATUS_COMMITTING) {
+            danglingRecords.add(gtrid, uniqueNames);
+        } else if (status == Status.STATUS_COMMITTED || status == Status.STATUS_UNKNOWN || status == Status.STATUS_ROLLEDBACK) {
+            danglingRecords.remove(gtrid, uniqueNames);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug("error closing " + closeable, ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * I/O statistics of a disk journal.
+ * <p>The writing threads only update striped counters and atomic histogram buckets, they never take a lock. Rates
+ * are computed when they are read, between the two latest samples of the counters taken at least one second
+ * apart.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class JournalStatistics {
+
+    private static final long MIN_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final Histogram logLatencies = new Histogram();
+    private final Histogram forceLatencies = new Histogram();
+
+    private final LongAdder fsyncs = new LongAdder();
+    private final AtomicLong fsyncedRecords = new AtomicLong();
+    private final Histogram fsyncBatchSizes = new Histogram();
+
+    private final LongAdder rollovers = new LongAdder();
+    private final LongAdder rolloverNanos = new LongAdder();
+    private final LongAdder rolloverDanglingRecords = new LongAdder();
+    private volatile long lastRolloverNanos;
+    private volatile int lastRolloverDanglingRecords;
+
+    private Sample previousSample;
+    private Sample latestSample;
+
+    JournalStatistics() {
+        latestSample = previousSample = new Sample(System.nanoTime(), 0L, 0L, 0L);
+    }
+
+    /**
+     * Record a written log record.
+     *
+     * @param recordSize   the size of the record in bytes.
+     * @param elapsedNanos the time the write took.
+     */
+    void logged(int recordSize, long elapsedNanos) {
+        records.increment();
+        bytes.add(recordSize);
+        logLatencies.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    /**
+     * Record a force request, which may have been covered by a force of another thread.
+     *
+     * @param elapsedNanos the time the caller waited for its records to be on disk.
+     */
+    void forced(long elapsedNanos) {
+        forceLatencies.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    /**
+     * Record a physical force of the log file. The batch size is the amount of records it covered which were not
+     * covered by a previous one.
+     *
+     * @param written the amount of records written before the force started, see {@link #getRecordsWritten()}.
+     */
+    void fsynced(long written) {
+        fsyncs.increment();
+        long previous = fsyncedRecords.getAndAccumulate(written, Math::max);
+        fsyncBatchSizes.record(Math.max(0L, written - previous));
+    }
+
+    /**
+     * Record a swap of the log files.
+     *
+     * @param elapsedNanos    the time the swap took.
+     * @param danglingRecords the amount of dangling records copied to the new log file.
+     */
+    void rolledOver(long elapsedNanos, int danglingRecords) {
+        rollovers.increment();
+        rolloverNanos.add(elapsedNanos);
+        rolloverDanglingRecords.add(danglingRecords);
+        lastRolloverNanos = elapsedNanos;
+        lastRolloverDanglingRecords = danglingRecords;
+    }
+
+    long getRecordsWritten() {
+        return records.sum();
+    }
+
+    long getBytesWritten() {
+        return bytes.sum();
+    }
+
+    long getFsyncCount() {
+        return fsyncs.sum();
+    }
+
+    long[] getLogLatencyHistogram() {
+        return logLatencies.snapshot();
+    }
+
+    long[] getForceLatencyHistogram() {
+        return forceLatencies.snapshot();
+    }
+
+    long[] getFsyncBatchSizeHistogram() {
+        return fsyncBatchSizes.snapshot();
+    }
+
+    long getRolloverCount() {
+        return rollovers.sum();
+    }
+
+    long getRolloverDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(rolloverNanos.sum());
+    }
+
+    long getLastRolloverDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastRolloverNanos);
+    }
+
+    long getRolloverDanglingRecords() {
+        return rolloverDanglingRecords.sum();
+    }
+
+    int getLastRolloverDanglingRecords() {
+        return lastRolloverDanglingRecords;
+    }
+
+    double getRecordsPerSecond() {
+        Sample[] samples = sample();
+        return rate(samples, samples[1].records - samples[0].records);
+    }
+
+    double getBytesPerSecond() {
+        Sample[] samples = sample();
+        return rate(samples, samples[1].bytes - samples[0].bytes);
+    }
+
+    double getFsyncsPerSecond() {
+        Sample[] samples = sample();
+        return rate(samples, samples[1].fsyncs - samples[0].fsyncs);
+    }
+
+    /**
+     * Take a new sample of the counters if the latest one is old enough.
+     *
+     * @return the previous and latest samples.
+     */
+    private synchronized Sample[] sample() {
+        long now = System.nanoTime();
+        if (now - latestSample.nanos >= MIN_SAMPLE_INTERVAL_NANOS) {
+            previousSample = latestSample;
+            latestSample = new Sample(now, records.sum(), bytes.sum(), fsyncs.sum());
+        }
+        return new Sample[] { previousSample, latestSample };
+    }
+
+    private static double rate(Sample[] samples, long delta) {
+        long elapsedNanos = samples[1].nanos - samples[0].nanos;
+        return elapsedNanos == 0L ? 0.0 : delta * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    private static final class Sample {
+        private final long nanos;
+        private final long records;
+        private final long bytes;
+        private final long fsyncs;
+
+        private Sample(long nanos, long records, long bytes, long fsyncs) {
+            this.nanos = nanos;
+            this.records = records;
+            this.bytes = bytes;
+            this.fsyncs = fsyncs;
+        }
+    }
+
+    /**
+     * Histogram with power of two buckets: bucket 0 counts the zero values and bucket <code>i</code> the values from
+     * <code>2^(i-1)</code> inclusive to <code>2^i</code> exclusive. The last bucket also counts all larger values.
+     */
+    static final class Histogram {
+        static final int BUCKETS = 32;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long value) {
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0L, value)));
+            buckets.incrementAndGet(bucket);
+        }
+
+        long[] snapshot() {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+            }
+            return snapshot;
+        }
+    }
+
+}
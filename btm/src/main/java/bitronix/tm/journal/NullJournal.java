@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * No-op journal. Do not use for anything else than testing as the transaction manager cannot guarantee
@@ -37,6 +39,11 @@ public class NullJournal implements Journal {
     public void log(int status, Uid gtrid, Set<String> uniqueNames) throws IOException {
     }
 
+    @Override
+    public CompletionStage<Void> logAsync(int status, Uid gtrid, Set<String> uniqueNames) {
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Override
     public void open() throws IOException {
     }
@@ -49,6 +56,11 @@ public class NullJournal implements Journal {
     public void force() throws IOException {
     }
 
+    @Override
+    public CompletionStage<Void> forceAsync() {
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Override
     public Map<Uid, JournalRecord> collectDanglingRecords() throws IOException {
         return Collections.emptyMap();
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import jakarta.transaction.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Memory mapped log file holding the dangling records of transactions that stayed in-doubt for long, so that the
+ * journal does not have to copy them on every rollover.
+ * <p>The file uses the regular log file format: a COMMITTING record moves a transaction in, COMMITTED records logged
+ * later remove its resources. The transactions of the store are tracked by GTRID while it is open. Once all of them
+ * got committed, the file is rewound. When it gets full, the records still needed are copied to a new file, twice as
+ * large if they fill more than half of the current one, which then atomically replaces it.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class OverflowStore {
+
+    private static final Logger log = LoggerFactory.getLogger(OverflowStore.class);
+
+    private final File file;
+    private final int initialSizeInMb;
+    private volatile TransactionLogAppender tla;
+    private volatile boolean needsForce;
+
+    /**
+     * Open the overflow store of a journal, creating its file if needed.
+     *
+     * @param file            the store file.
+     * @param initialSizeInMb the size of the file when it needs to be created.
+     * @throws IOException if an I/O error occurs.
+     */
+    OverflowStore(File file, int initialSizeInMb) throws IOException {
+        this.file = file;
+        this.initialSizeInMb = initialSizeInMb;
+        if (!file.exists()) {
+            DiskJournal.createLogfile(file, initialSizeInMb);
+        }
+        this.tla = openAppender(file);
+        if (log.isDebugEnabled()) {
+            log.debug("opened overflow store {} holding {} dangling record(s)", file, tla.getDanglingCount());
+        }
+    }
+
+    /**
+     * Get the file holding the overflow store of a log file.
+     *
+     * @param logFile the log file.
+     * @return the overflow store file.
+     */
+    static File getFile(File logFile) {
+        return new File(logFile.getPath() + ".overflow");
+    }
+
+    private static TransactionLogAppender openAppender(File file) throws IOException {
+        TransactionLogAppender tla = new TransactionLogAppender(file, file.length(), true);
+        DiskJournal.applyLogFormatVersion(tla);
+        tla.trackDanglingLogs(DiskJournal.collectDanglingRecords(Collections.singletonList(tla)).values());
+        return tla;
+    }
+
+    /**
+     * @param gtrid the GTRID of a transaction.
+     * @return true if the transaction is held by this store.
+     */
+    boolean contains(Uid gtrid) {
+        return tla.isDangling(gtrid);
+    }
+
+    /**
+     * @return the amount of transactions held by this store.
+     */
+    int size() {
+        return tla.getDanglingCount();
+    }
+
+    /**
+     * @return the dangling records held by this store, by GTRID.
+     */
+    synchronized Map<Uid, JournalRecord> getDanglingRecords() {
+        Map<Uid, JournalRecord> danglingRecords = new HashMap<>(Math.max(64, tla.getDanglingCount() * 2));
+        for (TransactionLogRecord tlog : tla.getDanglingLogs()) {
+            danglingRecords.put(tlog.getGtrid(), tlog);
+        }
+        return danglingRecords;
+    }
+
+    /**
+     * Move dangling records into this store. They are safely on disk when this method returns.
+     *
+     * @param danglingLogs the COMMITTING records to move.
+     * @throws IOException if an I/O error occurs.
+     */
+    synchronized void add(List<TransactionLogRecord> danglingLogs) throws IOException {
+        for (TransactionLogRecord tlog : danglingLogs) {
+            write(tlog);
+        }
+        tla.force();
+        needsForce = false;
+    }
+
+    /**
+     * Remove resources of a transaction held by this store.
+     *
+     * @param status      the status logged to the journal.
+     * @param gtrid       the GTRID of the transaction.
+     * @param uniqueNames the unique names of the resources.
+     * @throws IOException if an I/O error occurs.
+     */
+    synchronized void remove(int status, Uid gtrid, Set<String> uniqueNames) throws IOException {
+        if (!tla.isDangling(gtrid)) {
+            return;
+        }
+
+        write(new TransactionLogRecord(status, gtrid, uniqueNames));
+        if (tla.getDanglingCount() == 0) {
+            tla.rewind();
+            tla.force();
+            needsForce = false;
+            if (log.isDebugEnabled()) {
+                log.debug("overflow store {} drained", file);
+            }
+        }
+    }
+
+    /**
+     * Force the records removing resources to disk.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void force() throws IOException {
+        if (needsForce) {
+            synchronized (this) {
+                tla.force();
+                needsForce = false;
+            }
+        }
+    }
+
+    /**
+     * Close the file of this store.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    synchronized void close() throws IOException {
+        tla.close();
+    }
+
+    private void write(TransactionLogRecord tlog) throws IOException {
+        if (!tryWrite(tla, tlog)) {
+            compact();
+            if (!tryWrite(tla, tlog)) {
+                throw new IOException("cannot write record of " + tlog.getGtrid() + " to overflow store " + file + ", the record is too large");
+            }
+        }
+        needsForce = true;
+    }
+
+    private static boolean tryWrite(TransactionLogAppender tla, TransactionLogRecord tlog) throws IOException {
+        TransactionLogRecordEncoder encoder = TransactionLogRecordEncoder.get();
+        ByteBuffer record = encoder.encode(tla, tlog);
+        long writePosition = tla.reserve(record.remaining());
+        if (writePosition < 0L) {
+            return false;
+        }
+        encoder.definitionsReserved();
+        tla.writeLog(record, writePosition, tlog.getStatus(), tlog.getGtrid(), tlog.getUniqueNames());
+        return true;
+    }
+
+    /**
+     * Replace the store file by a new one only holding the records still needed.
+     */
+    private void compact() throws IOException {
+        List<TransactionLogRecord> danglingLogs = tla.getDanglingLogs();
+        long used = tla.getPosition() - TransactionLogHeader.HEADER_LENGTH;
+        int sizeInMb = (int) Math.max(initialSizeInMb, file.length() / (1024 * 1024));
+        File compacted = new File(file.getPath() + ".tmp");
+
+        while (true) {
+            DiskJournal.createLogfile(compacted, sizeInMb);
+            TransactionLogAppender compactedTla = new TransactionLogAppender(compacted, compacted.length(), true);
+            boolean complete = true;
+            try {
+                DiskJournal.applyLogFormatVersion(compactedTla);
+                for (TransactionLogRecord tlog : danglingLogs) {
+                    if (!tryWrite(compactedTla, new TransactionLogRecord(Status.STATUS_COMMITTING, tlog.getGtrid(), tlog.getUniqueNames()))) {
+                        complete = false;
+                        break;
+                    }
+                }
+                // keep room for the records to come
+                if (complete && compactedTla.getPosition() - TransactionLogHeader.HEADER_LENGTH > compacted.length() / 2) {
+                    complete = false;
+                }
+                compactedTla.force();
+            } finally {
+                compactedTla.close();
+            }
+            if (complete) {
+                break;
+            }
+            sizeInMb *= 2;
+        }
+
+        tla.close();
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        tla = openAppender(file);
+        log.info("compacted overflow store {} from {} to {} bytes of records, holding {} dangling record(s) in a file of {} MB",
+                file, used, tla.getPosition() - TransactionLogHeader.HEADER_LENGTH, danglingLogs.size(), sizeInMb);
+    }
+
+}
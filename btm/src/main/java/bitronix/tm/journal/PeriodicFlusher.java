@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.MonotonicClock;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forces a log file at a fixed interval instead of on every transaction (relaxed durability).
+ * <p>Every completed journal write gets a sequence number. A background thread periodically forces the file when
+ * writes happened since the last force and then moves the high-water mark: all writes up to the flushed sequence
+ * number, or completed before the flushed timestamp, are known to be safely on disk. Records written after it are lost
+ * if the machine crashes.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class PeriodicFlusher {
+
+    private static final Logger log = LoggerFactory.getLogger(PeriodicFlusher.class);
+
+    private final ForceBatcher.Forcer forcer;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong writeSequence = new AtomicLong();
+    private volatile long flushedSequence;
+    private volatile long flushedTimestamp;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Create a flusher and start its background thread.
+     *
+     * @param forcer         the action performing the physical force.
+     * @param intervalMillis the amount of milliseconds between two forces.
+     */
+    PeriodicFlusher(ForceBatcher.Forcer forcer, long intervalMillis) {
+        this.forcer = forcer;
+        this.flushedTimestamp = MonotonicClock.currentTimeMillis();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-journal-flusher").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Must be called after each completed write that must be covered by subsequent forces.
+     *
+     * @return the sequence number of the write.
+     */
+    long writeCompleted() {
+        return writeSequence.incrementAndGet();
+    }
+
+    /**
+     * @return the sequence number of the last completed write.
+     */
+    long getWriteSequence() {
+        return writeSequence.get();
+    }
+
+    /**
+     * @return the sequence number of the last write known to be safely on disk.
+     */
+    long getFlushedSequence() {
+        return flushedSequence;
+    }
+
+    /**
+     * @return the time, in milliseconds, before which all completed writes are known to be safely on disk.
+     */
+    long getFlushedTimestamp() {
+        return flushedTimestamp;
+    }
+
+    /**
+     * @return a future completing when all writes completed before this call are safely on disk.
+     */
+    CompletableFuture<Void> flushed() {
+        long target = writeSequence.get();
+        if (flushedSequence >= target) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Waiter waiter = new Waiter(target);
+        waiters.add(waiter);
+        // the flush may have completed before the waiter got queued
+        if (flushedSequence >= target) {
+            waiters.remove(waiter);
+            waiter.future.complete(null);
+        }
+        return waiter.future;
+    }
+
+    /**
+     * Force the file now if writes happened since the last force.
+     *
+     * @throws IOException if the force failed.
+     */
+    synchronized void flush() throws IOException {
+        long upTo = writeSequence.get();
+        if (flushedSequence >= upTo) {
+            return;
+        }
+
+        long timestamp = MonotonicClock.currentTimeMillis();
+        forcer.force();
+        flushedSequence = upTo;
+        flushedTimestamp = timestamp;
+        if (log.isDebugEnabled()) {
+            log.debug("flushed writes up to {}", upTo);
+        }
+
+        waiters.removeIf(waiter -> {
+            if (waiter.target <= upTo) {
+                waiter.future.complete(null);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException ex) {
+            log.error("cannot flush journal, records written since " + flushedTimestamp + " are not safely on disk yet", ex);
+        }
+    }
+
+    /**
+     * Stop the background thread and force the file one last time.
+     *
+     * @throws IOException if the last force failed.
+     */
+    void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            flush();
+        } finally {
+            for (Waiter waiter : waiters) {
+                waiter.future.completeExceptionally(new IOException("journal closed before the records could be flushed"));
+            }
+            waiters.clear();
+        }
+    }
+
+    private static final class Waiter {
+        private final long target;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(long target) {
+            this.target = target;
+        }
+    }
+
+}
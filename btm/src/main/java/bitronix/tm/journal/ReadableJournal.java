@@ -16,7 +16,12 @@
 package bitronix.tm.journal;
 
 import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Gives (unsafe) read access to Journals implementing this interface.
@@ -39,4 +44,43 @@ public interface ReadableJournal {
      * @throws java.io.IOException In case of reading the first record fails.
      */
     void unsafeReadRecordsInto(Collection<JournalRecord> target, boolean includeInvalid) throws IOException;
+
+    /**
+     * Streams the raw journal records matching a filter, oldest first.
+     * <p>
+     * <b>Notes:</b><ul>
+     * <li>This implementation does not guarantee to return valid results if the journal is in use.
+     * The caller is responsible to control this state.</li>
+     * <li>The returned stream must be closed to release the underlying files, ie: with a try-with-resources
+     * statement.</li>
+     * <li>The default implementation reads the records with {@link #unsafeReadRecordsInto(Collection, boolean)}
+     * and only keeps the matching ones in memory. Implementations should read the records lazily instead, so that
+     * memory stays bounded whatever the amount of matching records.</li>
+     * </ul>
+     *
+     * @param filter         the criteria records must match.
+     * @param includeInvalid specified whether broken records are attempted to be included.
+     * @return a stream of the matching records.
+     * @throws java.io.IOException In case of reading the first record fails.
+     */
+    default Stream<JournalRecord> streamRecords(JournalRecordFilter filter, boolean includeInvalid) throws IOException {
+        final List<JournalRecord> matching = new ArrayList<>();
+        unsafeReadRecordsInto(new AbstractCollection<JournalRecord>() {
+            @Override
+            public boolean add(JournalRecord record) {
+                return filter.test(record) && matching.add(record);
+            }
+
+            @Override
+            public Iterator<JournalRecord> iterator() {
+                return matching.iterator();
+            }
+
+            @Override
+            public int size() {
+                return matching.size();
+            }
+        }, includeInvalid);
+        return matching.stream();
+    }
 }
@@ -0,0 +1,751 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.Configuration;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.utils.Decoder;
+import bitronix.tm.utils.MonotonicClock;
+import bitronix.tm.utils.Uid;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.transaction.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Journal writing on a directory of pre-allocated, fixed-size segment files.
+ * <p>Records are appended to the active segment. When it is full, logging simply carries on in the next free segment
+ * and the full one stays as it is: no dangling record gets copied. Segments are retired in the background, oldest
+ * first, as soon as none of their COMMITTING records is dangling anymore and then become free again. Only when the
+ * last free segment gets activated are the dangling records of the oldest segment moved to the active one so that
+ * it can be retired right away.</p>
+ * <p>Segments use the same file format as {@link DiskJournal} log files. The header timestamp orders them, the
+ * segment with the latest timestamp is the active one and empty segments are free. The dangling records of the log
+ * files written by {@link DiskJournal} are moved to the segments when the journal is opened, so that switching from
+ * one journal to the other does not lose in-doubt transactions.</p>
+ * <p>Configurable properties are all starting with <code>bitronix.tm.journal.disk</code>.</p>
+ *
+ * @author Ludovic Orban
+ * @see bitronix.tm.Configuration
+ */
+public class SegmentedJournal implements Journal, MigratableJournal, ReadableJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentedJournal.class);
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".tlog";
+
+    private final Lock conservativeJournalingLock = new ReentrantLock();
+    private final ReadWriteLock swapForceLock = new ReentrantReadWriteLock(true);
+    private final AtomicBoolean needsForce = new AtomicBoolean();
+    private final ForceBatcher forceBatcher;
+
+    /**
+     * Guards the segment lists, the timestamps and the retirement of segments.
+     */
+    private final Lock segmentsLock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>();
+    /**
+     * Segments holding records, oldest first. The last one is the active segment.
+     */
+    private final Deque<Segment> liveSegments = new ArrayDeque<>();
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+    private long lastTimestamp;
+
+    /**
+     * Dangling transactions by GTRID. Also guards the dangling GTRIDs of each segment.
+     */
+    private final Map<Uid, DanglingTransaction> danglingTransactions = new HashMap<>();
+
+    private final AtomicBoolean retirementScheduled = new AtomicBoolean();
+    private volatile ExecutorService retirementExecutor;
+    private volatile Segment activeSegment;
+
+    private final Configuration configuration;
+
+    /**
+     * Create an uninitialized segmented journal. You must call open() prior you can use it.
+     */
+    public SegmentedJournal() {
+        configuration = TransactionManagerServices.getConfiguration();
+        if (configuration.isForceBatchingEnabled()) {
+            forceBatcher = new ForceBatcher(this::forceActiveSegment, configuration.getForceBatchMaxWait().toNanos(), configuration.getForceBatchMaxSize());
+        } else {
+            forceBatcher = null;
+        }
+    }
+
+    /**
+     * Log a new transaction status to journal. Note that the SegmentedJournal will not check the flow of the
+     * transaction. If you call this method with erroneous data, it will be added to the journal anyway.
+     *
+     * @param status      transaction status to log. See {@link jakarta.transaction.Status} constants.
+     * @param gtrid       raw GTRID of the transaction.
+     * @param uniqueNames unique names of the {@link bitronix.tm.resource.common.ResourceBean}s participating in
+     *                    this transaction.
+     * @throws java.io.IOException in case of disk IO failure or if the journal is not open.
+     */
+    @Override
+    public void log(int status, Uid gtrid, Set<String> uniqueNames) throws IOException {
+        if (activeSegment == null) {
+            throw new IOException("cannot write log, segmented journal is not open");
+        }
+
+        if (configuration.isFilterLogStatus()) {
+            if (status != Status.STATUS_COMMITTING && status != Status.STATUS_COMMITTED && status != Status.STATUS_UNKNOWN) {
+                if (log.isDebugEnabled()) {
+                    log.debug("filtered out write to log for status {}", Decoder.decodeStatus(status));
+                }
+                return;
+            }
+        }
+
+        TransactionLogRecordEncoder encoder = TransactionLogRecordEncoder.get();
+
+        try {
+            if (configuration.isConservativeJournaling()) {
+                conservativeJournalingLock.lock();
+            }
+
+            while (true) {
+                Segment segment;
+                int recordSize;
+                boolean written = false;
+                boolean retirable = false;
+
+                // space is reserved under the read lock so that a rollover never happens between reservation and write
+                swapForceLock.readLock().lock();
+                try {
+                    segment = activeSegment;
+                    ByteBuffer record = encoder.encode(segment.tla, status, gtrid, uniqueNames);
+                    recordSize = record.remaining();
+                    long writePosition = segment.tla.reserve(recordSize);
+                    if (writePosition >= 0L) {
+                        encoder.definitionsReserved();
+                        segment.tla.writeLog(record, writePosition, status, gtrid, uniqueNames);
+                        retirable = track(segment, status, gtrid, uniqueNames);
+                        needsForce.set(true);
+                        if (forceBatcher != null) {
+                            forceBatcher.writeCompleted();
+                        }
+                        written = true;
+                    }
+                } finally {
+                    swapForceLock.readLock().unlock();
+                }
+
+                if (written) {
+                    if (retirable) {
+                        scheduleRetirement();
+                    }
+                    return;
+                }
+
+                if (recordSize > segment.tla.getCapacity()) {
+                    throw new IOException("cannot write log, record of " + recordSize + " bytes is larger than the segment capacity");
+                }
+                rollover(segment);
+            }
+        } finally {
+            if (configuration.isConservativeJournaling()) {
+                conservativeJournalingLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Force active segment to synchronize with the underlying disk device.
+     *
+     * @throws java.io.IOException in case of disk IO failure or if the journal is not open.
+     * @see DiskJournal#force()
+     */
+    @Override
+    public void force() throws IOException {
+        if (activeSegment == null) {
+            throw new IOException("cannot force log writing, segmented journal is not open");
+        }
+
+        if (forceBatcher != null) {
+            if (configuration.isForcedWriteEnabled()) {
+                forceBatcher.force();
+            }
+            return;
+        }
+
+        if (needsForce.get() && configuration.isForcedWriteEnabled()) {
+            swapForceLock.writeLock().lock();
+            try {
+                activeSegment.tla.force();
+                needsForce.set(false);
+            } finally {
+                swapForceLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Open the segmented journal. Segments are checked for integrity and the journal will refuse to open corrupted
+     * ones. Missing segments are created and pre-allocated. The dangling records left in the log files of the disk
+     * journal get moved to the segments.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    @Override
+    public synchronized void open() throws IOException {
+        if (activeSegment != null) {
+            log.warn("segmented journal already open");
+            return;
+        }
+
+        int segmentCount = configuration.getSegmentCount();
+        if (segmentCount < 2) {
+            throw new IOException("segmented journal needs at least 2 segments, configured: " + segmentCount);
+        }
+
+        File directory = new File(configuration.getSegmentDirectory());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create journal segment directory " + directory.getAbsolutePath());
+        }
+        if (getSegmentFile(directory, segmentCount).exists()) {
+            throw new IOException("found more segments in " + directory.getAbsolutePath() + " than the " + segmentCount + " configured ones, refusing to ignore their records");
+        }
+
+        // segments do not take turns like the two disk journal files, they are only left sparse when explicitly configured
+        String provisioning = configuration.getProvisioning();
+        boolean zeroFill = DiskJournal.isZeroFilledUpfront(provisioning) || DiskJournal.BACKGROUND_PROVISIONING.equals(provisioning);
+        long maxFileLength = 0L;
+        for (int i = 0; i < segmentCount; i++) {
+            File file = getSegmentFile(directory, i);
+            if (!file.exists()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("creation of journal segment {}", file);
+                }
+                DiskJournal.createLogfile(file, configuration.getMaxLogSizeInMb(), zeroFill);
+            }
+            if (maxFileLength != 0L && maxFileLength != file.length()) {
+                if (!configuration.isSkipCorruptedLogs()) {
+                    throw new IOException("journal segments are not of the same length, assuming they're corrupt");
+                }
+                log.error("journal segments are not of the same length: corrupted files?");
+            }
+            maxFileLength = Math.max(maxFileLength, file.length());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("segmented journal files max length: {}", maxFileLength);
+        }
+
+        segmentsLock.lock();
+        try {
+            try {
+                for (int i = 0; i < segmentCount; i++) {
+                    Segment segment = new Segment(new TransactionLogAppender(getSegmentFile(directory, i), maxFileLength, false,
+                            configuration.isWriteBatchingEnabled(), configuration.isDirectIoEnabled()));
+                    segments.add(segment);
+                    DiskJournal.applyLogFormatVersion(segment.tla);
+                }
+                activateSegments();
+            } catch (IOException ex) {
+                closeSegments();
+                throw ex;
+            }
+        } finally {
+            segmentsLock.unlock();
+        }
+
+        retirementExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-journal-segment-retirement").setDaemon(true).build());
+
+        try {
+            DiskJournal.moveDanglingRecordsOfLogFiles(configuration, this);
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("segmented journal opened");
+        }
+    }
+
+    /**
+     * Close the segmented journal and the underlying files.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (activeSegment == null) {
+            return;
+        }
+
+        // do not interrupt a retirement in progress, that would close the segment's channel
+        retirementExecutor.shutdown();
+        retirementExecutor = null;
+
+        segmentsLock.lock();
+        try {
+            closeSegments();
+        } finally {
+            segmentsLock.unlock();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("segmented journal closed");
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            close();
+        } catch (IOException ex) {
+            log.error("error shutting down segmented journal. Transaction log integrity could be compromised!", ex);
+        }
+    }
+
+    /**
+     * Collect all dangling records of the live segments.
+     *
+     * @return a Map using Uid objects GTRID as key and {@link TransactionLogRecord} as value
+     * @throws java.io.IOException in case of disk IO failure or if the journal is not open.
+     */
+    @Override
+    public Map<Uid, JournalRecord> collectDanglingRecords() throws IOException {
+        segmentsLock.lock();
+        try {
+            if (activeSegment == null) {
+                throw new IOException("cannot collect dangling records, segmented journal is not open");
+            }
+            return DiskJournal.collectDanglingRecords(getLiveAppenders());
+        } finally {
+            segmentsLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void migrateTo(Journal other) throws IOException, IllegalArgumentException {
+        if (other == this) {
+            throw new IllegalArgumentException("cannot migrate a journal to itself (this == otherJournal)");
+        }
+        if (other == null) {
+            throw new IllegalArgumentException("the migration target journal cannot be null");
+        }
+
+        for (JournalRecord journalRecord : collectDanglingRecords().values()) {
+            other.log(journalRecord.getStatus(), journalRecord.getGtrid(), journalRecord.getUniqueNames());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unsafeReadRecordsInto(Collection<JournalRecord> target, boolean includeInvalid) throws IOException {
+        segmentsLock.lock();
+        try {
+            if (activeSegment == null) {
+                throw new IOException("cannot read records, segmented journal is not open");
+            }
+
+            for (TransactionLogAppender tla : getLiveAppenders()) {
+                for (Iterator<TransactionLogRecord> i = DiskJournal.iterateRecords(tla, includeInvalid); i.hasNext(); ) {
+                    target.add(i.next());
+                }
+            }
+        } finally {
+            segmentsLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The segments live when this method is called are read lazily, oldest first.</p>
+     */
+    @Override
+    public Stream<JournalRecord> streamRecords(JournalRecordFilter filter, boolean includeInvalid) throws IOException {
+        segmentsLock.lock();
+        try {
+            if (activeSegment == null) {
+                throw new IOException("cannot read records, segmented journal is not open");
+            }
+
+            return DiskJournal.streamRecords(getLiveAppenders(), filter, includeInvalid);
+        } finally {
+            segmentsLock.unlock();
+        }
+    }
+
+    /*
+     * Internal impl.
+     */
+
+    private static File getSegmentFile(File directory, int index) {
+        return new File(directory, SEGMENT_FILE_PREFIX + index + SEGMENT_FILE_SUFFIX);
+    }
+
+    /**
+     * Sort the opened segments by timestamp, rebuild the dangling transactions of the live ones and activate the
+     * latest one. Must be called with the segments lock held.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private void activateSegments() throws IOException {
+        List<Segment> sorted = new ArrayList<>(segments);
+        sorted.sort(Comparator.comparingLong(segment -> segment.tla.getTimestamp()));
+
+        Segment active = sorted.get(sorted.size() - 1);
+        for (Segment segment : sorted) {
+            lastTimestamp = Math.max(lastTimestamp, segment.tla.getTimestamp());
+            if (segment == active || segment.tla.getPosition() > TransactionLogHeader.HEADER_LENGTH) {
+                liveSegments.addLast(segment);
+            } else {
+                freeSegments.addLast(segment);
+            }
+        }
+
+        for (Segment segment : liveSegments) {
+            for (Iterator<TransactionLogRecord> i = DiskJournal.iterateRecords(segment.tla, false); i.hasNext(); ) {
+                TransactionLogRecord tlog = i.next();
+                track(segment, tlog.getStatus(), tlog.getGtrid(), tlog.getUniqueNames());
+            }
+        }
+
+        byte cleanState = active.tla.getState();
+        active.tla.setTimestamp(nextTimestamp());
+        active.tla.setState(TransactionLogHeader.UNCLEAN_LOG_STATE);
+        active.tla.force();
+        if (cleanState != TransactionLogHeader.CLEAN_LOG_STATE) {
+            log.warn("active journal segment is unclean, did you call BitronixTransactionManager.shutdown() at the end of the last run?");
+        }
+        activeSegment = active;
+
+        if (log.isDebugEnabled()) {
+            log.debug("logging to {}, {} live segment(s), {} dangling transaction(s)", active, liveSegments.size(), danglingTransactions.size());
+        }
+
+        if (freeSegments.isEmpty()) {
+            compactOldestSegment();
+        }
+        retireSegments();
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments) {
+            try {
+                segment.tla.close();
+            } catch (IOException ex) {
+                log.error("cannot close " + segment, ex);
+            }
+        }
+        segments.clear();
+        liveSegments.clear();
+        freeSegments.clear();
+        synchronized (danglingTransactions) {
+            danglingTransactions.clear();
+        }
+        activeSegment = null;
+    }
+
+    private List<TransactionLogAppender> getLiveAppenders() {
+        List<TransactionLogAppender> tlas = new ArrayList<>(liveSegments.size());
+        for (Segment segment : liveSegments) {
+            tlas.add(segment.tla);
+        }
+        return tlas;
+    }
+
+    /**
+     * @return a timestamp later than all segment timestamps. Must be called with the segments lock held.
+     */
+    private long nextTimestamp() {
+        lastTimestamp = Math.max(MonotonicClock.currentTimeMillis(), lastTimestamp + 1L);
+        return lastTimestamp;
+    }
+
+    /**
+     * Continue logging in the next free segment unless another thread already did it since the specified segment ran
+     * out of space. The full segment is left untouched, the pause only lasts for two forces unless no free segment is
+     * left afterwards.
+     *
+     * @param full the segment that ran out of space.
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private void rollover(Segment full) throws IOException {
+        swapForceLock.writeLock().lock();
+        try {
+            if (activeSegment != full) {
+                return;
+            }
+
+            segmentsLock.lock();
+            try {
+                Segment next = freeSegments.pollFirst();
+                if (next == null) {
+                    throw new IOException("cannot rollover, all " + segments.size() + " journal segments hold dangling records");
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("rolling over journal segment {} to {}", full, next);
+                }
+
+                full.tla.force();
+
+                next.tla.rewind();
+                next.tla.setFormatVersion(configuration.getLogFormatVersion());
+                next.tla.setTimestamp(nextTimestamp());
+                next.tla.setState(TransactionLogHeader.UNCLEAN_LOG_STATE);
+                next.tla.force();
+                liveSegments.addLast(next);
+                activeSegment = next;
+
+                // always keep a free segment for the next rollover
+                if (freeSegments.isEmpty()) {
+                    compactOldestSegment();
+                }
+            } finally {
+                segmentsLock.unlock();
+            }
+        } finally {
+            swapForceLock.writeLock().unlock();
+        }
+
+        scheduleRetirement();
+    }
+
+    /**
+     * Move the dangling records of the oldest segment to the active one then retire the oldest segment. Must be called
+     * with the segments lock held and without concurrent writers.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private void compactOldestSegment() throws IOException {
+        Segment oldest = liveSegments.peekFirst();
+        Segment active = activeSegment;
+        if (oldest == active) {
+            return;
+        }
+
+        List<TransactionLogRecord> danglingLogs = new ArrayList<>();
+        synchronized (danglingTransactions) {
+            List<Uid> sortedUids = new ArrayList<>(oldest.danglingGtrids);
+            sortedUids.sort(Comparator.comparingInt(Uid::extractSequence));
+            for (Uid uid : sortedUids) {
+                danglingLogs.add(new TransactionLogRecord(Status.STATUS_COMMITTING, uid, new TreeSet<>(danglingTransactions.get(uid).uniqueNames)));
+            }
+        }
+
+        // the record waiting for the rollover gets encoded again afterwards, the calling thread's encoder can be reused
+        TransactionLogRecordEncoder encoder = TransactionLogRecordEncoder.get();
+        for (TransactionLogRecord tlog : danglingLogs) {
+            ByteBuffer record = encoder.encode(active.tla, tlog);
+            long writePosition = active.tla.reserve(record.remaining());
+            if (writePosition < 0L) {
+                throw new IOException("moving in-flight transactions to the active journal segment would have resulted in an overflow of that segment");
+            }
+            encoder.definitionsReserved();
+            active.tla.writeLog(record, writePosition, tlog.getStatus(), tlog.getGtrid(), tlog.getUniqueNames());
+            track(active, tlog.getStatus(), tlog.getGtrid(), tlog.getUniqueNames());
+        }
+        active.tla.force();
+
+        synchronized (danglingTransactions) {
+            for (Uid uid : oldest.danglingGtrids) {
+                danglingTransactions.get(uid).segments.remove(oldest);
+            }
+            oldest.danglingGtrids.clear();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("{} dangling record(s) moved from {} to {}", danglingLogs.size(), oldest, active);
+        }
+        retireOldestSegment();
+    }
+
+    private void scheduleRetirement() {
+        ExecutorService executor = retirementExecutor;
+        if (executor != null && retirementScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::retireSegmentsInBackground);
+            } catch (RejectedExecutionException ex) {
+                // the journal is closing
+                retirementScheduled.set(false);
+            }
+        }
+    }
+
+    private void retireSegmentsInBackground() {
+        retirementScheduled.set(false);
+        segmentsLock.lock();
+        try {
+            if (activeSegment != null) {
+                retireSegments();
+            }
+        } catch (IOException ex) {
+            log.error("cannot retire journal segment", ex);
+        } finally {
+            segmentsLock.unlock();
+        }
+    }
+
+    /**
+     * Retire the oldest segments that do not hold dangling records anymore. Segments are retired in order so that a
+     * live segment never holds records completing transactions of a retired one. Must be called with the segments
+     * lock held.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private void retireSegments() throws IOException {
+        while (liveSegments.size() > 1) {
+            Segment oldest = liveSegments.peekFirst();
+            synchronized (danglingTransactions) {
+                if (!oldest.danglingGtrids.isEmpty()) {
+                    return;
+                }
+            }
+            retireOldestSegment();
+        }
+    }
+
+    /**
+     * Empty the oldest live segment and make it free. Must be called with the segments lock held.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    private void retireOldestSegment() throws IOException {
+        Segment oldest = liveSegments.peekFirst();
+        oldest.tla.rewind();
+        oldest.tla.clearDanglingLogs();
+        oldest.tla.force();
+        liveSegments.pollFirst();
+        freeSegments.addLast(oldest);
+
+        if (log.isDebugEnabled()) {
+            log.debug("retired journal segment {}", oldest);
+        }
+    }
+
+    /**
+     * Track dangling transactions and the segments their COMMITTING records were written to.
+     *
+     * @param segment     the segment the record was written to.
+     * @param status      the record status.
+     * @param gtrid       the record GTRID.
+     * @param uniqueNames the record unique names.
+     * @return true if a segment other than the active one does not hold dangling records anymore.
+     */
+    private boolean track(Segment segment, int status, Uid gtrid, Set<String> uniqueNames) {
+        if (uniqueNames.isEmpty()) {
+            return false;
+        }
+
+        switch (status) {
+            case Status.STATUS_COMMITTING: {
+                synchronized (danglingTransactions) {
+                    DanglingTransaction danglingTransaction = danglingTransactions.get(gtrid);
+                    if (danglingTransaction == null) {
+                        danglingTransaction = new DanglingTransaction();
+                        danglingTransactions.put(gtrid, danglingTransaction);
+                    }
+                    danglingTransaction.uniqueNames.addAll(uniqueNames);
+                    if (segment.danglingGtrids.add(gtrid)) {
+                        danglingTransaction.segments.add(segment);
+                    }
+                }
+                return false;
+            }
+            case Status.STATUS_ROLLEDBACK:
+            case Status.STATUS_COMMITTED:
+            case Status.STATUS_UNKNOWN: {
+                synchronized (danglingTransactions) {
+                    DanglingTransaction danglingTransaction = danglingTransactions.get(gtrid);
+                    if (danglingTransaction == null || !danglingTransaction.uniqueNames.removeAll(uniqueNames) || !danglingTransaction.uniqueNames.isEmpty()) {
+                        return false;
+                    }
+                    danglingTransactions.remove(gtrid);
+
+                    boolean retirable = false;
+                    for (Segment danglingSegment : danglingTransaction.segments) {
+                        danglingSegment.danglingGtrids.remove(gtrid);
+                        retirable |= danglingSegment != activeSegment && danglingSegment.danglingGtrids.isEmpty();
+                    }
+                    return retirable;
+                }
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Force the active segment on behalf of a batch of threads.
+     *
+     * @throws java.io.IOException in case of disk IO failure or if the journal is not open.
+     * @see DiskJournal
+     */
+    private void forceActiveSegment() throws IOException {
+        swapForceLock.writeLock().lock();
+        try {
+            swapForceLock.readLock().lock();
+        } finally {
+            swapForceLock.writeLock().unlock();
+        }
+
+        try {
+            Segment segment = activeSegment;
+            if (segment == null) {
+                throw new IOException("cannot force log writing, segmented journal is not open");
+            }
+            segment.tla.force();
+        } finally {
+            swapForceLock.readLock().unlock();
+        }
+    }
+
+    private static final class Segment {
+        private final TransactionLogAppender tla;
+        private final Set<Uid> danglingGtrids = new HashSet<>();
+
+        private Segment(TransactionLogAppender tla) {
+            this.tla = tla;
+        }
+
+        @Override
+        public String toString() {
+            return tla.toString();
+        }
+    }
+
+    private static final class DanglingTransaction {
+        private final Set<String> uniqueNames = new TreeSet<>();
+        private final List<Segment> segments = new ArrayList<>(1);
+    }
+
+}
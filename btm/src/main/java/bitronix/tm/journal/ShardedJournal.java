@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.Configuration;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.utils.Uid;
+import jakarta.transaction.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+/**
+ * Journal spreading transactions over several independent {@link DiskJournal}s, called shards.
+ * <p>Each shard has its own pair of log files, its own appender and its own force path so that concurrent
+ * transactions do not all funnel through a single append point. All records of a transaction go to the same shard,
+ * picked by hashing its GTRID. Forcing the journal only forces the shards the calling thread logged to since its
+ * last force.</p>
+ * <p>Shard files are named after the configured log files with the shard number appended, ie: <code>btm1-0.tlog</code>
+ * and <code>btm2-0.tlog</code> for the first shard. When the amount of shards changes between two runs, dangling
+ * records are moved to the shard their GTRID now hashes to when the journal is opened and the files of the shards
+ * that are not used anymore get deleted. The dangling records of the log files written by {@link DiskJournal} are
+ * moved to the shards as well, so that switching from one journal to the other does not lose in-doubt
+ * transactions.</p>
+ * <p>Configurable properties are all starting with <code>bitronix.tm.journal.disk</code>.</p>
+ *
+ * @author Ludovic Orban
+ * @see bitronix.tm.Configuration
+ */
+public class ShardedJournal implements Journal, MigratableJournal, ReadableJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedJournal.class);
+
+    private final Configuration configuration;
+    private volatile DiskJournal[] shards;
+
+    /**
+     * Shards each thread logged to since it last forced the journal.
+     */
+    private final ThreadLocal<BitSet> unforcedShards = ThreadLocal.withInitial(BitSet::new);
+
+    /**
+     * Create an uninitialized sharded journal. You must call open() prior you can use it.
+     */
+    public ShardedJournal() {
+        configuration = TransactionManagerServices.getConfiguration();
+    }
+
+    /**
+     * Log a new transaction status to the shard of the transaction. Note that the ShardedJournal will not check the
+     * flow of the transaction. If you call this method with erroneous data, it will be added to the journal anyway.
+     *
+     * @param status      transaction status to log. See {@link jakarta.transaction.Status} constants.
+     * @param gtrid       raw GTRID of the transaction.
+     * @param uniqueNames unique names of the {@link bitronix.tm.resource.common.ResourceBean}s participating in
+     *                    this transaction.
+     * @throws java.io.IOException in case of disk IO failure or if the journal is not open.
+     */
+    @Override
+    public void log(int status, Uid gtrid, Set<String> uniqueNames) throws IOException {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            throw new IOException("cannot write log, sharded journal is not open");
+        }
+
+        int shard = getShard(gtrid, shards.length);
+        shards[shard].log(status, gtrid, uniqueNames);
+        unforcedShards.get().set(shard);
+    }
+
+    /**
+     * Force the shards the calling thread logged to since its last force, or all of them if it did not log anything.
+     *
+     * @throws java.io.IOException in case of disk IO failure or if the journal is not open.
+     * @see DiskJournal#force()
+     */
+    @Override
+    public void force() throws IOException {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            throw new IOException("cannot force log writing, sharded journal is not open");
+        }
+
+        BitSet unforced = unforcedShards.get();
+        if (unforced.isEmpty()) {
+            for (DiskJournal shard : shards) {
+                shard.force();
+            }
+            return;
+        }
+
+        for (int i = unforced.nextSetBit(0); i >= 0 && i < shards.length; i = unforced.nextSetBit(i + 1)) {
+            shards[i].force();
+        }
+        unforced.clear();
+    }
+
+    /**
+     * Log a new transaction status to the shard of the transaction and get notified once it is safely stored.
+     *
+     * @param status      transaction status to log. See {@link jakarta.transaction.Status} constants.
+     * @param gtrid       raw GTRID of the transaction.
+     * @param uniqueNames unique names of the {@link bitronix.tm.resource.common.ResourceBean}s participating in
+     *                    this transaction.
+     * @return a stage completing when the record is safely on disk.
+     * @see DiskJournal#logAsync(int, Uid, Set)
+     */
+    @Override
+    public CompletionStage<Void> logAsync(int status, Uid gtrid, Set<String> uniqueNames) {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            return CompletableFuture.failedFuture(new IOException("cannot write log, sharded journal is not open"));
+        }
+
+        return shards[getShard(gtrid, shards.length)].logAsync(status, gtrid, uniqueNames);
+    }
+
+    /**
+     * Force the shards the calling thread logged to since its last force, or all of them if it did not log anything,
+     * without blocking the calling thread.
+     *
+     * @return a stage completing when the forced shards are safely on disk.
+     * @see DiskJournal#forceAsync()
+     */
+    @Override
+    public CompletionStage<Void> forceAsync() {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            return CompletableFuture.failedFuture(new IOException("cannot force log writing, sharded journal is not open"));
+        }
+
+        BitSet unforced = unforcedShards.get();
+        List<CompletableFuture<Void>> forces = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (unforced.isEmpty() || unforced.get(i)) {
+                forces.add(shards[i].forceAsync().toCompletableFuture());
+            }
+        }
+        unforced.clear();
+        return CompletableFuture.allOf(forces.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Open all the shards. Dangling records that do not belong to the shard they are in anymore because the amount of
+     * shards changed get moved, so do the ones left in the log files of the disk journal.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    @Override
+    public synchronized void open() throws IOException {
+        if (shards != null) {
+            log.warn("sharded journal already open");
+            return;
+        }
+
+        int shardCount = configuration.getShardCount();
+        if (shardCount < 1) {
+            throw new IOException("sharded journal needs at least 1 shard, configured: " + shardCount);
+        }
+
+        DiskJournal[] shards = new DiskJournal[shardCount];
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new DiskJournal(getShardFile(configuration.getLogPart1Filename(), i), getShardFile(configuration.getLogPart2Filename(), i), false);
+                shards[i].open();
+            }
+
+            for (int i = 0; i < shardCount; i++) {
+                moveDanglingRecords(shards[i], i, shards);
+            }
+            for (int i = shardCount; getShardFile(configuration.getLogPart1Filename(), i).exists()
+                    || getShardFile(configuration.getLogPart2Filename(), i).exists(); i++) {
+                retireShard(i, shards);
+            }
+        } catch (IOException | RuntimeException ex) {
+            closeShards(shards);
+            throw ex;
+        }
+
+        this.shards = shards;
+        try {
+            DiskJournal.moveDanglingRecordsOfLogFiles(configuration, this);
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("sharded journal opened with {} shard(s)", shardCount);
+        }
+    }
+
+    /**
+     * Move the dangling records of a shard that belong to another one.
+     */
+    private void moveDanglingRecords(DiskJournal shard, int index, DiskJournal[] shards) throws IOException {
+        List<JournalRecord> moved = new ArrayList<>();
+        for (JournalRecord record : shard.collectDanglingRecords().values()) {
+            int target = getShard(record.getGtrid(), shards.length);
+            if (target != index) {
+                shards[target].log(Status.STATUS_COMMITTING, record.getGtrid(), record.getUniqueNames());
+                moved.add(record);
+            }
+        }
+        if (moved.isEmpty()) {
+            return;
+        }
+
+        // the records must be safe in their new shard before getting removed from the old one
+        for (DiskJournal target : shards) {
+            target.force();
+        }
+        for (JournalRecord record : moved) {
+            shard.log(Status.STATUS_COMMITTED, record.getGtrid(), record.getUniqueNames());
+        }
+        shard.force();
+        log.info("moved {} dangling record(s) out of journal shard {}", moved.size(), index);
+    }
+
+    /**
+     * Move the dangling records of a shard that is not used anymore then delete its files.
+     */
+    private void retireShard(int index, DiskJournal[] shards) throws IOException {
+        File file1 = getShardFile(configuration.getLogPart1Filename(), index);
+        File file2 = getShardFile(configuration.getLogPart2Filename(), index);
+        if (file1.exists() && file2.exists()) {
+            DiskJournal retired = new DiskJournal(file1, file2, false);
+            retired.open();
+            try {
+                Collection<JournalRecord> danglingRecords = retired.collectDanglingRecords().values();
+                for (JournalRecord record : danglingRecords) {
+                    shards[getShard(record.getGtrid(), shards.length)].log(Status.STATUS_COMMITTING, record.getGtrid(), record.getUniqueNames());
+                }
+                for (DiskJournal target : shards) {
+                    target.force();
+                }
+                log.info("moved {} dangling record(s) out of unused journal shard {}", danglingRecords.size(), index);
+            } finally {
+                retired.close();
+            }
+        }
+
+        for (File file : new File[]{file1, file2}) {
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(TransactionLogCheckpoint.getFile(file).toPath());
+        }
+        Files.deleteIfExists(OverflowStore.getFile(file1).toPath());
+    }
+
+    /**
+     * Close all the shards.
+     *
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            return;
+        }
+        this.shards = null;
+
+        IOException failure = closeShards(shards);
+        if (failure != null) {
+            throw failure;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("sharded journal closed");
+        }
+    }
+
+    private static IOException closeShards(DiskJournal[] shards) {
+        IOException failure = null;
+        for (DiskJournal shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+            try {
+                shard.close();
+            } catch (IOException ex) {
+                log.error("cannot close journal shard " + shard, ex);
+                failure = ex;
+            }
+        }
+        return failure;
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            close();
+        } catch (IOException ex) {
+            log.error("error shutting down sharded journal. Transaction log integrity could be compromised!", ex);
+        }
+    }
+
+    /**
+     * Collect all dangling records of all the shards.
+     *
+     * @return a Map using Uid objects GTRID as key and {@link TransactionLogRecord} as value
+     * @throws java.io.IOException in case of disk IO failure or if the journal is not open.
+     */
+    @Override
+    public Map<Uid, JournalRecord> collectDanglingRecords() throws IOException {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            throw new IOException("cannot collect dangling records, sharded journal is not open");
+        }
+
+        Map<Uid, JournalRecord> danglingRecords = new HashMap<>(64);
+        for (DiskJournal shard : shards) {
+            danglingRecords.putAll(shard.collectDanglingRecords());
+        }
+        return danglingRecords;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void migrateTo(Journal other) throws IOException, IllegalArgumentException {
+        if (other == this) {
+            throw new IllegalArgumentException("cannot migrate a journal to itself (this == otherJournal)");
+        }
+        if (other == null) {
+            throw new IllegalArgumentException("the migration target journal cannot be null");
+        }
+
+        for (JournalRecord journalRecord : collectDanglingRecords().values()) {
+            other.log(journalRecord.getStatus(), journalRecord.getGtrid(), journalRecord.getUniqueNames());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Records are read shard after shard, they are only in log order within each shard.</p>
+     */
+    @Override
+    public void unsafeReadRecordsInto(Collection<JournalRecord> target, boolean includeInvalid) throws IOException {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            throw new IOException("cannot read records, sharded journal is not open");
+        }
+
+        for (DiskJournal shard : shards) {
+            shard.unsafeReadRecordsInto(target, includeInvalid);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Shards are read lazily one after the other, records are only in log order within each shard.</p>
+     */
+    @Override
+    public Stream<JournalRecord> streamRecords(JournalRecordFilter filter, boolean includeInvalid) throws IOException {
+        DiskJournal[] shards = this.shards;
+        if (shards == null) {
+            throw new IOException("cannot read records, sharded journal is not open");
+        }
+
+        Stream<JournalRecord> records = Stream.empty();
+        try {
+            for (DiskJournal shard : shards) {
+                records = Stream.concat(records, shard.streamRecords(filter, includeInvalid));
+            }
+            return records;
+        } catch (IOException | RuntimeException ex) {
+            records.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param gtrid      the GTRID of a transaction.
+     * @param shardCount the amount of shards.
+     * @return the index of the shard the records of the transaction go to.
+     */
+    static int getShard(Uid gtrid, int shardCount) {
+        // the GTRID hash code barely varies in its low bits between two transactions, mix all bits into them
+        int hash = gtrid.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shardCount);
+    }
+
+    /**
+     * @param filename the configured name of a log file.
+     * @param shard    the index of the shard.
+     * @return the log file of the shard, ie: <code>btm1-0.tlog</code> for <code>btm1.tlog</code>.
+     */
+    static File getShardFile(String filename, int shard) {
+        File file = new File(filename);
+        String name = file.getName();
+        int extension = name.lastIndexOf('.');
+        String shardName = extension > 0 ? name.substring(0, extension) + "-" + shard + name.substring(extension) : name + "-" + shard;
+        return new File(file.getParentFile(), shardName);
+    }
+
+}
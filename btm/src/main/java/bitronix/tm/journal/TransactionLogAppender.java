@@ -15,6 +15,7 @@
  */
 package bitronix.tm.journal;
 
+import bitronix.tm.utils.Decoder;
 import bitronix.tm.utils.Uid;
 import jakarta.transaction.Status;
 import org.slf4j.Logger;
@@ -24,13 +25,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Used to write {@link TransactionLogRecord} objects to a log file.
+ * Used to write transaction log records to a log file.
  *
  * @author Ludovic Orban
  * @author Brett Wooldridge
@@ -49,12 +53,16 @@ public class TransactionLogAppender {
     private final File file;
     private final RandomAccessFile randomeAccessFile;
     private final FileChannel fc;
+    private final MappedByteBuffer mappedBuffer;
+    private final WriteBatcher writeBatcher;
+    private final AlignedBlockWriter blockWriter;
     private final FileLock lock;
     private final TransactionLogHeader header;
     private final long maxFileLength;
     private final AtomicInteger outstandingWrites;
-    private final HashMap<Uid, Set<String>> danglingRecords;
-    private long position;
+    private final DanglingRecordTracker danglingRecords;
+    private final AtomicLong position;
+    private final TransactionLogDictionary dictionary;
 
     /**
      * Create an appender that will write to specified file up to the specified maximum length.
@@ -64,10 +72,62 @@ public class TransactionLogAppender {
      * @throws IOException if an I/O error occurs.
      */
     public TransactionLogAppender(File file, long maxFileLength) throws IOException {
+        this(file, maxFileLength, false);
+    }
+
+    /**
+     * Create an appender that will write to specified file up to the specified maximum length.
+     * <p>When memory mapping is requested, the whole pre-allocated file is mapped once and records are written with
+     * plain memory stores into the mapping instead of one positional write call per record. Forcing the appender then
+     * forces the mapping.</p>
+     *
+     * @param file          the underlying File used to write to disk.
+     * @param maxFileLength size of the file on disk that can never be bypassed.
+     * @param memoryMapped  true if the file should be memory mapped.
+     * @throws IOException if an I/O error occurs.
+     */
+    public TransactionLogAppender(File file, long maxFileLength, boolean memoryMapped) throws IOException {
+        this(file, maxFileLength, memoryMapped, false);
+    }
+
+    /**
+     * Create an appender that will write to specified file up to the specified maximum length.
+     * <p>When write batching is requested and the file is not memory mapped, records written concurrently are combined
+     * into gathering writes, see {@link WriteBatcher}.</p>
+     *
+     * @param file          the underlying File used to write to disk.
+     * @param maxFileLength size of the file on disk that can never be bypassed.
+     * @param memoryMapped  true if the file should be memory mapped.
+     * @param writeBatching true if records written concurrently should be combined into gathering writes.
+     * @throws IOException if an I/O error occurs.
+     */
+    public TransactionLogAppender(File file, long maxFileLength, boolean memoryMapped, boolean writeBatching) throws IOException {
+        this(file, maxFileLength, memoryMapped, writeBatching, false);
+    }
+
+    /**
+     * Create an appender that will write to specified file up to the specified maximum length.
+     * <p>When direct I/O is requested and the file is not memory mapped, the file is written in aligned blocks
+     * bypassing the page cache, see {@link AlignedBlockWriter}. Writes are then never batched.</p>
+     *
+     * @param file          the underlying File used to write to disk.
+     * @param maxFileLength size of the file on disk that can never be bypassed.
+     * @param memoryMapped  true if the file should be memory mapped.
+     * @param writeBatching true if records written concurrently should be combined into gathering writes.
+     * @param directIo      true if the file should be written with direct I/O.
+     * @throws IOException if an I/O error occurs.
+     */
+    public TransactionLogAppender(File file, long maxFileLength, boolean memoryMapped, boolean writeBatching, boolean directIo) throws IOException {
+        if (memoryMapped && maxFileLength > Integer.MAX_VALUE) {
+            throw new IOException("transaction log file " + file.getName() + " is too large to be memory mapped: " + maxFileLength + " bytes");
+        }
         this.file = file;
         this.randomeAccessFile = new RandomAccessFile(file, "rw");
         this.fc = randomeAccessFile.getChannel();
-        this.header = new TransactionLogHeader(fc, maxFileLength);
+        this.mappedBuffer = memoryMapped ? fc.map(FileChannel.MapMode.READ_WRITE, 0, maxFileLength) : null;
+        this.blockWriter = directIo && !memoryMapped ? new AlignedBlockWriter(file, fc) : null;
+        this.writeBatcher = writeBatching && !memoryMapped && !directIo ? new WriteBatcher(fc) : null;
+        this.header = new TransactionLogHeader(fc, mappedBuffer, blockWriter, maxFileLength);
         this.maxFileLength = maxFileLength;
         this.lock = fc.tryLock(0, TransactionLogHeader.TIMESTAMP_HEADER, false);
         if (this.lock == null) {
@@ -76,109 +136,123 @@ public class TransactionLogAppender {
 
         this.outstandingWrites = new AtomicInteger();
 
-        this.danglingRecords = new HashMap<>();
+        this.danglingRecords = new DanglingRecordTracker();
+
+        this.position = new AtomicLong(header.getPosition());
 
-        this.position = header.getPosition();
+        this.dictionary = new TransactionLogDictionary();
     }
 
     /**
-     * Get the current file position and advance the position by recordSize if
-     * the maximum file length won't be exceeded.  Callers to this method are
-     * synchronized within the DiskJournal and it is guaranteed there will
-     * never be two callers to this method.  This creates a Java memory barrier
-     * that guarantees that 'position' will never be viewed inconsistently
-     * between threads.
+     * Reserve space for a record by atomically advancing the current file position by the record size if the maximum
+     * file length won't be exceeded. Concurrent callers always get disjoint regions of the file. Callers must prevent
+     * a concurrent {@link #rewind()} and must call {@link #writeLog(ByteBuffer, long, int, Uid, Set)} once space was
+     * reserved.
      *
-     * @param tlog the TransactionLogRecord
-     * @return true if the log should rollover, false otherwise
+     * @param recordSize the total size of the record.
+     * @return the position at which the record must be written or -1 if the log should rollover.
      * @throws IOException if an I/O error occurs
      */
-    protected boolean setPositionAndAdvance(TransactionLogRecord tlog) throws IOException {
-        int tlogSize = tlog.calculateTotalRecordSize();
-        if (position + tlogSize > maxFileLength) {
-            return true;
-        }
-
-        long writePosition = position;
-        position += tlogSize;
-        tlog.setWritePosition(writePosition);
-
+    protected long reserve(int recordSize) throws IOException {
+        // a reservation is outstanding before it becomes visible in position, see writeCompleted()
         outstandingWrites.incrementAndGet();
-        return false;
+        while (true) {
+            long writePosition = position.get();
+            if (writePosition + recordSize > maxFileLength) {
+                writeCompleted(writePosition);
+                return -1L;
+            }
+            if (position.compareAndSet(writePosition, writePosition + recordSize)) {
+                return writePosition;
+            }
+        }
     }
 
     /**
-     * Write a {@link TransactionLogRecord} to disk.
+     * Write an encoded record to disk, at the position reserved for it.
      *
-     * @param tlog the record to write to disk.
+     * @param record        the encoded record, between the buffer's position and limit.
+     * @param writePosition the position returned by {@link #reserve(int)}.
+     * @param status        the record status.
+     * @param gtrid         the record GTRID.
+     * @param uniqueNames   the record unique names.
      * @throws IOException if an I/O error occurs.
+     * @see TransactionLogRecordEncoder
      */
-    protected void writeLog(TransactionLogRecord tlog) throws IOException {
+    protected void writeLog(ByteBuffer record, long writePosition, int status, Uid gtrid, Set<String> uniqueNames) throws IOException {
         try {
-            int status = tlog.getStatus();
-            Uid gtrid = tlog.getGtrid();
-
-            int recordSize = tlog.calculateTotalRecordSize();
-            ByteBuffer buf = ByteBuffer.allocate(recordSize);
-            buf.putInt(tlog.getStatus());
-            buf.putInt(tlog.getRecordLength());
-            buf.putInt(tlog.getHeaderLength());
-            buf.putLong(tlog.getTime());
-            buf.putInt(tlog.getSequenceNumber());
-            buf.putInt(tlog.getCrc32());
-            buf.put((byte) gtrid.getArray().length);
-            buf.put(gtrid.getArray());
-            Set<String> uniqueNames = tlog.getUniqueNames();
-            buf.putInt(uniqueNames.size());
-            for (String uniqueName : uniqueNames) {
-                buf.putShort((short) uniqueName.length());
-                buf.put(uniqueName.getBytes());
-            }
-            buf.putInt(tlog.getEndRecord());
-            buf.flip();
-
             if (log.isDebugEnabled()) {
-                log.debug("between " + tlog.getWritePosition() + " and " + tlog.getWritePosition() + tlog.calculateTotalRecordSize() + ", writing " + tlog);
+                log.debug("between " + writePosition + " and " + (writePosition + record.remaining()) + ", writing " +
+                        Decoder.decodeStatus(status) + " record of " + gtrid + " for " + uniqueNames);
             }
 
-            final long writePosition = tlog.getWritePosition();
-            while (buf.hasRemaining()) {
-                fc.write(buf, writePosition + buf.position());
+            if (mappedBuffer != null) {
+                mappedBuffer.put((int) writePosition, record, record.position(), record.remaining());
+            } else if (blockWriter != null) {
+                blockWriter.write(record, writePosition);
+            } else if (writeBatcher != null) {
+                writeBatcher.write(record, writePosition);
+            } else {
+                final int start = record.position();
+                while (record.hasRemaining()) {
+                    fc.write(record, writePosition + record.position() - start);
+                }
             }
 
             trackOutstanding(status, gtrid, uniqueNames);
         } finally {
-            if (outstandingWrites.decrementAndGet() == 0) {
-                header.setPosition(position);
-            }
+            writeCompleted(position.get());
         }
     }
 
-    protected List<TransactionLogRecord> getDanglingLogs() {
-        synchronized (danglingRecords) {
-            List<Uid> sortedUids = new ArrayList<>(danglingRecords.keySet());
-            sortedUids.sort(Comparator.comparingInt(Uid::extractSequence));
-
-            List<TransactionLogRecord> outstandingLogs = new ArrayList<>(danglingRecords.size());
-            for (Uid uid : sortedUids) {
-                Set<String> uniqueNames = danglingRecords.get(uid);
-                outstandingLogs.add(new TransactionLogRecord(Status.STATUS_COMMITTING, uid, uniqueNames));
+    /**
+     * Account for the end of an outstanding write and update the header position once no write is outstanding
+     * anymore. The position must be read before the outstanding writes counter gets decremented: all space reserved
+     * up to it was then reserved by writes that are complete when the counter drops to zero.
+     *
+     * @param writtenPosition the file position read before the outstanding write completed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void writeCompleted(long writtenPosition) throws IOException {
+        if (outstandingWrites.decrementAndGet() == 0) {
+            synchronized (header) {
+                if (writtenPosition > header.getPosition()) {
+                    header.setPosition(writtenPosition);
+                }
             }
+        }
+    }
 
-            return outstandingLogs;
+    protected List<TransactionLogRecord> getDanglingLogs() {
+        Map<Uid, Set<String>> dangling = danglingRecords.snapshot();
+        List<TransactionLogRecord> outstandingLogs = new ArrayList<>(dangling.size());
+        for (Map.Entry<Uid, Set<String>> entry : dangling.entrySet()) {
+            outstandingLogs.add(new TransactionLogRecord(Status.STATUS_COMMITTING, entry.getKey(), entry.getValue()));
         }
+        return outstandingLogs;
     }
 
     protected void clearDanglingLogs() {
-        synchronized (danglingRecords) {
-            danglingRecords.clear();
-        }
+        danglingRecords.clear();
+    }
+
+    /**
+     * @param gtrid the GTRID of a transaction.
+     * @return true if the transaction has a COMMITTING record in this file and is not completely committed yet.
+     */
+    boolean isDangling(Uid gtrid) {
+        return danglingRecords.contains(gtrid);
     }
 
     /**
-     * This method tracks outstanding (uncommitted) resources by gtrid.  Access
-     * to the danglingRecords map, and the TreeSets contained within are guarded
-     * by a synchronization lock on danglingRecords itself.
+     * @return the amount of transactions having a COMMITTING record in this file not completely committed yet.
+     */
+    int getDanglingCount() {
+        return danglingRecords.size();
+    }
+
+    /**
+     * This method tracks outstanding (uncommitted) resources by gtrid, see {@link DanglingRecordTracker}.
      *
      * @param status      the transaction log record status
      * @param gtrid       the transaction id
@@ -191,25 +265,13 @@ public class TransactionLogAppender {
 
         switch (status) {
             case Status.STATUS_COMMITTING: {
-                synchronized (danglingRecords) {
-                    Set<String> outstanding = danglingRecords.get(gtrid);
-                    if (outstanding == null) {
-                        outstanding = new TreeSet<>(uniqueNames);
-                        danglingRecords.put(gtrid, outstanding);
-                    }
-                    outstanding.addAll(uniqueNames);
-                }
+                danglingRecords.add(gtrid, uniqueNames);
                 break;
             }
             case Status.STATUS_ROLLEDBACK:
             case Status.STATUS_COMMITTED:
             case Status.STATUS_UNKNOWN: {
-                synchronized (danglingRecords) {
-                    Set<String> outstanding = danglingRecords.get(gtrid);
-                    if (outstanding != null && outstanding.removeAll(uniqueNames) && outstanding.isEmpty()) {
-                        danglingRecords.remove(gtrid);
-                    }
-                }
+                danglingRecords.remove(gtrid, uniqueNames);
                 break;
             }
         }
@@ -221,8 +283,57 @@ public class TransactionLogAppender {
      * @throws IOException if an I/O error occurs
      */
     void rewind() throws IOException {
-        header.rewind();
-        position = header.getPosition();
+        synchronized (header) {
+            header.rewind();
+            position.set(header.getPosition());
+            dictionary.clear();
+        }
+    }
+
+    /**
+     * Write zeroes over the part of the file following the current position, so that the file system allocates all
+     * of its blocks. Callers must prevent concurrent writes and rewinds.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void zeroFill() throws IOException {
+        DiskJournal.zeroFill(fc, position.get(), fc.size());
+        fc.force(false);
+    }
+
+    /**
+     * Get the version of the format the records of this file are written in.
+     *
+     * @return the record format version.
+     * @see TransactionLogHeader#getFormatVersion()
+     */
+    int getFormatVersion() {
+        return header.getFormatVersion();
+    }
+
+    /**
+     * Change the format the records of this file are written in. Only possible when the file is empty.
+     *
+     * @param formatVersion the record format version, 1 or 2.
+     * @throws IOException if the file is not empty, if the format version is not supported or if an I/O error occurs.
+     */
+    void setFormatVersion(int formatVersion) throws IOException {
+        synchronized (header) {
+            if (position.get() != TransactionLogHeader.HEADER_LENGTH) {
+                throw new IOException("cannot change the record format of non-empty transaction log file " + file.getName());
+            }
+            header.setFormatId(TransactionLogHeader.getFormatId(formatVersion));
+            dictionary.clear();
+        }
+    }
+
+    /**
+     * Get the unique names interned in this file. Only meaningful when records are written in the compact format.
+     *
+     * @return the dictionary of this file.
+     */
+    TransactionLogDictionary getDictionary() {
+        return dictionary;
     }
 
     /**
@@ -263,13 +374,22 @@ public class TransactionLogAppender {
         header.setState(state);
     }
 
+    /**
+     * Get the amount of bytes available for records in an empty log file.
+     *
+     * @return the record capacity of the file.
+     */
+    long getCapacity() {
+        return maxFileLength - TransactionLogHeader.HEADER_LENGTH;
+    }
+
     /**
      * Get the current file position.
      *
      * @return the file position
      */
     public long getPosition() {
-        return position;
+        return position.get();
     }
 
 
@@ -280,6 +400,13 @@ public class TransactionLogAppender {
      */
     protected void close() throws IOException {
         header.setState(TransactionLogHeader.CLEAN_LOG_STATE);
+        if (mappedBuffer != null) {
+            mappedBuffer.force();
+        }
+        if (blockWriter != null) {
+            blockWriter.force();
+            blockWriter.close();
+        }
         fc.force(false);
         if (lock != null) {
             lock.release();
@@ -300,6 +427,93 @@ public class TransactionLogAppender {
         return new TransactionLogCursor(file);
     }
 
+    /**
+     * Creates a scanner on this journal file reading its records in parallel when the file is large.
+     *
+     * @param skipCrcCheck true if checksum mismatches must not be reported.
+     * @return a TransactionLogScanner.
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogScanner getScanner(boolean skipCrcCheck) throws IOException {
+        return new TransactionLogScanner(file, TransactionLogHeader.HEADER_LENGTH, Collections.<Integer, String>emptyMap(), skipCrcCheck);
+    }
+
+    /**
+     * Creates a scanner on this journal file reading the records written after a checkpoint.
+     *
+     * @param checkpoint the checkpoint after which records should be read.
+     * @return a TransactionLogScanner.
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogScanner getScanner(TransactionLogCheckpoint checkpoint) throws IOException {
+        return new TransactionLogScanner(file, checkpoint.getPosition(), checkpoint.getUniqueNames(), false);
+    }
+
+    /**
+     * Take a checkpoint of the dangling records of this file. Must be called without concurrent writers.
+     *
+     * @return a checkpoint covering all records written to this file.
+     */
+    TransactionLogCheckpoint checkpoint() {
+        synchronized (header) {
+            Map<Uid, Set<String>> dangling = danglingRecords.snapshot();
+            Map<Integer, String> uniqueNames = getFormatVersion() == 2 ? dictionary.getDefinitions() : Collections.<Integer, String>emptyMap();
+            return new TransactionLogCheckpoint(header.getTimestamp(), header.getPosition(), uniqueNames, dangling);
+        }
+    }
+
+    /**
+     * Load the last checkpoint of this file.
+     *
+     * @return the checkpoint, or null if there is none or if it does not belong to the current content of the file.
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogCheckpoint readCheckpoint() throws IOException {
+        File checkpointFile = TransactionLogCheckpoint.getFile(file);
+        TransactionLogCheckpoint checkpoint = TransactionLogCheckpoint.read(checkpointFile);
+        if (checkpoint == null) {
+            return null;
+        }
+        if (checkpoint.getTimestamp() != header.getTimestamp() || checkpoint.getPosition() < TransactionLogHeader.HEADER_LENGTH
+                || checkpoint.getPosition() > header.getPosition()) {
+            if (log.isDebugEnabled()) {
+                log.debug("ignoring stale {} of {}", checkpoint, this);
+            }
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Store a checkpoint of this file.
+     *
+     * @param checkpoint the checkpoint to store.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeCheckpoint(TransactionLogCheckpoint checkpoint) throws IOException {
+        checkpoint.write(TransactionLogCheckpoint.getFile(file));
+    }
+
+    /**
+     * Delete the checkpoint of this file, if any.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void deleteCheckpoint() throws IOException {
+        Files.deleteIfExists(TransactionLogCheckpoint.getFile(file).toPath());
+    }
+
+    /**
+     * Start tracking dangling records that were written before this appender was created.
+     *
+     * @param records the dangling records.
+     */
+    void trackDanglingLogs(Collection<JournalRecord> records) {
+        for (JournalRecord record : records) {
+            trackOutstanding(Status.STATUS_COMMITTING, record.getGtrid(), record.getUniqueNames());
+        }
+    }
+
     /**
      * Force flushing the logs to disk
      *
@@ -309,7 +523,13 @@ public class TransactionLogAppender {
         if (log.isDebugEnabled()) {
             log.debug("forcing log writing");
         }
-        fc.force(false);
+        if (mappedBuffer != null) {
+            mappedBuffer.force();
+        } else if (blockWriter != null) {
+            blockWriter.force();
+        } else {
+            fc.force(false);
+        }
         if (log.isDebugEnabled()) {
             log.debug("done forcing log");
         }
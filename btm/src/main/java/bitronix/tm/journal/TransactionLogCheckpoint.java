@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Snapshot of the dangling transactions of a log file, stored in a sidecar file next to it.
+ * <p>A checkpoint covers all records of the log file up to a position. Dangling records can then be collected by
+ * loading the checkpoint and only reading the records written after that position instead of the whole file. The
+ * checkpoint also holds the unique names interned up to that position so that records in the compact format can be
+ * read from there.</p>
+ * <p>On-disk format:</p>
+ * <br>
+ * <p><code>
+ * [MAGIC :4]
+ * [LOG FILE TIMESTAMP :8]
+ * [POSITION :8]
+ * [UNIQUE NAMES COUNT :4] ([UNIQUE NAME ID :4] [UNIQUE NAME LENGTH :2] [UNIQUE NAME :Y] ...)
+ * [DANGLING COUNT :4] ([GTRID LENGTH :1] [GTRID :A] [UNIQUE NAMES COUNT :4] ([UNIQUE NAME LENGTH :2] [UNIQUE NAME :Y] ...) ...)
+ * [CRC32C :4]
+ * </code></p>
+ * <p>The log file timestamp identifies the generation of the log file the checkpoint belongs to: log files get a new
+ * timestamp each time they are reused. Checkpoints are written to a temporary file then atomically renamed, a missing,
+ * stale or corrupted checkpoint is ignored and the whole log file is read instead.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class TransactionLogCheckpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionLogCheckpoint.class);
+
+    /**
+     * int-encoded "Btck" ASCII string.
+     */
+    private static final int MAGIC = 0x4274636b;
+
+    private final long timestamp;
+    private final long position;
+    private final Map<Integer, String> uniqueNames;
+    private final Map<Uid, Set<String>> danglingRecords;
+
+    /**
+     * Create a checkpoint.
+     *
+     * @param timestamp       the header timestamp of the log file.
+     * @param position        the log file position up to which records are covered.
+     * @param uniqueNames     the unique names interned in the log file up to the position, by ID.
+     * @param danglingRecords the unique names of the dangling transactions up to the position, by GTRID.
+     */
+    TransactionLogCheckpoint(long timestamp, long position, Map<Integer, String> uniqueNames, Map<Uid, Set<String>> danglingRecords) {
+        this.timestamp = timestamp;
+        this.position = position;
+        this.uniqueNames = uniqueNames;
+        this.danglingRecords = danglingRecords;
+    }
+
+    /**
+     * Get the sidecar file holding the checkpoint of a log file.
+     *
+     * @param logFile the log file.
+     * @return the checkpoint file.
+     */
+    static File getFile(File logFile) {
+        return new File(logFile.getPath() + ".ckpt");
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    Map<Integer, String> getUniqueNames() {
+        return uniqueNames;
+    }
+
+    Map<Uid, Set<String>> getDanglingRecords() {
+        return danglingRecords;
+    }
+
+    /**
+     * Store this checkpoint, replacing the previous one.
+     *
+     * @param file the checkpoint file.
+     * @throws IOException if an I/O error occurs.
+     */
+    void write(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + danglingRecords.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(timestamp);
+        out.writeLong(position);
+        out.writeInt(uniqueNames.size());
+        for (Map.Entry<Integer, String> entry : uniqueNames.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeUniqueName(out, entry.getValue());
+        }
+        out.writeInt(danglingRecords.size());
+        for (Map.Entry<Uid, Set<String>> entry : danglingRecords.entrySet()) {
+            byte[] gtrid = entry.getKey().getArray();
+            out.writeByte(gtrid.length);
+            out.write(gtrid);
+            out.writeInt(entry.getValue().size());
+            for (String uniqueName : entry.getValue()) {
+                writeUniqueName(out, uniqueName);
+            }
+        }
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(bytes.toByteArray());
+        out.writeInt((int) crc32c.getValue());
+        out.flush();
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            bytes.writeTo(fos);
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("wrote checkpoint of {} dangling record(s) covering up to position {} to {}", danglingRecords.size(), position, file);
+        }
+    }
+
+    /**
+     * Load a checkpoint.
+     *
+     * @param file the checkpoint file.
+     * @return the checkpoint, or null if the file does not exist or is corrupted.
+     * @throws IOException if an I/O error occurs.
+     */
+    static TransactionLogCheckpoint read(File file) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            if (bytes.length < 4 + 8 + 8 + 4 + 4 + 4 || buf.getInt() != MAGIC) {
+                log.warn("ignoring invalid checkpoint file {}", file);
+                return null;
+            }
+            CRC32C crc32c = new CRC32C();
+            crc32c.update(bytes, 0, bytes.length - 4);
+            if ((int) crc32c.getValue() != buf.getInt(bytes.length - 4)) {
+                log.warn("ignoring corrupted checkpoint file {}", file);
+                return null;
+            }
+
+            long timestamp = buf.getLong();
+            long position = buf.getLong();
+            int uniqueNamesCount = buf.getInt();
+            Map<Integer, String> uniqueNames = new HashMap<>(uniqueNamesCount * 2);
+            for (int i = 0; i < uniqueNamesCount; i++) {
+                int id = buf.getInt();
+                uniqueNames.put(id, readUniqueName(buf));
+            }
+            int danglingCount = buf.getInt();
+            Map<Uid, Set<String>> danglingRecords = new HashMap<>(danglingCount * 2);
+            for (int i = 0; i < danglingCount; i++) {
+                byte[] gtrid = new byte[buf.get() & 0xFF];
+                buf.get(gtrid);
+                int namesCount = buf.getInt();
+                Set<String> names = new TreeSet<>();
+                for (int j = 0; j < namesCount; j++) {
+                    names.add(readUniqueName(buf));
+                }
+                danglingRecords.put(new Uid(gtrid), names);
+            }
+            return new TransactionLogCheckpoint(timestamp, position, uniqueNames, danglingRecords);
+        } catch (RuntimeException ex) {
+            log.warn("ignoring unreadable checkpoint file " + file, ex);
+            return null;
+        }
+    }
+
+    private static void writeUniqueName(DataOutputStream out, String uniqueName) throws IOException {
+        byte[] name = uniqueName.getBytes(StandardCharsets.US_ASCII);
+        out.writeShort(name.length);
+        out.write(name);
+    }
+
+    private static String readUniqueName(ByteBuffer buf) {
+        byte[] name = new byte[buf.getShort() & 0xFFFF];
+        buf.get(name);
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+        return "a TransactionLogCheckpoint with timestamp=" + timestamp + ", position=" + position +
+                ", danglingRecords=" + danglingRecords.size();
+    }
+}
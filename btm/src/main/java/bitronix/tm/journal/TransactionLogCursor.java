@@ -22,14 +22,16 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.zip.CRC32C;
 
 /**
- * Used to read {@link TransactionLogRecord} objects from a log file.
+ * Used to read {@link TransactionLogRecord} objects from a log file. Both the original and the compact record formats
+ * are supported, the header of the file tells which one is used.
  *
  * @author Ludovic Orban
  */
@@ -42,7 +44,11 @@ public class TransactionLogCursor {
     private final FileChannel fileChannel;
     private long currentPosition;
     private final long endPosition;
-    private final ByteBuffer page;
+    private final int formatVersion;
+    private ByteBuffer page;
+    private List<String> dictionary;
+    private CRC32C crc32c;
+    private List<Integer> unresolvedReferences;
 
     /**
      * Create a TransactionLogCursor that will read from the specified file.
@@ -52,15 +58,78 @@ public class TransactionLogCursor {
      * @throws IOException if an I/O error occurs.
      */
     public TransactionLogCursor(File file) throws IOException {
+        this(file, TransactionLogHeader.HEADER_LENGTH, Collections.<Integer, String>emptyMap());
+    }
+
+    /**
+     * Create a TransactionLogCursor that will read from the specified file, starting at the specified position.
+     * This opens a new read-only file descriptor.
+     *
+     * @param file          the file to read logs from
+     * @param startPosition the position of the first record to read.
+     * @param uniqueNames   the unique names interned in the file before the start position, by ID. Only needed when
+     *                      records are written in the compact format.
+     * @throws IOException if an I/O error occurs.
+     * @see TransactionLogCheckpoint
+     */
+    TransactionLogCursor(File file, long startPosition, Map<Integer, String> uniqueNames) throws IOException {
         this.fis = new FileInputStream(file);
         this.fileChannel = fis.getChannel();
         this.page = ByteBuffer.allocate(8192);
 
-        fileChannel.position(TransactionLogHeader.CURRENT_POSITION_HEADER);
-        fileChannel.read(page);
-        page.rewind();
-        endPosition = page.getLong();
-        currentPosition = TransactionLogHeader.CURRENT_POSITION_HEADER + 8;
+        fileChannel.position(TransactionLogHeader.FORMAT_ID_HEADER);
+        while (page.hasRemaining() && fileChannel.read(page) >= 0) {
+            // fill the first page
+        }
+        page.flip();
+        int formatId = page.getInt(TransactionLogHeader.FORMAT_ID_HEADER);
+        formatVersion = formatId == TransactionLogHeader.FORMAT_ID_V2 ? 2 : 1;
+        endPosition = page.getLong(TransactionLogHeader.CURRENT_POSITION_HEADER);
+        currentPosition = TransactionLogHeader.HEADER_LENGTH;
+        page.position(TransactionLogHeader.HEADER_LENGTH);
+
+        if (formatVersion == 2) {
+            dictionary = new ArrayList<>();
+            crc32c = new CRC32C();
+            for (Map.Entry<Integer, String> entry : uniqueNames.entrySet()) {
+                define(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (startPosition > TransactionLogHeader.HEADER_LENGTH) {
+            page.clear();
+            fileChannel.position(startPosition);
+            while (page.hasRemaining() && fileChannel.read(page) >= 0) {
+                // fill the first page
+            }
+            page.flip();
+            currentPosition = startPosition;
+        }
+    }
+
+    /**
+     * Create a TransactionLogCursor that will read the records held in a chunk of a log file. References to unique
+     * names interned before the chunk are not resolved, they are reported by {@link #getUnresolvedReferences()}
+     * instead.
+     *
+     * @param chunk         the chunk, between its position and its limit. It must start at a record boundary.
+     * @param startPosition the position of the chunk in the log file.
+     * @param formatVersion the record format version of the log file.
+     * @see TransactionLogScanner
+     */
+    TransactionLogCursor(ByteBuffer chunk, long startPosition, int formatVersion) {
+        this.fis = null;
+        this.fileChannel = null;
+        this.page = chunk;
+        this.formatVersion = formatVersion;
+        this.currentPosition = startPosition;
+        this.endPosition = startPosition + chunk.remaining();
+
+        if (formatVersion == 2) {
+            dictionary = new ArrayList<>();
+            crc32c = new CRC32C();
+            unresolvedReferences = new ArrayList<>();
+        }
     }
 
     /**
@@ -90,13 +159,17 @@ public class TransactionLogCursor {
             return null;
         }
 
+        if (formatVersion == 2) {
+            return readCompactLog(skipCrcCheck);
+        }
+
         final int status = page.getInt();
         // currentPosition += 4;
         final int recordLength = page.getInt();
         // currentPosition += 4;
         currentPosition += 8;
 
-        if (page.position() + recordLength + 8 > page.limit()) {
+        if (fileChannel != null && page.position() + recordLength + 8 > page.limit()) {
             page.compact();
             fileChannel.read(page);
             page.rewind();
@@ -182,13 +255,201 @@ public class TransactionLogCursor {
         return tlog;
     }
 
+    /**
+     * Fetch the next TransactionLogRecord from a log file written in the compact format.
+     *
+     * @param skipCrcCheck true if the CRC32C checksum mismatches must not be reported.
+     * @return the TransactionLogRecord.
+     * @throws IOException if an I/O error occurs.
+     * @see TransactionLogRecordEncoder
+     */
+    private TransactionLogRecord readCompactLog(boolean skipCrcCheck) throws IOException {
+        if (unresolvedReferences != null) {
+            unresolvedReferences.clear();
+        }
+        fill((int) Math.min(5L, endPosition - currentPosition));
+        final int start = page.position();
+        final int recordLength;
+        try {
+            recordLength = getVarint(page, page.limit());
+        } catch (CorruptedTransactionLogException ex) {
+            long recordPosition = currentPosition;
+            currentPosition = endPosition;
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition + " (invalid record length)");
+        }
+        currentPosition += page.position() - start;
+
+        if (recordLength < 1 + 8 + 1 + 1 + 1 + 4 + 4 || currentPosition + recordLength > endPosition) {
+            // the record length cannot be trusted, there is no way to find the next record
+            long recordPosition = currentPosition;
+            currentPosition = endPosition;
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + " (record terminator outside of file bounds: " + (recordPosition + recordLength) + " of "
+                    + endPosition + ", recordLength: " + recordLength + ")");
+        }
+
+        fill(recordLength);
+        final long recordPosition = currentPosition;
+        final int body = page.position();
+        final int endOfRecordPosition = body + recordLength;
+        final int crcPosition = endOfRecordPosition - 8;
+        page.position(endOfRecordPosition);
+        currentPosition += recordLength;
+
+        if (page.getInt(endOfRecordPosition - 4) != TransactionLogAppender.END_RECORD) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition + " (no record terminator found)");
+        }
+
+        final int storedCrc32c = page.getInt(crcPosition);
+        ByteBuffer checksummed = page.duplicate();
+        checksummed.limit(crcPosition).position(body);
+        crc32c.reset();
+        crc32c.update(checksummed);
+        final boolean crc32cCorrect = (int) crc32c.getValue() == storedCrc32c;
+        if (!skipCrcCheck && !crc32cCorrect) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + " (invalid CRC32C, recorded: " + storedCrc32c + ", calculated: " + (int) crc32c.getValue() + ")");
+        }
+
+        ByteBuffer record = page.duplicate();
+        record.limit(crcPosition).position(body);
+        try {
+            final int status = record.get();
+            final long time = record.getLong();
+            final int sequenceNumber = getVarint(record, crcPosition);
+            final int gtridSize = record.get() & 0xFF;
+            if (gtridSize > record.remaining()) {
+                throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition + " (GTRID size too long)");
+            }
+            final byte[] gtridArray = new byte[gtridSize];
+            record.get(gtridArray);
+
+            final int uniqueNamesCount = getVarint(record, crcPosition);
+            Set<String> uniqueNames = new HashSet<>();
+            for (int i = 0; i < uniqueNamesCount; i++) {
+                int reference = getVarint(record, crcPosition);
+                int id = reference >>> 1;
+                String uniqueName;
+                if ((reference & 1) != 0) {
+                    int length = getVarint(record, crcPosition);
+                    if (length > record.remaining()) {
+                        throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                                + " (unique names too long, " + (i + 1) + " out of " + uniqueNamesCount + ", length: " + length + ")");
+                    }
+                    byte[] nameBytes = new byte[length];
+                    record.get(nameBytes);
+                    uniqueName = new String(nameBytes, StandardCharsets.US_ASCII);
+                    define(id, uniqueName);
+                } else {
+                    uniqueName = id < dictionary.size() ? dictionary.get(id) : null;
+                    if (uniqueName == null && unresolvedReferences != null) {
+                        unresolvedReferences.add(id);
+                        continue;
+                    }
+                    if (uniqueName == null) {
+                        throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                                + " (reference to undefined unique name " + id + ")");
+                    }
+                }
+                uniqueNames.add(uniqueName);
+            }
+
+            if (record.hasRemaining()) {
+                throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                        + " (" + record.remaining() + " unexpected byte(s) after the unique names)");
+            }
+
+            return new TransactionLogRecord(status, recordLength, time, sequenceNumber, storedCrc32c, crc32cCorrect,
+                    new Uid(gtridArray), uniqueNames);
+        } catch (BufferUnderflowException ex) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition + " (record too short)");
+        }
+    }
+
+    /**
+     * @return the IDs of the unique names referenced by the last read record that were interned before the chunk this
+     * cursor reads, or an empty list.
+     */
+    List<Integer> getUnresolvedReferences() {
+        return unresolvedReferences == null ? Collections.<Integer>emptyList() : unresolvedReferences;
+    }
+
+    /**
+     * @return the unique names interned up to the current position, by ID, with null for unknown IDs.
+     */
+    List<String> getUniqueNames() {
+        return dictionary == null ? Collections.<String>emptyList() : dictionary;
+    }
+
+    private void define(int id, String uniqueName) {
+        while (dictionary.size() <= id) {
+            dictionary.add(null);
+        }
+        dictionary.set(id, uniqueName);
+    }
+
+    /**
+     * Make sure the page holds at least the specified amount of bytes after its position, reading more from the file
+     * and growing the page if needed.
+     *
+     * @param length the amount of bytes needed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void fill(int length) throws IOException {
+        if (page.remaining() >= length) {
+            return;
+        }
+        if (fileChannel == null) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + currentPosition + " (unexpected end of chunk)");
+        }
+        if (page.capacity() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(length, page.capacity() * 2));
+            larger.put(page);
+            page = larger;
+        } else {
+            page.compact();
+        }
+        while (page.position() < length && fileChannel.read(page) >= 0) {
+            // read until the requested length is available
+        }
+        page.flip();
+        if (page.remaining() < length) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + currentPosition + " (unexpected end of file)");
+        }
+    }
+
+    /**
+     * Decode a varint written by {@link TransactionLogRecordEncoder#putVarint(ByteBuffer, int)}.
+     *
+     * @param buf   the buffer to read from.
+     * @param limit the position the varint must not cross.
+     * @return the decoded value.
+     * @throws CorruptedTransactionLogException if the varint is malformed.
+     */
+    private static int getVarint(ByteBuffer buf, int limit) throws CorruptedTransactionLogException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (buf.position() >= limit) {
+                break;
+            }
+            byte b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptedTransactionLogException("malformed varint found at buffer position " + buf.position());
+    }
+
     /**
      * Close the cursor and the underlying file
      *
      * @throws IOException if an I/O error occurs.
      */
     public void close() throws IOException {
-        fis.close();
-        fileChannel.close();
+        if (fis != null) {
+            fis.close();
+            fileChannel.close();
+        }
     }
 }
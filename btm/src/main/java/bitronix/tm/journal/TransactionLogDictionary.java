@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unique names interned in a log file written in the compact record format.
+ * <p>Each unique name gets a small ID the first time it is logged to the file. The record logging a name for the
+ * first time carries its definition, later records only carry the ID. A name is only referenced by its ID once space
+ * was reserved for a record defining it, so that a definition always lies before the references to it in the
+ * file.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class TransactionLogDictionary {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Get the entry of a unique name, assigning it an ID if it has none yet.
+     *
+     * @param uniqueName the unique name.
+     * @return the entry of the unique name.
+     */
+    Entry intern(String uniqueName) {
+        Entry entry = entries.get(uniqueName);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(uniqueName, name -> new Entry(nextId.getAndIncrement()));
+        }
+        return entry;
+    }
+
+    /**
+     * Get the unique names defined in the file. Must be called without concurrent writers for the result to only
+     * contain names defined by records written to the file.
+     *
+     * @return the defined unique names by ID.
+     */
+    Map<Integer, String> getDefinitions() {
+        Map<Integer, String> definitions = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().isDefined()) {
+                definitions.put(entry.getValue().getId(), entry.getKey());
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Forget all unique names. Must only be called when the log file is rewound, without concurrent writers.
+     */
+    void clear() {
+        entries.clear();
+        nextId.set(0);
+    }
+
+    static final class Entry {
+        private final int id;
+        private volatile boolean defined;
+
+        private Entry(int id) {
+            this.id = id;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        /**
+         * @return true if space was reserved for a record defining this unique name.
+         */
+        boolean isDefined() {
+            return defined;
+        }
+
+        void setDefined() {
+            defined = true;
+        }
+    }
+
+}
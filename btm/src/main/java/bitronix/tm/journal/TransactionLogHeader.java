@@ -15,18 +15,23 @@
  */
 package bitronix.tm.journal;
 
+import bitronix.tm.BitronixXid;
 import bitronix.tm.utils.Decoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
  * Used to control a log file's header.
  * <p>The physical data is read when this object is created then cached. Calling setter methods sets the header field
  * then moves the file pointer back to the previous location.</p>
+ * <p>The format ID tells in which format the records of the file are written: {@link #FORMAT_ID_V1} for the original
+ * format described in {@link TransactionLogRecord} and {@link #FORMAT_ID_V2} for the compact one described in
+ * {@link TransactionLogRecordEncoder}.</p>
  *
  * @author Ludovic Orban
  */
@@ -59,6 +64,16 @@ public class TransactionLogHeader {
      */
     public static final int HEADER_LENGTH = CURRENT_POSITION_HEADER + 8;
 
+    /**
+     * Format ID of log files containing records in the original format.
+     */
+    public static final int FORMAT_ID_V1 = BitronixXid.FORMAT_ID;
+
+    /**
+     * Format ID of log files containing records in the compact format. Int-encoded "Btn2" ASCII string.
+     */
+    public static final int FORMAT_ID_V2 = 0x42746e32;
+
     /**
      * State of the log file when it has been closed properly.
      */
@@ -70,6 +85,8 @@ public class TransactionLogHeader {
     public static final byte UNCLEAN_LOG_STATE = -1;
 
     private final FileChannel fc;
+    private final MappedByteBuffer mappedBuffer;
+    private final AlignedBlockWriter blockWriter;
     private final long maxFileLength;
 
     private volatile int formatId;
@@ -85,7 +102,37 @@ public class TransactionLogHeader {
      * @throws IOException if an I/O error occurs.
      */
     public TransactionLogHeader(FileChannel fc, long maxFileLength) throws IOException {
+        this(fc, null, maxFileLength);
+    }
+
+    /**
+     * TransactionLogHeader are used to control headers of the specified RandomAccessFile. When a memory mapping of
+     * the file is specified, header fields are updated through it instead of being written to the file channel so
+     * that forcing the mapping is enough to make them durable.
+     *
+     * @param fc            the file channel to read from.
+     * @param mappedBuffer  the memory mapping of the whole file, or null if the file is not mapped.
+     * @param maxFileLength the max file length.
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogHeader(FileChannel fc, MappedByteBuffer mappedBuffer, long maxFileLength) throws IOException {
+        this(fc, mappedBuffer, null, maxFileLength);
+    }
+
+    /**
+     * TransactionLogHeader are used to control headers of the specified RandomAccessFile. When a direct I/O writer of
+     * the file is specified, header fields are written through it as the whole file must then bypass the page cache.
+     *
+     * @param fc            the file channel to read from.
+     * @param mappedBuffer  the memory mapping of the whole file, or null if the file is not mapped.
+     * @param blockWriter   the direct I/O writer of the file, or null if the file is not opened for direct I/O.
+     * @param maxFileLength the max file length.
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogHeader(FileChannel fc, MappedByteBuffer mappedBuffer, AlignedBlockWriter blockWriter, long maxFileLength) throws IOException {
         this.fc = fc;
+        this.mappedBuffer = mappedBuffer;
+        this.blockWriter = blockWriter;
         this.maxFileLength = maxFileLength;
 
         fc.position(FORMAT_ID_HEADER);
@@ -115,6 +162,35 @@ public class TransactionLogHeader {
         return formatId;
     }
 
+    /**
+     * Get the version of the record format, derived from FORMAT_ID_HEADER. Unknown format IDs are considered to be
+     * the original format.
+     *
+     * @return 2 if the records are in the compact format, 1 otherwise.
+     * @see #FORMAT_ID_HEADER
+     */
+    public int getFormatVersion() {
+        return formatId == FORMAT_ID_V2 ? 2 : 1;
+    }
+
+    /**
+     * Get the format ID of a record format version.
+     *
+     * @param formatVersion the record format version, 1 or 2.
+     * @return the format ID to store in FORMAT_ID_HEADER.
+     * @throws IOException if the format version is not supported.
+     */
+    static int getFormatId(int formatVersion) throws IOException {
+        switch (formatVersion) {
+            case 1:
+                return FORMAT_ID_V1;
+            case 2:
+                return FORMAT_ID_V2;
+            default:
+                throw new IOException("unsupported transaction log format version " + formatVersion);
+        }
+    }
+
     /**
      * Get TIMESTAMP_HEADER.
      *
@@ -156,9 +232,7 @@ public class TransactionLogHeader {
         ByteBuffer buf = ByteBuffer.allocate(8);
         buf.putInt(formatId);
         buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, FORMAT_ID_HEADER + buf.position());
-        }
+        write(buf, FORMAT_ID_HEADER);
         this.formatId = formatId;
     }
 
@@ -173,9 +247,7 @@ public class TransactionLogHeader {
         ByteBuffer buf = ByteBuffer.allocate(8);
         buf.putLong(timestamp);
         buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, TIMESTAMP_HEADER + buf.position());
-        }
+        write(buf, TIMESTAMP_HEADER);
         this.timestamp = timestamp;
     }
 
@@ -190,9 +262,7 @@ public class TransactionLogHeader {
         ByteBuffer buf = ByteBuffer.allocate(1);
         buf.put(state);
         buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, STATE_HEADER + buf.position());
-        }
+        write(buf, STATE_HEADER);
         this.state = state;
     }
 
@@ -214,12 +284,23 @@ public class TransactionLogHeader {
         ByteBuffer buf = ByteBuffer.allocate(8);
         buf.putLong(position);
         buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, CURRENT_POSITION_HEADER + buf.position());
-        }
+        write(buf, CURRENT_POSITION_HEADER);
 
         this.position = position;
-        fc.position(position);
+    }
+
+    private void write(ByteBuffer buf, int headerPosition) throws IOException {
+        if (mappedBuffer != null) {
+            mappedBuffer.put(headerPosition, buf.array(), 0, buf.limit());
+            return;
+        }
+        if (blockWriter != null) {
+            blockWriter.write(buf, headerPosition);
+            return;
+        }
+        while (buf.hasRemaining()) {
+            fc.write(buf, headerPosition + buf.position());
+        }
     }
 
     /**
@@ -239,7 +320,8 @@ public class TransactionLogHeader {
      */
     @Override
     public String toString() {
-        return "a Bitronix TransactionLogHeader with timestamp=" + timestamp +
+        return "a Bitronix TransactionLogHeader with formatVersion=" + getFormatVersion() +
+                ", timestamp=" + timestamp +
                 ", state=" + Decoder.decodeHeaderState(state) +
                 ", position=" + position;
     }
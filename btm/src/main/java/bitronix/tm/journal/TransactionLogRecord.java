@@ -69,7 +69,7 @@ public class TransactionLogRecord implements JournalRecord {
     private static final Logger log = LoggerFactory.getLogger(TransactionLogRecord.class);
 
     // status + record length + record header length + current time + sequence number + checksum
-    private static final int RECORD_HEADER_LENGTH = 4 + 4 + 4 + 8 + 4 + 4;
+    static final int RECORD_HEADER_LENGTH = 4 + 4 + 4 + 8 + 4 + 4;
 
     private static final Charset US_ASCII = StandardCharsets.US_ASCII;
 
@@ -84,8 +84,19 @@ public class TransactionLogRecord implements JournalRecord {
     private final Uid gtrid;
     private final SortedSet<String> uniqueNames;
     private final int endRecord;
+    private final int formatVersion;
+    private final boolean crc32cCorrect;
     private long writePosition;
 
+    /**
+     * Generate the sequence number of a new record.
+     *
+     * @return the next sequence number.
+     */
+    static int nextSequenceNumber() {
+        return sequenceGenerator.incrementAndGet();
+    }
+
     /**
      * Use this constructor when restoring a log from the disk.
      *
@@ -109,6 +120,35 @@ public class TransactionLogRecord implements JournalRecord {
         this.gtrid = gtrid;
         this.uniqueNames = new TreeSet<String>(uniqueNames);
         this.endRecord = endRecord;
+        this.formatVersion = 1;
+        this.crc32cCorrect = false;
+    }
+
+    /**
+     * Use this constructor when restoring a log written in the compact format from the disk.
+     *
+     * @param status         record type
+     * @param recordLength   record length excluding the record length itself
+     * @param time           current time in milliseconds
+     * @param sequenceNumber atomically generated sequence number during a JVM's lifespan
+     * @param crc32c         CRC32C checksum of the record as stored on disk
+     * @param crc32cCorrect  true if the stored checksum matches the record read from disk
+     * @param gtrid          global transaction id
+     * @param uniqueNames    unique names of XA data sources used in this transaction
+     * @see TransactionLogRecordEncoder
+     */
+    TransactionLogRecord(int status, int recordLength, long time, int sequenceNumber, int crc32c, boolean crc32cCorrect, Uid gtrid, Set<String> uniqueNames) {
+        this.status = status;
+        this.recordLength = recordLength;
+        this.headerLength = 0;
+        this.time = time;
+        this.sequenceNumber = sequenceNumber;
+        this.crc32 = crc32c;
+        this.gtrid = gtrid;
+        this.uniqueNames = new TreeSet<String>(uniqueNames);
+        this.endRecord = TransactionLogAppender.END_RECORD;
+        this.formatVersion = 2;
+        this.crc32cCorrect = crc32cCorrect;
     }
 
     /**
@@ -121,11 +161,13 @@ public class TransactionLogRecord implements JournalRecord {
     public TransactionLogRecord(int status, Uid gtrid, Set<String> uniqueNames) {
         this.status = status;
         this.time = MonotonicClock.currentTimeMillis();
-        this.sequenceNumber = sequenceGenerator.incrementAndGet();
+        this.sequenceNumber = nextSequenceNumber();
         this.gtrid = gtrid;
         this.uniqueNames = new TreeSet<>(uniqueNames);
         this.endRecord = TransactionLogAppender.END_RECORD;
         this.headerLength = RECORD_HEADER_LENGTH;
+        this.formatVersion = 1;
+        this.crc32cCorrect = false;
 
         refresh();
     }
@@ -178,6 +220,14 @@ public class TransactionLogRecord implements JournalRecord {
         return endRecord;
     }
 
+    /**
+     * @return 2 if this record was read from a log file written in the compact format, 1 otherwise.
+     * @see TransactionLogHeader#getFormatVersion()
+     */
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
     /**
      * Recalculate and store the dynamic values of this record: {@link #getRecordLength()}, {@link #getHeaderLength()}
      * and {@link #calculateCrc32()}. This method must be called each time after the set of contained unique names is updated.
@@ -188,10 +238,15 @@ public class TransactionLogRecord implements JournalRecord {
 
     /**
      * Recalculate the CRC32 value of this record (using {@link #calculateCrc32()}) and compare it with the stored value.
+     * Records read in the compact format carry a CRC32C checksum of their on-disk bytes instead, which was checked
+     * when they were read.
      *
      * @return true if the recalculated value equals the stored one, false otherwise.
      */
     public boolean isCrc32Correct() {
+        if (formatVersion == 2) {
+            return crc32cCorrect;
+        }
         return calculateCrc32() == getCrc32();
     }
 
@@ -208,7 +263,8 @@ public class TransactionLogRecord implements JournalRecord {
      */
     @Override
     public Map<String, ?> getRecordProperties() {
-        Map<String, Object> props = new LinkedHashMap<>(4);
+        Map<String, Object> props = new LinkedHashMap<>(5);
+        props.put("formatVersion", formatVersion);
         props.put("recordLength", recordLength);
         props.put("headerLength", headerLength);
         props.put("sequenceNumber", sequenceNumber);
@@ -304,8 +360,18 @@ public class TransactionLogRecord implements JournalRecord {
      * @return fixedRecordLength
      */
     private int getFixedRecordLength() {
+        return getFixedRecordLength(gtrid.length());
+    }
+
+    /**
+     * Length of all the fixed size fields part of the record length header except status and record length.
+     *
+     * @param gtridLength the length of the GTRID.
+     * @return fixedRecordLength
+     */
+    static int getFixedRecordLength(int gtridLength) {
         // record header length + current time + sequence number + checksum + GTRID size + GTRID + unique names count + end record marker
-        return 4 + 8 + 4 + 4 + 1 + gtrid.length() + 4 + 4;
+        return 4 + 8 + 4 + 4 + 1 + gtridLength + 4 + 4;
     }
 
     static class NullOutputStream extends OutputStream {
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.resource.ResourceRegistrar;
+import bitronix.tm.utils.MonotonicClock;
+import bitronix.tm.utils.Uid;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Serializes transaction log records in the on-disk format of the log file they are written to without creating
+ * intermediate objects.
+ * <p>Records are encoded straight from the GTRID and the unique names into a direct buffer that is reused for all
+ * records encoded by the same encoder. Unique names of registered resources are not encoded again, the encoding
+ * cached by the {@link ResourceRegistrar} is used instead.</p>
+ * <p>Log files either use the original format described in {@link TransactionLogRecord} or the compact one:</p>
+ * <br>
+ * <p><code>
+ * [RECORD_LEN :varint]
+ * [RECORD_TYPE :1]
+ * [System.currentTimeMillis :8]
+ * [Sequence number :varint]
+ * [GTRID LENGTH :1] [GTRID :A]
+ * [UNIQUE NAMES COUNT :varint] ([UNIQUE NAME REFERENCE :varint] ([UNIQUE NAME LENGTH :varint] [UNIQUE NAME :Y]) ...)
+ * [CRC32C :4]
+ * [END_RECORD_INDICATOR :4]
+ * </code></p>
+ * <p>[RECORD_LEN] is the length of the record sans itself. Unique names are interned in the file's
+ * {@link TransactionLogDictionary}: a reference is the name's ID shifted left by one bit, the lowest bit being set
+ * when the name's length and characters follow because the name was not defined yet in the file. The [CRC32C]
+ * checksum covers all fields from [RECORD_TYPE] up to the last unique name.</p>
+ * <p>Encoders are not thread-safe, {@link #get()} returns the calling thread's one.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class TransactionLogRecordEncoder {
+
+    private static final ThreadLocal<TransactionLogRecordEncoder> encoders = ThreadLocal.withInitial(TransactionLogRecordEncoder::new);
+
+    // status + record length + record header length + current time + sequence number
+    private static final int CRC_POSITION = 4 + 4 + 4 + 8 + 4;
+
+    private final CRC32 crc32 = new CRC32();
+    private final CRC32C crc32c = new CRC32C();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(512);
+    private String[] names = new String[8];
+    private byte[][] encodedNames = new byte[8][];
+    private TransactionLogDictionary.Entry[] entries = new TransactionLogDictionary.Entry[8];
+    private final List<TransactionLogDictionary.Entry> definitions = new ArrayList<>();
+
+    /**
+     * @return the encoder of the calling thread.
+     */
+    static TransactionLogRecordEncoder get() {
+        return encoders.get();
+    }
+
+    /**
+     * Encode a new record in the format of the specified log file.
+     * {@link #definitionsReserved()} must be called once space was reserved for the record in that file.
+     *
+     * @param tla         the appender the record is going to be written with.
+     * @param status      record type
+     * @param gtrid       global transaction id
+     * @param uniqueNames unique names of XA data sources used in this transaction
+     * @return a buffer containing the encoded record between its position and its limit. The buffer is only valid
+     * until the next call to this encoder.
+     */
+    ByteBuffer encode(TransactionLogAppender tla, int status, Uid gtrid, Set<String> uniqueNames) {
+        return encode(tla, status, MonotonicClock.currentTimeMillis(), TransactionLogRecord.nextSequenceNumber(), gtrid, uniqueNames);
+    }
+
+    /**
+     * Encode an existing record in the format of the specified log file, keeping its time and sequence number.
+     * {@link #definitionsReserved()} must be called once space was reserved for the record in that file.
+     *
+     * @param tla  the appender the record is going to be written with.
+     * @param tlog the record to encode.
+     * @return a buffer containing the encoded record between its position and its limit. The buffer is only valid
+     * until the next call to this encoder.
+     */
+    ByteBuffer encode(TransactionLogAppender tla, TransactionLogRecord tlog) {
+        return encode(tla, tlog.getStatus(), tlog.getTime(), tlog.getSequenceNumber(), tlog.getGtrid(), tlog.getUniqueNames());
+    }
+
+    /**
+     * Encode an existing record in the original format, keeping its time and sequence number.
+     *
+     * @param tlog the record to encode.
+     * @return a buffer containing the encoded record between its position and its limit. The buffer is only valid
+     * until the next call to this encoder.
+     */
+    ByteBuffer encode(TransactionLogRecord tlog) {
+        int count = prepareUniqueNames(tlog.getUniqueNames());
+        try {
+            return encodeV1(tlog.getStatus(), tlog.getTime(), tlog.getSequenceNumber(), tlog.getGtrid(), count);
+        } finally {
+            releaseUniqueNames(count);
+        }
+    }
+
+    /**
+     * Mark the unique names defined by the last encoded record as defined in its log file, so that later records can
+     * reference them. Must be called once space was reserved for the record, before it gets written.
+     */
+    void definitionsReserved() {
+        for (TransactionLogDictionary.Entry entry : definitions) {
+            entry.setDefined();
+        }
+        definitions.clear();
+    }
+
+    private ByteBuffer encode(TransactionLogAppender tla, int status, long time, int sequenceNumber, Uid gtrid, Set<String> uniqueNames) {
+        definitions.clear();
+        int count = prepareUniqueNames(uniqueNames);
+        try {
+            if (tla.getFormatVersion() == 2) {
+                return encodeV2(tla.getDictionary(), status, time, sequenceNumber, gtrid, count);
+            }
+            return encodeV1(status, time, sequenceNumber, gtrid, count);
+        } finally {
+            releaseUniqueNames(count);
+        }
+    }
+
+    private ByteBuffer encodeV1(int status, long time, int sequenceNumber, Uid gtrid, int count) {
+        byte[] gtridArray = gtrid.getArray();
+        int recordLength = TransactionLogRecord.getFixedRecordLength(gtridArray.length);
+        for (int i = 0; i < count; i++) {
+            recordLength += 2 + encodedNames[i].length;
+        }
+
+        ByteBuffer buf = buffer(recordLength + 4 + 4);
+        buf.putInt(status);
+        buf.putInt(recordLength);
+        buf.putInt(TransactionLogRecord.RECORD_HEADER_LENGTH);
+        buf.putLong(time);
+        buf.putInt(sequenceNumber);
+        buf.putInt(0); // checksum, calculated below
+        buf.put((byte) gtridArray.length);
+        buf.put(gtridArray);
+        buf.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buf.putShort((short) encodedNames[i].length);
+            buf.put(encodedNames[i]);
+        }
+        buf.putInt(TransactionLogAppender.END_RECORD);
+        int end = buf.position();
+
+        // the checksum covers all fields but itself and the GTRID length, see TransactionLogRecord.calculateCrc32()
+        crc32.reset();
+        buf.position(0).limit(CRC_POSITION);
+        crc32.update(buf);
+        buf.limit(end).position(CRC_POSITION + 4 + 1);
+        crc32.update(buf);
+        buf.putInt(CRC_POSITION, (int) crc32.getValue());
+
+        buf.position(0);
+        return buf;
+    }
+
+    private ByteBuffer encodeV2(TransactionLogDictionary dictionary, int status, long time, int sequenceNumber, Uid gtrid, int count) {
+        byte[] gtridArray = gtrid.getArray();
+        int recordLength = 1 + 8 + varintSize(sequenceNumber) + 1 + gtridArray.length + varintSize(count) + 4 + 4;
+        for (int i = 0; i < count; i++) {
+            TransactionLogDictionary.Entry entry = dictionary.intern(names[i]);
+            entries[i] = entry;
+            if (entry.isDefined()) {
+                recordLength += varintSize(entry.getId() << 1);
+            } else {
+                definitions.add(entry);
+                recordLength += varintSize((entry.getId() << 1) | 1) + varintSize(encodedNames[i].length) + encodedNames[i].length;
+            }
+        }
+
+        ByteBuffer buf = buffer(varintSize(recordLength) + recordLength);
+        putVarint(buf, recordLength);
+        int checksummed = buf.position();
+        buf.put((byte) status);
+        buf.putLong(time);
+        putVarint(buf, sequenceNumber);
+        buf.put((byte) gtridArray.length);
+        buf.put(gtridArray);
+        putVarint(buf, count);
+        for (int i = 0; i < count; i++) {
+            TransactionLogDictionary.Entry entry = entries[i];
+            if (definitions.contains(entry)) {
+                putVarint(buf, (entry.getId() << 1) | 1);
+                putVarint(buf, encodedNames[i].length);
+                buf.put(encodedNames[i]);
+            } else {
+                putVarint(buf, entry.getId() << 1);
+            }
+        }
+        int end = buf.position();
+
+        crc32c.reset();
+        buf.limit(end).position(checksummed);
+        crc32c.update(buf);
+        buf.limit(buf.capacity());
+        buf.putInt((int) crc32c.getValue());
+        buf.putInt(TransactionLogAppender.END_RECORD);
+
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Sort the unique names the same way {@link TransactionLogRecord} does and look up their encoding.
+     *
+     * @param uniqueNames the unique names to prepare.
+     * @return the amount of unique names.
+     */
+    private int prepareUniqueNames(Set<String> uniqueNames) {
+        int count = uniqueNames.size();
+        if (count > names.length) {
+            names = new String[Math.max(count, names.length * 2)];
+            encodedNames = new byte[names.length][];
+            entries = new TransactionLogDictionary.Entry[names.length];
+        }
+
+        int i = 0;
+        for (String uniqueName : uniqueNames) {
+            names[i++] = uniqueName;
+        }
+        Arrays.sort(names, 0, count);
+
+        for (i = 0; i < count; i++) {
+            byte[] encodedName = ResourceRegistrar.getEncodedUniqueName(names[i]);
+            if (encodedName == null) {
+                encodedName = names[i].getBytes(ResourceRegistrar.UNIQUE_NAME_CHARSET);
+            }
+            encodedNames[i] = encodedName;
+        }
+        return count;
+    }
+
+    private void releaseUniqueNames(int count) {
+        Arrays.fill(names, 0, count, null);
+        Arrays.fill(encodedNames, 0, count, null);
+        Arrays.fill(entries, 0, count, null);
+    }
+
+    private ByteBuffer buffer(int size) {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * @param value the value, considered unsigned.
+     * @return the amount of bytes needed to encode the value as a varint.
+     */
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Encode an unsigned value using 7 bits per byte, least significant group first, the highest bit of each byte
+     * telling if another byte follows.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value, considered unsigned.
+     */
+    static void putVarint(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the records of a log file in log order, decoding large files in parallel.
+ * <p>The file is split in chunks of roughly equal size at record boundaries, found by looking for the
+ * {@link TransactionLogAppender#END_RECORD} marker closing the record preceding each boundary. Chunks are memory
+ * mapped then decoded and checksummed on the common fork-join pool while the caller consumes the records of the
+ * chunks already decoded, in log order. Only a bounded amount of chunks is decoded ahead of the caller.</p>
+ * <p>A marker may also show up inside a record, so a boundary is only trusted once the chunk preceding it was decoded
+ * up to exactly that boundary. When this is not the case, or when a chunk holds a corrupted record, the rest of the
+ * file is read sequentially with a {@link TransactionLogCursor} starting at the last trusted boundary, so corrupted
+ * records are reported exactly as they would be by a sequential read.</p>
+ * <p>Unique names of compact records are resolved once the records of all previous chunks were consumed.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class TransactionLogScanner {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionLogScanner.class);
+
+    /**
+     * The size of the chunks, files holding less than two chunks of records are read sequentially.
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    // large enough to always hold a record
+    private static final int MAX_BOUNDARY_SEARCH = 64 * 1024;
+
+    private final File file;
+    private final boolean skipCrcCheck;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final int formatVersion;
+    private final Map<Integer, String> uniqueNames;
+    private final long[] boundaries;
+    private final Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+    private final int maxPendingChunks;
+    private int nextChunk;
+
+    private Chunk currentChunk;
+    private int currentRecord;
+    private TransactionLogCursor sequentialCursor;
+
+    /**
+     * Create a scanner reading the records of a log file.
+     *
+     * @param file          the log file.
+     * @param startPosition the position of the first record to read.
+     * @param uniqueNames   the unique names interned in the file before the start position, by ID.
+     * @param skipCrcCheck  true if checksum mismatches must not be reported.
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogScanner(File file, long startPosition, Map<Integer, String> uniqueNames, boolean skipCrcCheck) throws IOException {
+        this(file, startPosition, uniqueNames, skipCrcCheck, ForkJoinPool.getCommonPoolParallelism() < 2 ? 0 : DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a scanner reading the records of a log file.
+     *
+     * @param file          the log file.
+     * @param startPosition the position of the first record to read.
+     * @param uniqueNames   the unique names interned in the file before the start position, by ID.
+     * @param skipCrcCheck  true if checksum mismatches must not be reported.
+     * @param chunkSize     the size of the chunks the file is split in, 0 to read it sequentially.
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogScanner(File file, long startPosition, Map<Integer, String> uniqueNames, boolean skipCrcCheck, int chunkSize) throws IOException {
+        this.file = file;
+        this.skipCrcCheck = skipCrcCheck;
+        this.uniqueNames = new HashMap<>(uniqueNames);
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.fileChannel = randomAccessFile.getChannel();
+        this.maxPendingChunks = Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism());
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(TransactionLogHeader.HEADER_LENGTH);
+            while (header.hasRemaining() && fileChannel.read(header, header.position()) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            int formatId = header.getInt(TransactionLogHeader.FORMAT_ID_HEADER);
+            long endPosition = header.getLong(TransactionLogHeader.CURRENT_POSITION_HEADER);
+            this.formatVersion = formatId == TransactionLogHeader.FORMAT_ID_V2 ? 2 : 1;
+            startPosition = Math.max(startPosition, TransactionLogHeader.HEADER_LENGTH);
+
+            if (chunkSize <= 0 || endPosition - startPosition < 2L * chunkSize || endPosition > fileChannel.size()) {
+                this.boundaries = null;
+                this.sequentialCursor = new TransactionLogCursor(file, startPosition, uniqueNames);
+            } else {
+                this.boundaries = findBoundaries(startPosition, endPosition, chunkSize);
+                if (log.isDebugEnabled()) {
+                    log.debug("reading {} in {} chunk(s) of about {} bytes", file, boundaries.length - 1, chunkSize);
+                }
+                submitChunks();
+            }
+        } catch (IOException | RuntimeException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Fetch the next TransactionLogRecord from log.
+     *
+     * @return the TransactionLogRecord or null if the end of the log file has been reached
+     * @throws IOException if an I/O error occurs.
+     */
+    TransactionLogRecord readLog() throws IOException {
+        while (true) {
+            if (sequentialCursor != null) {
+                return sequentialCursor.readLog(skipCrcCheck);
+            }
+
+            if (currentChunk != null) {
+                if (currentRecord < currentChunk.records.size()) {
+                    return resolve(currentChunk, currentRecord++);
+                }
+                List<String> chunkUniqueNames = currentChunk.uniqueNames;
+                for (int id = 0; id < chunkUniqueNames.size(); id++) {
+                    if (chunkUniqueNames.get(id) != null) {
+                        uniqueNames.put(id, chunkUniqueNames.get(id));
+                    }
+                }
+                currentChunk = null;
+            }
+
+            Future<Chunk> pendingChunk = pendingChunks.poll();
+            if (pendingChunk == null) {
+                return null;
+            }
+            Chunk chunk = await(pendingChunk);
+            if (!chunk.complete) {
+                // the boundary could not be trusted or the chunk is corrupted, let a sequential read report it
+                if (log.isDebugEnabled()) {
+                    log.debug("cannot read chunk starting at {} of {} in parallel, reading the rest of it sequentially", chunk.startPosition, file);
+                }
+                cancelPendingChunks();
+                sequentialCursor = new TransactionLogCursor(file, chunk.startPosition, uniqueNames);
+                continue;
+            }
+            submitChunks();
+            currentChunk = chunk;
+            currentRecord = 0;
+        }
+    }
+
+    /**
+     * Close the scanner and the underlying file.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException {
+        cancelPendingChunks();
+        try {
+            if (sequentialCursor != null) {
+                sequentialCursor.close();
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Find the chunk boundaries: the first record boundary following each multiple of the chunk size.
+     */
+    private long[] findBoundaries(long startPosition, long endPosition, int chunkSize) throws IOException {
+        List<Long> found = new ArrayList<>();
+        found.add(startPosition);
+        ByteBuffer window = ByteBuffer.allocate(MAX_BOUNDARY_SEARCH);
+        for (long position = startPosition + chunkSize; position < endPosition - chunkSize / 2; position += chunkSize) {
+            if (position <= found.get(found.size() - 1)) {
+                continue;
+            }
+            window.clear();
+            window.limit((int) Math.min(window.capacity(), endPosition - position));
+            while (window.hasRemaining() && fileChannel.read(window, position + window.position()) >= 0) {
+                // read the whole window
+            }
+            window.flip();
+            for (int i = 0; i + 4 <= window.limit(); i++) {
+                if (window.getInt(i) == TransactionLogAppender.END_RECORD) {
+                    found.add(position + i + 4);
+                    break;
+                }
+            }
+        }
+        found.add(endPosition);
+
+        long[] result = new long[found.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = found.get(i);
+        }
+        return result;
+    }
+
+    private void submitChunks() {
+        while (pendingChunks.size() < maxPendingChunks && nextChunk < boundaries.length - 1) {
+            final long start = boundaries[nextChunk];
+            final long end = boundaries[nextChunk + 1];
+            nextChunk++;
+            pendingChunks.add(ForkJoinPool.commonPool().submit(() -> readChunk(start, end)));
+        }
+    }
+
+    private Chunk readChunk(long startPosition, long endPosition) throws IOException {
+        MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, startPosition, endPosition - startPosition);
+        TransactionLogCursor cursor = new TransactionLogCursor(buffer, startPosition, formatVersion);
+        Chunk chunk = new Chunk(startPosition);
+        try {
+            while (true) {
+                TransactionLogRecord tlog = cursor.readLog(skipCrcCheck);
+                if (tlog == null) {
+                    break;
+                }
+                chunk.records.add(tlog);
+                List<Integer> unresolved = cursor.getUnresolvedReferences();
+                chunk.unresolvedReferences.add(unresolved.isEmpty() ? null : new ArrayList<>(unresolved));
+            }
+        } catch (CorruptedTransactionLogException | RuntimeException ex) {
+            return chunk;
+        }
+        chunk.uniqueNames = cursor.getUniqueNames();
+        chunk.complete = true;
+        return chunk;
+    }
+
+    private TransactionLogRecord resolve(Chunk chunk, int index) throws CorruptedTransactionLogException {
+        TransactionLogRecord tlog = chunk.records.get(index);
+        List<Integer> unresolved = chunk.unresolvedReferences.get(index);
+        if (unresolved == null) {
+            return tlog;
+        }
+
+        Set<String> names = new HashSet<>(tlog.getUniqueNames());
+        for (Integer id : unresolved) {
+            String uniqueName = uniqueNames.get(id);
+            if (uniqueName == null) {
+                throw new CorruptedTransactionLogException("corrupted log found in chunk starting at position " + chunk.startPosition
+                        + " (reference to undefined unique name " + id + ")");
+            }
+            names.add(uniqueName);
+        }
+        return new TransactionLogRecord(tlog.getStatus(), tlog.getRecordLength(), tlog.getTime(), tlog.getSequenceNumber(),
+                tlog.getCrc32(), tlog.isCrc32Correct(), tlog.getGtrid(), names);
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading transaction log", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("cannot read transaction log", ex.getCause());
+        }
+    }
+
+    private void cancelPendingChunks() {
+        for (Future<Chunk> future : pendingChunks) {
+            future.cancel(false);
+        }
+        pendingChunks.clear();
+        nextChunk = boundaries == null ? 0 : boundaries.length - 1;
+    }
+
+    private static final class Chunk {
+        private final long startPosition;
+        private final List<TransactionLogRecord> records = new ArrayList<>();
+        private final List<List<Integer>> unresolvedReferences = new ArrayList<>();
+        private List<String> uniqueNames = Collections.emptyList();
+        private boolean complete;
+
+        private Chunk(long startPosition) {
+            this.startPosition = startPosition;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Combines the records written concurrently to a log file into gathering writes.
+ * <p>The first thread asking for a write while none is in progress becomes the leader: it takes all the records queued
+ * so far and writes each run of records lying next to each other in the file with a single gathering write call.
+ * Threads asking for a write while another one is in progress queue their record and block until a leader wrote it,
+ * one of them becoming the next leader once the current write is over. Threads never wait for others to join a batch,
+ * records only get combined when they pile up behind an ongoing write.</p>
+ * <p>The leader moves the channel position to issue gathering writes, all other writes to the channel must be
+ * positional.</p>
+ *
+ * @author Ludovic Orban
+ */
+final class WriteBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBatcher.class);
+
+    private static final Comparator<Write> BY_POSITION = Comparator.comparingLong(write -> write.position);
+
+    private final FileChannel fc;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition writeDone = lock.newCondition();
+    private List<Write> queued = new ArrayList<>();
+    private boolean writing;
+
+    /**
+     * Create a write batcher.
+     *
+     * @param fc the channel of the log file.
+     */
+    WriteBatcher(FileChannel fc) {
+        this.fc = fc;
+    }
+
+    /**
+     * Write a record, either by this thread or by a concurrent one. Block until the record was written.
+     *
+     * @param record   the record, between the buffer's position and limit. The buffer must not be modified until this
+     *                 method returns.
+     * @param position the file position at which the record must be written.
+     * @throws IOException if the write of the record failed.
+     */
+    void write(ByteBuffer record, long position) throws IOException {
+        Write write = new Write(record, position);
+
+        lock.lock();
+        try {
+            queued.add(write);
+            while (!write.done) {
+                if (writing) {
+                    writeDone.awaitUninterruptibly();
+                    continue;
+                }
+
+                lead();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (write.failure != null) {
+            throw new IOException("cannot write log at position " + position, write.failure);
+        }
+    }
+
+    /**
+     * Write all queued records on behalf of their threads. Must be called with the lock held.
+     */
+    private void lead() {
+        writing = true;
+        List<Write> batch = queued;
+        queued = new ArrayList<>();
+
+        Exception failure = null;
+        lock.unlock();
+        try {
+            writeBatch(batch);
+        } catch (IOException | RuntimeException ex) {
+            failure = ex;
+        } finally {
+            lock.lock();
+            for (Write write : batch) {
+                write.failure = failure;
+                write.done = true;
+            }
+            writing = false;
+            writeDone.signalAll();
+        }
+    }
+
+    private void writeBatch(List<Write> batch) throws IOException {
+        batch.sort(BY_POSITION);
+
+        int calls = 0;
+        int start = 0;
+        while (start < batch.size()) {
+            int end = start + 1;
+            while (end < batch.size() && batch.get(end - 1).position + batch.get(end - 1).length == batch.get(end).position) {
+                end++;
+            }
+
+            if (end - start == 1) {
+                Write write = batch.get(start);
+                ByteBuffer record = write.record;
+                int offset = record.position();
+                while (record.hasRemaining()) {
+                    fc.write(record, write.position + record.position() - offset);
+                }
+            } else {
+                ByteBuffer[] records = new ByteBuffer[end - start];
+                for (int i = 0; i < records.length; i++) {
+                    records[i] = batch.get(start + i).record;
+                }
+                fc.position(batch.get(start).position);
+                int offset = 0;
+                while (offset < records.length) {
+                    fc.write(records, offset, records.length - offset);
+                    while (offset < records.length && !records[offset].hasRemaining()) {
+                        offset++;
+                    }
+                }
+            }
+            calls++;
+            start = end;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("wrote {} record(s) with {} write call(s)", batch.size(), calls);
+        }
+    }
+
+    private static final class Write {
+        private final ByteBuffer record;
+        private final long position;
+        private final int length;
+        private boolean done;
+        private Exception failure;
+
+        private Write(ByteBuffer record, long position) {
+            this.record = record;
+            this.position = position;
+            this.length = record.remaining();
+        }
+    }
+
+}
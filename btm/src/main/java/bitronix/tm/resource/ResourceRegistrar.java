@@ -28,7 +28,9 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
@@ -53,6 +55,21 @@ public final class ResourceRegistrar {
 
     private static final Set<ProducerHolder> resources = new CopyOnWriteArraySet<>();
 
+    private static final Map<String, byte[]> encodedUniqueNames = new ConcurrentHashMap<>();
+
+    /**
+     * Get the unique name of a registered {@link XAResourceProducer} encoded with {@link #UNIQUE_NAME_CHARSET}.
+     * The encoding is done once when the producer gets registered so that the transaction journal does not have to
+     * encode unique names each time it writes a record.
+     *
+     * @param uniqueName the name of the recoverable resource producer.
+     * @return the encoded unique name or null if there was no producer registered under that name. The returned array
+     * must not be modified.
+     */
+    public static byte[] getEncodedUniqueName(final String uniqueName) {
+        return uniqueName == null ? null : encodedUniqueNames.get(uniqueName);
+    }
+
     /**
      * Get a registered {@link XAResourceProducer}.
      *
@@ -103,6 +120,7 @@ public final class ResourceRegistrar {
             final ProducerHolder holder = alreadyRunning ? new InitializableProducerHolder(producer) : new ProducerHolder(producer);
 
             if (resources.add(holder)) {
+                encodedUniqueNames.put(holder.getUniqueName(), holder.encodedUniqueName);
                 if (holder instanceof InitializableProducerHolder) {
                     boolean recovered = false;
                     try {
@@ -115,6 +133,7 @@ public final class ResourceRegistrar {
                     } finally {
                         if (!recovered) {
                             resources.remove(holder);
+                            encodedUniqueNames.remove(holder.getUniqueName());
                         }
                     }
                 }
@@ -135,7 +154,9 @@ public final class ResourceRegistrar {
     public static void unregister(XAResourceProducer producer) {
         final ProducerHolder holder = new ProducerHolder(producer);
 
-        if (!resources.remove(holder)) {
+        if (resources.remove(holder)) {
+            encodedUniqueNames.remove(holder.getUniqueName());
+        } else {
             if (log.isDebugEnabled()) {
                 log.debug("resource with uniqueName '{}' has not been registered", holder.getUniqueName());
             }
@@ -181,6 +202,7 @@ public final class ResourceRegistrar {
     private static class ProducerHolder {
 
         private final XAResourceProducer producer;
+        private final byte[] encodedUniqueName;
 
         private ProducerHolder(XAResourceProducer producer) {
             if (producer == null) {
@@ -192,7 +214,8 @@ public final class ResourceRegistrar {
                 throw new IllegalArgumentException("The given XAResourceProducer '" + producer + "' does not specify a uniqueName.");
             }
 
-            final String transcodedUniqueName = new String(uniqueName.getBytes(UNIQUE_NAME_CHARSET), UNIQUE_NAME_CHARSET);
+            final byte[] encodedUniqueName = uniqueName.getBytes(UNIQUE_NAME_CHARSET);
+            final String transcodedUniqueName = new String(encodedUniqueName, UNIQUE_NAME_CHARSET);
             if (!transcodedUniqueName.equals(uniqueName)) {
                 throw new IllegalArgumentException("The given XAResourceProducer's uniqueName '" + uniqueName + "' is not compatible with the charset " +
                         "'US-ASCII' (transcoding results in '" + transcodedUniqueName + "'). " + System.getProperty("line.separator") +
@@ -200,6 +223,7 @@ public final class ResourceRegistrar {
             }
 
             this.producer = producer;
+            this.encodedUniqueName = encodedUniqueName;
         }
 
         boolean isInitialized() {
@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -39,6 +40,7 @@ public abstract class AbstractXAResourceHolder<T extends XAResourceHolder<T>> ex
 
     private final Map<Uid, Map<Uid, XAResourceHolderState>> xaResourceHolderStates = new HashMap<>();
     private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private volatile CompletableFuture<Void> inFlightCall;
 
     // This method is only used by tests.  It is (and always was) potentially thread-unsafe depending on what callers do with the returned map.
     protected Map<Uid, XAResourceHolderState> getXAResourceHolderStatesForGtrid(Uid gtrid) {
@@ -178,6 +180,16 @@ public abstract class AbstractXAResourceHolder<T extends XAResourceHolder<T>> ex
         }
     }
 
+    @Override
+    public void setInFlightCall(CompletableFuture<Void> inFlightCall) {
+        this.inFlightCall = inFlightCall;
+    }
+
+    @Override
+    public CompletableFuture<Void> getInFlightCall() {
+        return inFlightCall;
+    }
+
     /**
      * If this method returns false, then local transaction calls like Connection.commit() can be made.
      *
@@ -43,6 +43,9 @@ public abstract class ResourceBean implements Serializable {
     private volatile int acquisitionInterval = 1;
     private volatile boolean allowLocalTransactions = false;
     private volatile int twoPcOrderingPosition = 1;
+    private volatile int twoPcPrepareTimeout = 0;
+    private volatile int twoPcCommitTimeout = 0;
+    private volatile int twoPcRollbackTimeout = 0;
     private volatile boolean applyTransactionTimeout = false;
     private volatile boolean shareTransactionConnections = false;
     private volatile boolean disabled = false;
@@ -308,6 +311,63 @@ public abstract class ResourceBean implements Serializable {
         this.twoPcOrderingPosition = twoPcOrderingPosition;
     }
 
+    /**
+     * @return the amount of seconds the 2PC engine waits for this resource to prepare, 0 means forever.
+     */
+    public int getTwoPcPrepareTimeout() {
+        return twoPcPrepareTimeout;
+    }
+
+    /**
+     * Set the amount of seconds the 2PC engine waits for this resource to prepare. When it takes longer, the resource
+     * is considered failed and the transaction gets rolled back. This only works when 2PC is asynchronous.
+     * <p>The prepare call cannot be cancelled and keeps running after the deadline: the transaction is rolled back
+     * without sending rollback to this resource, which would run concurrently with the prepare on the same connection,
+     * and its late vote is ignored. If the prepare eventually succeeds, the branch stays in-doubt and holds its locks
+     * until the recoverer rolls it back on its next run.</p>
+     *
+     * @param twoPcPrepareTimeout the amount of seconds to wait for prepare, 0 to wait forever.
+     */
+    public void setTwoPcPrepareTimeout(int twoPcPrepareTimeout) {
+        this.twoPcPrepareTimeout = twoPcPrepareTimeout;
+    }
+
+    /**
+     * @return the amount of seconds the 2PC engine waits for this resource to commit, 0 means forever.
+     */
+    public int getTwoPcCommitTimeout() {
+        return twoPcCommitTimeout;
+    }
+
+    /**
+     * Set the amount of seconds the 2PC engine waits for this resource to commit. When it takes longer, the resource
+     * is considered failed and is left to the recoverer to commit. This only works when 2PC is asynchronous and
+     * does not apply to one phase commit, which outcome would then be unknown.
+     *
+     * @param twoPcCommitTimeout the amount of seconds to wait for commit, 0 to wait forever.
+     */
+    public void setTwoPcCommitTimeout(int twoPcCommitTimeout) {
+        this.twoPcCommitTimeout = twoPcCommitTimeout;
+    }
+
+    /**
+     * @return the amount of seconds the 2PC engine waits for this resource to roll back, 0 means forever.
+     */
+    public int getTwoPcRollbackTimeout() {
+        return twoPcRollbackTimeout;
+    }
+
+    /**
+     * Set the amount of seconds the 2PC engine waits for this resource to roll back. When it takes longer, the
+     * resource is considered failed and is left to the recoverer to roll back. This only works when 2PC is
+     * asynchronous.
+     *
+     * @param twoPcRollbackTimeout the amount of seconds to wait for rollback, 0 to wait forever.
+     */
+    public void setTwoPcRollbackTimeout(int twoPcRollbackTimeout) {
+        this.twoPcRollbackTimeout = twoPcRollbackTimeout;
+    }
+
     /**
      * @return true if the transaction-timeout should be set on the XAResource.
      */
@@ -34,6 +34,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -66,6 +67,7 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
     private final BlockingDeque<T> availablePool = new LinkedBlockingDeque<>();
     private final Queue<T> accessiblePool = new LinkedList<>();
     private final Queue<T> inaccessiblePool = new LinkedList<>();
+    private final Queue<T> inFlightPool = new LinkedList<>();
 
     private final AtomicInteger poolSize = new AtomicInteger();
 
@@ -138,6 +140,7 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
                 availablePool.clear();
                 accessiblePool.clear();
                 inaccessiblePool.clear();
+                inFlightPool.clear();
                 failed.set(false);
             } finally {
                 stateTransitionLock.writeLock().unlock();
@@ -253,8 +256,9 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
         try {
             switch (currentState) {
                 case IN_POOL:
-                    // no-op.  calling availablePool.remove(source) here is reduncant because it was
+                    // calling availablePool.remove(source) here is reduncant because it was
                     // already removed when availablePool.poll() was called.
+                    inFlightPool.remove(source);
                     break;
                 case ACCESSIBLE:
                     if (log.isDebugEnabled()) {
@@ -282,10 +286,18 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
         try {
             switch (newState) {
                 case IN_POOL -> {
-                    if (log.isDebugEnabled()) {
-                        log.debug("added " + source + " to the available pool");
+                    CompletableFuture<Void> inFlightCall = getInFlightCall(source);
+                    if (inFlightCall != null) {
+                        // a late 2PC call is still running on the XAResource, reusing it would overlap another branch
+                        log.warn("keeping " + source + " out of the available pool until its in-flight XA call finished");
+                        inFlightPool.add(source);
+                        inFlightCall.whenComplete((result, failure) -> inFlightCallFinished(source));
+                    } else {
+                        if (log.isDebugEnabled()) {
+                            log.debug("added " + source + " to the available pool");
+                        }
+                        availablePool.addFirst(source);
                     }
-                    availablePool.addFirst(source);
                 }
                 case ACCESSIBLE -> {
                     if (log.isDebugEnabled()) {
@@ -309,6 +321,31 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
         }
     }
 
+    private CompletableFuture<Void> getInFlightCall(T xaStatefulHolder) {
+        for (XAResourceHolder<? extends XAResourceHolder> xaResourceHolder : xaStatefulHolder.getXAResourceHolders()) {
+            CompletableFuture<Void> inFlightCall = xaResourceHolder.getInFlightCall();
+            if (inFlightCall != null && !inFlightCall.isDone()) {
+                return inFlightCall;
+            }
+        }
+        return null;
+    }
+
+    private void inFlightCallFinished(T xaStatefulHolder) {
+        stateTransitionLock.writeLock().lock();
+        try {
+            // the holder may have been closed with the pool in the meantime
+            if (inFlightPool.remove(xaStatefulHolder)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("in-flight XA call finished, added " + xaStatefulHolder + " to the available pool");
+                }
+                availablePool.addFirst(xaStatefulHolder);
+            }
+        } finally {
+            stateTransitionLock.writeLock().unlock();
+        }
+    }
+
     /* ------------------------------------------------------------------------
      * Methods to obtain a connection from one of the internal pools.
      * ------------------------------------------------------------------------*/
@@ -679,6 +716,7 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
             holders.addAll(availablePool);
             holders.addAll(accessiblePool);
             holders.addAll(inaccessiblePool);
+            holders.addAll(inFlightPool);
             return holders;
         } finally {
             stateTransitionLock.readLock().unlock();
@@ -20,6 +20,7 @@ import bitronix.tm.internal.XAResourceHolderState;
 import bitronix.tm.utils.Uid;
 
 import javax.transaction.xa.XAResource;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * {@link XAResource} wrappers must implement this interface. It defines a way to get access to the transactional
@@ -101,4 +102,20 @@ public interface XAResourceHolder<T extends XAResourceHolder<T>> extends XAState
      */
     ResourceBean getResourceBean();
 
+    /**
+     * Tell that an XA call is still running on this {@link XAResourceHolder}'s {@link XAResource} even though the
+     * transaction it was made for completed, because the 2PC engine stopped waiting for it. The holder must not be
+     * reused before that call finished.
+     *
+     * @param inFlightCall a future completed once the call finished.
+     */
+    void setInFlightCall(CompletableFuture<Void> inFlightCall);
+
+    /**
+     * Get the XA call still running on this {@link XAResourceHolder}'s {@link XAResource}.
+     *
+     * @return a future completed once the call finished, or null if no call ever got left running.
+     */
+    CompletableFuture<Void> getInFlightCall();
+
 }
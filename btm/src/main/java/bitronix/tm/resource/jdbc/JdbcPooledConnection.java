@@ -15,6 +15,7 @@
  */
 package bitronix.tm.resource.jdbc;
 
+import bitronix.tm.BitronixTransaction;
 import bitronix.tm.internal.BitronixRollbackSystemException;
 import bitronix.tm.internal.BitronixSystemException;
 import bitronix.tm.resource.common.*;
@@ -417,6 +418,29 @@ public class JdbcPooledConnection extends AbstractXAResourceHolder<JdbcPooledCon
         uncachedStatements.remove(stmt);
     }
 
+    /**
+     * Record a statement execution on the branches of the current transaction still active on this connection, when
+     * {@link PoolingDataSource#isDetectReadOnlyBranches()} is enabled.
+     *
+     * @param write true if the statement may have modified data.
+     */
+    public void trackStatementExecution(boolean write) {
+        if (!poolingDataSource.isDetectReadOnlyBranches()) {
+            return;
+        }
+        BitronixTransaction currentTransaction = TransactionContextHelper.currentTransaction();
+        if (currentTransaction == null) {
+            return;
+        }
+
+        acceptVisitorForXAResourceHolderStates(currentTransaction.getResourceManager().getGtrid(), xaResourceHolderState -> {
+            if (xaResourceHolderState.isStarted() && !xaResourceHolderState.isEnded()) {
+                xaResourceHolderState.trackExecution(write);
+            }
+            return true; // continue visitation
+        });
+    }
+
     @Override
     public String toString() {
         return "a JdbcPooledConnection from datasource " + poolingDataSource.getUniqueName() + " in state " + getState() + " with usage count " + usageCount + " wrapping " + xaConnection;
@@ -68,6 +68,7 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
     private volatile String isolationLevel;
     private volatile String cursorHoldability;
     private volatile String localAutoCommit;
+    private volatile boolean detectReadOnlyBranches;
     private volatile String jmxName;
     private final List<ConnectionCustomizer> connectionCustomizers = new CopyOnWriteArrayList<>();
 
@@ -269,6 +270,31 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
         this.localAutoCommit = localAutoCommit;
     }
 
+    /**
+     * @return true if the statements executed in global transactions are tracked to complete the branches which did not
+     * write without preparing them.
+     */
+    public boolean isDetectReadOnlyBranches() {
+        return detectReadOnlyBranches;
+    }
+
+    /**
+     * Track the statements executed in global transactions to detect the branches which did not write. Those are
+     * completed without being prepared, which also allows the 1PC optimization when a single branch of the transaction
+     * wrote. Writes executed by statements not created through the connection handles, like unwrapped ones, are not
+     * seen so this must only be enabled when none are.
+     * <p>A branch which only ran {@code executeQuery()} calls is considered read-only, even when those queries have side
+     * effects like a {@code SELECT} calling a function which writes, a sequence's {@code nextval} or an
+     * {@code UPDATE ... RETURNING} statement. Such a branch is committed before the others got prepared and loses the
+     * 2PC guarantee: if a writing branch then fails, its changes are kept while the others are rolled back. This is why
+     * the detection is disabled by default.</p>
+     *
+     * @param detectReadOnlyBranches true if read-only branches should be detected.
+     */
+    public void setDetectReadOnlyBranches(boolean detectReadOnlyBranches) {
+        this.detectReadOnlyBranches = detectReadOnlyBranches;
+    }
+
     public void addConnectionCustomizer(ConnectionCustomizer connectionCustomizer) {
         connectionCustomizers.add(connectionCustomizer);
     }
@@ -57,14 +57,105 @@ public class CallableStatementJavaProxy extends JavaProxyBase<CallableStatement>
         delegate.close();
     }
 
+    /*
+     * A stored procedure can write whatever it is called with, so every execution is tracked as a write.
+     */
+
     public ResultSet executeQuery() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
         return JdbcProxyFactory.INSTANCE.getProxyResultSet(this.getProxy(), delegate.executeQuery());
     }
 
     public ResultSet executeQuery(String sql) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
         return JdbcProxyFactory.INSTANCE.getProxyResultSet(this.getProxy(), delegate.executeQuery(sql));
     }
 
+    public int executeUpdate() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate();
+    }
+
+    public int executeUpdate(String sql) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql);
+    }
+
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql, autoGeneratedKeys);
+    }
+
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql, columnIndexes);
+    }
+
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql, columnNames);
+    }
+
+    public long executeLargeUpdate() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate();
+    }
+
+    public long executeLargeUpdate(String sql) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql);
+    }
+
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql, autoGeneratedKeys);
+    }
+
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql, columnIndexes);
+    }
+
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql, columnNames);
+    }
+
+    public boolean execute() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.execute();
+    }
+
+    public boolean execute(String sql) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.execute(sql);
+    }
+
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.execute(sql, autoGeneratedKeys);
+    }
+
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.execute(sql, columnIndexes);
+    }
+
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.execute(sql, columnNames);
+    }
+
+    public int[] executeBatch() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeBatch();
+    }
+
+    public long[] executeLargeBatch() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeBatch();
+    }
+
     public ResultSet getGeneratedKeys() throws SQLException {
         return JdbcProxyFactory.INSTANCE.getProxyResultSet(this.getProxy(), delegate.getGeneratedKeys());
     }
@@ -98,6 +98,7 @@ public class PreparedStatementJavaProxy extends JavaProxyBase<PreparedStatement>
     }
 
     public ResultSet executeQuery() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(false);
         ResultSet resultSet = delegate.executeQuery();
         if (resultSet == null) {
             return null;
@@ -106,6 +107,7 @@ public class PreparedStatementJavaProxy extends JavaProxyBase<PreparedStatement>
     }
 
     public ResultSet executeQuery(String sql) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(false);
         ResultSet resultSet = delegate.executeQuery(sql);
         if (resultSet == null) {
             return null;
@@ -113,6 +115,128 @@ public class PreparedStatementJavaProxy extends JavaProxyBase<PreparedStatement>
         return JdbcProxyFactory.INSTANCE.getProxyResultSet(this.getProxy(), resultSet);
     }
 
+    public int executeUpdate() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate();
+    }
+
+    public long executeLargeUpdate() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate();
+    }
+
+    public boolean execute() throws SQLException {
+        boolean resultSet = false;
+        try {
+            resultSet = delegate.execute();
+            return resultSet;
+        } finally {
+            // anything but a result set, including a failure, may have written
+            jdbcPooledConnection.trackStatementExecution(!resultSet);
+        }
+    }
+
+    public int executeUpdate(String sql) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql);
+    }
+
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql, autoGeneratedKeys);
+    }
+
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql, columnIndexes);
+    }
+
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeUpdate(sql, columnNames);
+    }
+
+    public long executeLargeUpdate(String sql) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql);
+    }
+
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql, autoGeneratedKeys);
+    }
+
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql, columnIndexes);
+    }
+
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeUpdate(sql, columnNames);
+    }
+
+    public int[] executeBatch() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeBatch();
+    }
+
+    public long[] executeLargeBatch() throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.executeLargeBatch();
+    }
+
+    public boolean execute(String sql) throws SQLException {
+        boolean resultSet = false;
+        try {
+            resultSet = delegate.execute(sql);
+            return resultSet;
+        } finally {
+            jdbcPooledConnection.trackStatementExecution(!resultSet);
+        }
+    }
+
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        boolean resultSet = false;
+        try {
+            resultSet = delegate.execute(sql, autoGeneratedKeys);
+            return resultSet;
+        } finally {
+            jdbcPooledConnection.trackStatementExecution(!resultSet);
+        }
+    }
+
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        boolean resultSet = false;
+        try {
+            resultSet = delegate.execute(sql, columnIndexes);
+            return resultSet;
+        } finally {
+            jdbcPooledConnection.trackStatementExecution(!resultSet);
+        }
+    }
+
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        boolean resultSet = false;
+        try {
+            resultSet = delegate.execute(sql, columnNames);
+            return resultSet;
+        } finally {
+            jdbcPooledConnection.trackStatementExecution(!resultSet);
+        }
+    }
+
+    public boolean getMoreResults() throws SQLException {
+        // the next results may be update counts
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.getMoreResults();
+    }
+
+    public boolean getMoreResults(int current) throws SQLException {
+        jdbcPooledConnection.trackStatementExecution(true);
+        return delegate.getMoreResults(current);
+    }
+
     public ResultSet getGeneratedKeys() throws SQLException {
         ResultSet generatedKeys = delegate.getGeneratedKeys();
         if (generatedKeys == null) {
@@ -16,6 +16,8 @@
 package bitronix.tm.twopc;
 
 import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.internal.BitronixRuntimeException;
+import bitronix.tm.internal.BitronixXAException;
 import bitronix.tm.internal.XAResourceHolderState;
 import bitronix.tm.internal.XAResourceManager;
 import bitronix.tm.twopc.executor.Executor;
@@ -27,6 +29,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.transaction.xa.XAException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Abstract phase execution engine.
@@ -47,7 +54,8 @@ public abstract class AbstractPhaseEngine {
      * Execute the phase. Resources receive the phase command in position order (reversed or not). If there is more than
      * once resource in a position, command is sent in enlistment order (again reversed or not).
      * If {@link bitronix.tm.Configuration#isAsynchronous2Pc()} is true, all commands in a given position are sent
-     * in parallel by using the detected {@link Executor} implementation.
+     * in parallel by using the detected {@link Executor} implementation. A job which does not finish within its
+     * {@link Job#getTimeout() timeout} is reported as failed while it keeps running, see {@link #timedOut(Job)}.
      *
      * @param resourceManager the {@link XAResourceManager} containing the enlisted resources to execute the phase on.
      * @param reverse         true if jobs should be executed in reverse position / enlistment order, false for natural position / enlistment order.
@@ -82,7 +90,7 @@ public abstract class AbstractPhaseEngine {
             if (log.isDebugEnabled()) {
                 log.debug("running {} job(s) for position '{}'", resources.size(), positionKey);
             }
-            JobsExecutionReport report = runJobsForPosition(resources);
+            JobsExecutionReport report = await(runJobsForPosition(resources));
             if (!report.getExceptions().isEmpty()) {
                 if (log.isDebugEnabled()) {
                     log.debug("{} error(s) happened during execution of position '{}'", report.getExceptions().size(), positionKey);
@@ -109,12 +117,15 @@ public abstract class AbstractPhaseEngine {
         }
     }
 
-    private JobsExecutionReport runJobsForPosition(List<XAResourceHolderState> resources) {
+    /**
+     * Submit the jobs of a position.
+     *
+     * @param resources the resources of the position.
+     * @return a future completed with the report of the jobs when all of them finished.
+     */
+    private CompletableFuture<JobsExecutionReport> runJobsForPosition(List<XAResourceHolderState> resources) {
         List<Job> jobs = new ArrayList<>();
-        List<Exception> exceptions = new ArrayList<>();
-        List<XAResourceHolderState> errorResources = new ArrayList<>();
 
-        // start threads
         for (XAResourceHolderState resource : resources) {
             if (!isParticipating(resource)) {
                 if (log.isDebugEnabled()) {
@@ -124,16 +135,41 @@ public abstract class AbstractPhaseEngine {
             }
 
             Job job = createJob(resource);
-            Object future = executor.submit(job);
+            CompletableFuture<Void> future = executor.submit(job);
+            if (job.getTimeout() > 0) {
+                // the job keeps running but the phase stops waiting for it
+                future = future.orTimeout(job.getTimeout(), TimeUnit.SECONDS);
+            }
             job.setFuture(future);
             jobs.add(job);
         }
 
-        // wait for threads to finish and check results
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[jobs.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = jobs.get(i).getFuture().handle((result, failure) -> null);
+        }
+        return CompletableFuture.allOf(futures).thenApply(ignored -> collectReport(jobs));
+    }
+
+    private JobsExecutionReport collectReport(List<Job> jobs) {
+        List<Exception> exceptions = new ArrayList<>();
+        List<XAResourceHolderState> errorResources = new ArrayList<>();
+
         for (Job job : jobs) {
-            Object future = job.getFuture();
-            while (!executor.isDone(future)) {
-                executor.waitFor(future, 1000L);
+            Throwable failure = getFailure(job.getFuture());
+            if (failure instanceof TimeoutException) {
+                XAResourceHolderState resource = job.getResource();
+                log.warn("resource '{}' did not complete {} of {} within {}s, considering it failed",
+                        resource.getUniqueName(), job.getPhase(), resource.getXid(), job.getTimeout());
+                exceptions.add(new BitronixXAException("resource '" + resource.getUniqueName() + "' did not complete " +
+                        job.getPhase() + " within " + job.getTimeout() + "s", XAException.XAER_RMFAIL, failure));
+                errorResources.add(resource);
+                // the connection must not be handed out again while the call is still running on it
+                resource.getXAResourceHolder().setInFlightCall(job.getCompletion());
+                timedOut(job);
+                continue;
+            } else if (failure != null) {
+                throw new CompletionException(failure);
             }
 
             XAException xaException = job.getXAException();
@@ -163,6 +199,26 @@ public abstract class AbstractPhaseEngine {
         return new JobsExecutionReport(exceptions, errorResources);
     }
 
+    private static Throwable getFailure(CompletableFuture<Void> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException ex) {
+            return ex.getCause();
+        }
+    }
+
+    private static JobsExecutionReport await(CompletableFuture<JobsExecutionReport> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BitronixRuntimeException("job interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new BitronixRuntimeException("job execution exception", ex.getCause());
+        }
+    }
+
     /**
      * Determine if a resource is participating in the phase or not. A participating resource gets
      * a job created to execute the phase's command on it.
@@ -180,6 +236,15 @@ public abstract class AbstractPhaseEngine {
      */
     protected abstract Job createJob(XAResourceHolderState xaResourceHolderState);
 
+    /**
+     * Called when the phase stopped waiting for a job which did not finish within its timeout. The job keeps running
+     * so no other command must be sent to its resource until it finished.
+     *
+     * @param job the job which timed out.
+     */
+    protected void timedOut(Job job) {
+    }
+
     /**
      * Log exceptions that happened during a phase failure.
      *
@@ -62,9 +62,26 @@ public final class Committer extends AbstractPhaseEngine {
      * @throws bitronix.tm.internal.BitronixRollbackException during 1PC when resource fails to commit
      */
     public void commit(BitronixTransaction transaction, List<XAResourceHolderState> interestedResources) throws HeuristicMixedException, HeuristicRollbackException, BitronixSystemException, BitronixRollbackException {
+        commit(transaction, interestedResources, transaction.getResourceManager().size() == 1);
+    }
+
+    /**
+     * Execute phase 2 commit.
+     *
+     * @param transaction         the transaction wanting to commit phase 2
+     * @param interestedResources a map of phase 1 prepared resources wanting to participate in phase 2 using Xids as keys
+     * @param onePhase            true if the single interested resource has not been prepared and must be committed in one phase
+     * @throws HeuristicRollbackException                     when all resources committed instead.
+     * @throws HeuristicMixedException                        when some resources committed and some rolled back.
+     * @throws bitronix.tm.internal.BitronixSystemException   when an internal error occured.
+     * @throws bitronix.tm.internal.BitronixRollbackException during 1PC when resource fails to commit
+     * @see Preparer#isOnePhase()
+     */
+    public void commit(BitronixTransaction transaction, List<XAResourceHolderState> interestedResources, boolean onePhase) throws HeuristicMixedException, HeuristicRollbackException, BitronixSystemException, BitronixRollbackException {
         XAResourceManager resourceManager = transaction.getResourceManager();
         if (resourceManager.size() == 0) {
-            transaction.setStatus(Status.STATUS_COMMITTING); //TODO: there is a disk force here that could be avoided
+            // not journaled when skipSingleResourceJournaling is enabled
+            transaction.setStatus(Status.STATUS_COMMITTING);
             transaction.setStatus(Status.STATUS_COMMITTED);
             if (log.isDebugEnabled()) {
                 log.debug("phase 2 commit succeeded with no interested resource");
@@ -76,7 +93,7 @@ public final class Committer extends AbstractPhaseEngine {
 
         this.interestedResources.clear();
         this.interestedResources.addAll(interestedResources);
-        this.onePhase = resourceManager.size() == 1;
+        this.onePhase = onePhase;
 
         try {
             executePhase(resourceManager, true);
@@ -178,6 +195,17 @@ public final class Committer extends AbstractPhaseEngine {
             super(resourceHolder);
         }
 
+        @Override
+        public Phase getPhase() {
+            return Phase.COMMIT;
+        }
+
+        @Override
+        public int getTimeout() {
+            // the outcome of a one phase commit is unknown until it returns
+            return onePhase ? 0 : getResource().getResourceBean().getTwoPcCommitTimeout();
+        }
+
         @Override
         public XAException getXAException() {
             return xaException;
@@ -46,6 +46,9 @@ public final class Preparer extends AbstractPhaseEngine {
 
     // this list has to be thread-safe as the PrepareJobs can be executed in parallel (when async 2PC is configured)
     private final List<XAResourceHolderState> preparedResources = Collections.synchronizedList(new ArrayList<>());
+    private final List<XAResourceHolderState> timedOutResources = Collections.synchronizedList(new ArrayList<>());
+    private volatile XAResourceHolderState onePhaseResource;
+    private volatile boolean onePhase;
 
     public Preparer(Executor executor) {
         super(executor);
@@ -62,8 +65,15 @@ public final class Preparer extends AbstractPhaseEngine {
      */
     public List<XAResourceHolderState> prepare(BitronixTransaction transaction) throws RollbackException, BitronixSystemException {
         XAResourceManager resourceManager = transaction.getResourceManager();
-        transaction.setStatus(Status.STATUS_PREPARING);
         preparedResources.clear();
+        timedOutResources.clear();
+        onePhaseResource = null;
+        onePhase = false;
+        if (resourceManager.size() > 1) {
+            // decided before changing the status so that the journal knows if two phases are needed
+            detectOnePhase(resourceManager);
+        }
+        transaction.setStatus(Status.STATUS_PREPARING);
 
         if (resourceManager.size() == 0) {
             if (TransactionManagerServices.getConfiguration().isWarnAboutZeroResourceTransaction()) {
@@ -97,6 +107,10 @@ public final class Preparer extends AbstractPhaseEngine {
             throwException("transaction failed during prepare of " + transaction, ex);
         }
 
+        if (onePhaseResource != null) {
+            preparedResources.add(onePhaseResource);
+        }
+
         transaction.setStatus(Status.STATUS_PREPARED);
         if (log.isDebugEnabled()) {
             log.debug("successfully prepared {} resource(s)", preparedResources.size());
@@ -104,6 +118,62 @@ public final class Preparer extends AbstractPhaseEngine {
         return Collections.unmodifiableList(preparedResources);
     }
 
+    /**
+     * Tell if the resource returned by the last call to {@link #prepare(BitronixTransaction)} was not prepared and
+     * must be committed in one phase. This happens when it is the only resource of the transaction which is not
+     * {@link XAResourceHolderState#isReadOnly() read-only}, or when all of them are read-only and no resource got
+     * returned at all.
+     *
+     * @return true if the transaction does not need two phases to commit.
+     */
+    public boolean isOnePhase() {
+        return onePhase;
+    }
+
+    /**
+     * Get the resources which did not answer prepare within their
+     * {@link bitronix.tm.resource.common.ResourceBean#getTwoPcPrepareTimeout() timeout} during the last call to
+     * {@link #prepare(BitronixTransaction)}. Their prepare call may still be running, so they must not be rolled back:
+     * the recoverer rolls them back once they show up in-doubt.
+     *
+     * @return the resources whose prepare timed out.
+     */
+    public List<XAResourceHolderState> getTimedOutResources() {
+        synchronized (timedOutResources) {
+            return new ArrayList<>(timedOutResources);
+        }
+    }
+
+    /**
+     * 1PC optimization when all other resources are known to be read-only.
+     */
+    private void detectOnePhase(XAResourceManager resourceManager) {
+        List<XAResourceHolderState> writingResources = collectWritingResources(resourceManager.getAllResources());
+        if (writingResources.size() == 1) {
+            onePhaseResource = writingResources.get(0);
+            onePhase = true;
+            if (log.isDebugEnabled()) {
+                log.debug("{} read-only resource(s) enlisted, no prepare needed (1PC) for {}", resourceManager.size() - 1, onePhaseResource);
+            }
+        } else if (writingResources.isEmpty()) {
+            // nothing is left to commit once the read-only resources got committed, no need to journal like for 2PC
+            onePhase = true;
+            if (log.isDebugEnabled()) {
+                log.debug("{} read-only resource(s) enlisted, no prepare needed", resourceManager.size());
+            }
+        }
+    }
+
+    private static List<XAResourceHolderState> collectWritingResources(List<XAResourceHolderState> resources) {
+        List<XAResourceHolderState> writingResources = new ArrayList<>();
+        for (XAResourceHolderState resource : resources) {
+            if (!resource.isReadOnly()) {
+                writingResources.add(resource);
+            }
+        }
+        return writingResources;
+    }
+
     private void throwException(String message, PhaseException phaseException) throws BitronixRollbackException {
         List<Exception> exceptions = phaseException.getExceptions();
         List<XAResourceHolderState> resources = phaseException.getResourceStates();
@@ -148,7 +218,12 @@ public final class Preparer extends AbstractPhaseEngine {
 
     @Override
     protected boolean isParticipating(XAResourceHolderState xaResourceHolderState) {
-        return true;
+        return xaResourceHolderState != onePhaseResource;
+    }
+
+    @Override
+    protected void timedOut(Job job) {
+        timedOutResources.add(job.getResource());
     }
 
 
@@ -157,6 +232,16 @@ public final class Preparer extends AbstractPhaseEngine {
             super(resourceHolder);
         }
 
+        @Override
+        public Phase getPhase() {
+            return Phase.PREPARE;
+        }
+
+        @Override
+        public int getTimeout() {
+            return getResource().getResourceBean().getTwoPcPrepareTimeout();
+        }
+
         @Override
         public void execute() {
             try {
@@ -165,7 +250,21 @@ public final class Preparer extends AbstractPhaseEngine {
                     log.debug("preparing resource {}", resourceHolder);
                 }
 
+                if (resourceHolder.isReadOnly()) {
+                    // nothing got written, committing is the same as voting XA_RDONLY
+                    resourceHolder.getXAResource().commit(resourceHolder.getXid(), true);
+                    if (log.isDebugEnabled()) {
+                        log.debug("committed read-only resource {} without preparing it", resourceHolder);
+                    }
+                    return;
+                }
+
                 int vote = resourceHolder.getXAResource().prepare(resourceHolder.getXid());
+                if (isTimedOut()) {
+                    // the transaction is rolling back without this resource, recovery takes care of it
+                    log.warn("ignoring late prepare vote {} of resource {}", Decoder.decodePrepareVote(vote), resourceHolder);
+                    return;
+                }
                 if (vote != XAResource.XA_RDONLY) {
                     preparedResources.add(resourceHolder);
                 }
@@ -158,6 +158,16 @@ public final class Rollbacker extends AbstractPhaseEngine {
             super(resourceHolder);
         }
 
+        @Override
+        public Phase getPhase() {
+            return Phase.ROLLBACK;
+        }
+
+        @Override
+        public int getTimeout() {
+            return getResource().getResourceBean().getTwoPcRollbackTimeout();
+        }
+
         @Override
         public void execute() {
             try {
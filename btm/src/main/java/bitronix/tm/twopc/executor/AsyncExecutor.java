@@ -15,7 +15,6 @@
  */
 package bitronix.tm.twopc.executor;
 
-import bitronix.tm.internal.BitronixRuntimeException;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.concurrent.*;
@@ -37,30 +36,8 @@ public class AsyncExecutor implements Executor {
     }
 
     @Override
-    public Object submit(Job job) {
-        return executorService.submit(job);
-    }
-
-    @Override
-    public void waitFor(Object future, long timeout) {
-        Future<?> f = (Future<?>) future;
-
-        try {
-            f.get(timeout, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException ex) {
-            throw new BitronixRuntimeException("job interrupted", ex);
-        } catch (ExecutionException ex) {
-            throw new BitronixRuntimeException("job execution exception", ex);
-        } catch (TimeoutException ex) {
-            // ok, just return
-        }
-    }
-
-    @Override
-    public boolean isDone(Object future) {
-        Future<?> f = (Future<?>) future;
-
-        return f.isDone();
+    public CompletableFuture<Void> submit(Job job) {
+        return CompletableFuture.runAsync(job, executorService);
     }
 
     @Override
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc.executor;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.utils.ManagementRegistrar;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This implementation executes submitted jobs using a <code>java.util.concurrent</code> thread pool with a bounded
+ * amount of threads and a bounded queue.
+ * <p>Jobs are queued once the core threads are all busy, extra threads up to the maximum are only started when the
+ * queue is full. When the pool is saturated the submitting thread executes the job itself, which slows down the
+ * transactions committing instead of failing them. Jobs with a {@link Job#getTimeout() timeout} are the exception: the
+ * submitting thread could not stop waiting for them, so they get executed by a new thread instead.</p>
+ *
+ * @author Ludovic Orban
+ */
+public class BoundedExecutor implements Executor, BoundedExecutorMBean {
+
+    private static final Logger log = LoggerFactory.getLogger(BoundedExecutor.class);
+
+    private final ThreadPoolExecutor executorService;
+    private final String jmxName;
+
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final LongAdder rejectedSubmissions = new LongAdder();
+    private final Map<Job.Phase, PhaseStatistics> statistics = new EnumMap<>(Job.Phase.class);
+    private final ThreadFactory overflowThreadFactory = new ThreadFactoryBuilder()
+            .setNameFormat("bounded-executor-overflow-%d").setDaemon(true).build();
+
+
+    public BoundedExecutor() {
+        for (Job.Phase phase : Job.Phase.values()) {
+            statistics.put(phase, new PhaseStatistics());
+        }
+        int coreThreads = Math.max(1, TransactionManagerServices.getConfiguration().getAsyncExecutorCoreThreads());
+        int maxThreads = TransactionManagerServices.getConfiguration().getAsyncExecutorMaxThreads();
+        if (maxThreads < coreThreads) {
+            log.warn("2PC executor max threads ({}) lower than core threads ({}), using {}", maxThreads, coreThreads, coreThreads);
+            maxThreads = coreThreads;
+        }
+        int queueSize = TransactionManagerServices.getConfiguration().getAsyncExecutorQueueSize();
+        BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+
+        ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("bounded-executor-pool-%d").build();
+        executorService = new ThreadPoolExecutor(coreThreads, maxThreads, 60L, TimeUnit.SECONDS, queue, namedThreadFactory, (r, executor) -> {
+            // the job must run even when the pool is shut down, otherwise its future never completes
+            rejectedSubmissions.increment();
+            if (((JobTask) r).job.getTimeout() > 0) {
+                overflowThreadFactory.newThread(r).start();
+            } else {
+                r.run();
+            }
+        });
+
+        String serverId = TransactionManagerServices.getConfiguration().getServerId();
+        if (serverId == null) {
+            serverId = "";
+        }
+        this.jmxName = "bitronix.tm:type=Executor,ServerId=" + ManagementRegistrar.makeValidName(serverId);
+        ManagementRegistrar.register(jmxName, this);
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(Job job) {
+        JobTask task = new JobTask(job);
+        executorService.execute(task);
+        return task.future;
+    }
+
+    @Override
+    public void shutdown() {
+        ManagementRegistrar.unregister(jmxName);
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return executorService.getPoolSize();
+    }
+
+    @Override
+    public int getActiveJobCount() {
+        return activeJobs.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executorService.getQueue().size();
+    }
+
+    @Override
+    public long getRejectedSubmissionCount() {
+        return rejectedSubmissions.sum();
+    }
+
+    @Override
+    public long getPrepareJobCount() {
+        return statistics.get(Job.Phase.PREPARE).getCount();
+    }
+
+    @Override
+    public long getPrepareJobAverageLatency() {
+        return statistics.get(Job.Phase.PREPARE).getAverageLatency();
+    }
+
+    @Override
+    public long getPrepareJobMaxLatency() {
+        return statistics.get(Job.Phase.PREPARE).getMaxLatency();
+    }
+
+    @Override
+    public long getCommitJobCount() {
+        return statistics.get(Job.Phase.COMMIT).getCount();
+    }
+
+    @Override
+    public long getCommitJobAverageLatency() {
+        return statistics.get(Job.Phase.COMMIT).getAverageLatency();
+    }
+
+    @Override
+    public long getCommitJobMaxLatency() {
+        return statistics.get(Job.Phase.COMMIT).getMaxLatency();
+    }
+
+    @Override
+    public long getRollbackJobCount() {
+        return statistics.get(Job.Phase.ROLLBACK).getCount();
+    }
+
+    @Override
+    public long getRollbackJobAverageLatency() {
+        return statistics.get(Job.Phase.ROLLBACK).getAverageLatency();
+    }
+
+    @Override
+    public long getRollbackJobMaxLatency() {
+        return statistics.get(Job.Phase.ROLLBACK).getMaxLatency();
+    }
+
+    private static final class PhaseStatistics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void executed(long elapsedNanos) {
+            count.increment();
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getAverageLatency() {
+            long count = this.count.sum();
+            return count == 0L ? 0L : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / count);
+        }
+
+        long getMaxLatency() {
+            return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+        }
+    }
+
+    /**
+     * Executes a job then completes its future, the rejection handler needs the job to decide where to run it.
+     */
+    private final class JobTask implements Runnable {
+        private final Job job;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final PhaseStatistics statistics;
+        private final long submitted = System.nanoTime();
+
+        private JobTask(Job job) {
+            this.job = job;
+            this.statistics = BoundedExecutor.this.statistics.get(job.getPhase());
+        }
+
+        @Override
+        public void run() {
+            activeJobs.incrementAndGet();
+            Throwable failure = null;
+            try {
+                job.run();
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                activeJobs.decrementAndGet();
+                if (statistics != null) {
+                    statistics.executed(System.nanoTime() - submitted);
+                }
+            }
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+
+}
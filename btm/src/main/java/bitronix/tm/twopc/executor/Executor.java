@@ -17,6 +17,8 @@ package bitronix.tm.twopc.executor;
 
 import bitronix.tm.utils.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Thread pool interface required by the two-phase commit logic.
  *
@@ -27,27 +29,11 @@ public interface Executor extends Service {
     /**
      * Submit a job to be executed by the thread pool.
      *
-     * @param job the {@link Runnable} to execute.
-     * @return an object used to monitor the execution of the submitted {@link Runnable}.
-     */
-    Object submit(Job job);
-
-    /**
-     * Wait for the job represented by the future to terminate. The call to this method will block until the job
-     * finished its execution or the specified timeout elapsed.
-     *
-     * @param future  the future representing the job as returned by {@link #submit}.
-     * @param timeout if the job did not finish during the specified timeout in milliseconds, this method returns anyway.
-     */
-    void waitFor(Object future, long timeout);
-
-    /**
-     * Check if the thread pool has terminated the execution of the job represented by a future.
-     *
-     * @param future the future representing the job as returned by {@link #submit}.
-     * @return true if the job is done, false otherwise.
+     * @param job the {@link Job} to execute.
+     * @return a future completed when the job finished its execution. Errors reported by the resource are kept by the
+     * job, the future only completes exceptionally when the job itself failed unexpectedly.
      */
-    boolean isDone(Object future);
+    CompletableFuture<Void> submit(Job job);
 
     /**
      * Shutdown the thead pool.
@@ -19,6 +19,10 @@ import bitronix.tm.TransactionManagerServices;
 import bitronix.tm.internal.XAResourceHolderState;
 
 import javax.transaction.xa.XAException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Abstract job definition executable by the 2PC thread pools.
@@ -26,9 +30,23 @@ import javax.transaction.xa.XAException;
  * @author Ludovic Orban
  */
 public abstract class Job implements Runnable {
+
+    /**
+     * The phase of the two-phase commit protocol a job executes.
+     */
+    public enum Phase {
+        PREPARE, COMMIT, ROLLBACK, OTHER;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
     private final XAResourceHolderState resourceHolder;
 
-    private volatile Object future;
+    private volatile CompletableFuture<Void> future;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
     protected volatile XAException xaException;
     protected volatile RuntimeException runtimeException;
 
@@ -48,14 +66,40 @@ public abstract class Job implements Runnable {
         return runtimeException;
     }
 
-    public void setFuture(Object future) {
+    public void setFuture(CompletableFuture<Void> future) {
         this.future = future;
     }
 
-    public Object getFuture() {
+    public CompletableFuture<Void> getFuture() {
         return future;
     }
 
+    /**
+     * @return a future completed once the job finished running, even when the 2PC engine stopped waiting for it.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Tell if the 2PC engine stopped waiting for this job because it did not finish within its
+     * {@link #getTimeout() timeout}. The job keeps running, its outcome is then ignored.
+     *
+     * @return true if the job timed out.
+     */
+    public boolean isTimedOut() {
+        CompletableFuture<Void> future = this.future;
+        if (future == null || !future.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            future.join();
+            return false;
+        } catch (CompletionException ex) {
+            return ex.getCause() instanceof TimeoutException;
+        }
+    }
+
     @Override
     public final void run() {
         String oldThreadName = null;
@@ -65,11 +109,30 @@ public abstract class Job implements Runnable {
                     resourceHolder.getXid().toString() +
                     " ]");
         }
-        execute();
-        if (oldThreadName != null) {
-            Thread.currentThread().setName(oldThreadName);
+        try {
+            execute();
+        } finally {
+            if (oldThreadName != null) {
+                Thread.currentThread().setName(oldThreadName);
+            }
+            completion.complete(null);
         }
     }
 
+    /**
+     * @return the phase the job executes, {@link Phase#OTHER} unless overridden.
+     */
+    public Phase getPhase() {
+        return Phase.OTHER;
+    }
+
+    /**
+     * @return the amount of seconds the 2PC engine waits for the job to finish before considering it failed, 0 means
+     * forever.
+     */
+    public int getTimeout() {
+        return 0;
+    }
+
     protected abstract void execute();
 }
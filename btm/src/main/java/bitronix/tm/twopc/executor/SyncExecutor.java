@@ -15,6 +15,8 @@
  */
 package bitronix.tm.twopc.executor;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This implementation executes submitted jobs synchronously.
  *
@@ -22,19 +24,12 @@ package bitronix.tm.twopc.executor;
  */
 public class SyncExecutor implements Executor {
 
-    @Override
-    public Object submit(Job job) {
-        job.run();
-        return new Object();
-    }
-
-    @Override
-    public void waitFor(Object future, long timeout) {
-    }
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
 
     @Override
-    public boolean isDone(Object future) {
-        return true;
+    public CompletableFuture<Void> submit(Job job) {
+        job.run();
+        return DONE;
     }
 
     @Override
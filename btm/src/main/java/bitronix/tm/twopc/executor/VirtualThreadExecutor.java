@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * This implementation executes each submitted job on its own virtual thread. Blocking XA calls only park their
+ * virtual thread so many transactions can commit concurrently without growing a pool of platform threads.
+ * <p>Virtual threads are looked up at runtime as the transaction manager still runs on JVMs not supporting them, in
+ * which case the jobs are executed by an {@link AsyncExecutor}.</p>
+ *
+ * @author Ludovic Orban
+ */
+public class VirtualThreadExecutor implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    private final ExecutorService executorService;
+    private final AsyncExecutor fallback;
+
+
+    public VirtualThreadExecutor() {
+        this(VirtualThreadExecutor::createVirtualThreadExecutorService);
+    }
+
+    /**
+     * @param virtualThreadExecutorServiceFactory creates the virtual thread executor service, returns null when virtual
+     *                                            threads are not supported.
+     */
+    VirtualThreadExecutor(Supplier<ExecutorService> virtualThreadExecutorServiceFactory) {
+        executorService = virtualThreadExecutorServiceFactory.get();
+        if (executorService != null) {
+            fallback = null;
+        } else {
+            log.warn("virtual threads are not supported by this JVM, executing 2PC on a cached thread pool");
+            fallback = new AsyncExecutor();
+        }
+    }
+
+    /**
+     * @return true if the jobs are executed on virtual threads, false if they are executed by an {@link AsyncExecutor}.
+     */
+    public boolean isVirtual() {
+        return fallback == null;
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(Job job) {
+        if (fallback != null) {
+            return fallback.submit(job);
+        }
+        return CompletableFuture.runAsync(job, executorService);
+    }
+
+    @Override
+    public void shutdown() {
+        if (fallback != null) {
+            fallback.shutdown();
+        } else {
+            executorService.shutdownNow();
+        }
+    }
+
+    static ExecutorService createVirtualThreadExecutorService() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return null;
+        } catch (InvocationTargetException ex) {
+            // virtual threads are a preview feature of this JVM which is not enabled
+            if (log.isDebugEnabled()) {
+                log.debug("cannot create virtual thread executor", ex.getCause());
+            }
+            return null;
+        }
+    }
+}
@@ -20,6 +20,7 @@ module bitronix.tm {
     requires java.management;
     requires java.naming;
     requires java.sql;
+    requires jdk.unsupported;
     requires jakarta.cdi;
     requires jakarta.servlet;
     requires jakarta.inject;
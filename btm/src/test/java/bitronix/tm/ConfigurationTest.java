@@ -95,16 +95,18 @@ public class ConfigurationTest {
 
     @Test
     public void testToString() {
-        final String expectation = "a Configuration with [allowMultipleLrc=false, asynchronous2Pc=false," +
-                " backgroundRecoveryInterval=PT1M, conservativeJournaling=false, currentNodeOnlyRecovery=true," +
-                " debugZeroResourceTransaction=false, defaultTransactionTimeout=PT1M, disableJmx=false," +
-                " exceptionAnalyzer=null, filterLogStatus=false," +
-                " forceBatchingEnabled=true, forcedWriteEnabled=true, gracefulShutdownInterval=PT10S, jdbcProxyFactoryClass=auto," +
+        final String expectation = "a Configuration with [allowMultipleLrc=false, asyncExecutor=cached, asyncExecutorCoreThreads=8," +
+                " asyncExecutorMaxThreads=64, asyncExecutorQueueSize=1024, asynchronous2Pc=false," +
+                " backgroundRecoveryInterval=PT1M, checkpointIntervalInKb=0, conservativeJournaling=false, currentNodeOnlyRecovery=true," +
+                " debugZeroResourceTransaction=false, defaultTransactionTimeout=PT1M, directIoEnabled=false, disableJmx=false," +
+                " exceptionAnalyzer=null, filterLogStatus=false, flushInterval=PT0S," +
+                " forceBatchMaxSize=64, forceBatchMaxWait=PT0S, forceBatchingEnabled=true, forcedWriteEnabled=true, gracefulShutdownInterval=PT10S, jdbcProxyFactoryClass=auto," +
                 " jndiTransactionSynchronizationRegistryName=java:comp/TransactionSynchronizationRegistry," +
-                " jndiUserTransactionName=java:comp/UserTransaction, journal=disk," +
-                " logPart1Filename=target/btm1.tlog, logPart2Filename=target/btm2.tlog, maxLogSizeInMb=2," +
-                " resourceConfigurationFilename=null, serverId=null, skipCorruptedLogs=false, synchronousJmxRegistration=false," +
-                " warnAboutZeroResourceTransaction=true]";
+                " jndiUserTransactionName=java:comp/UserTransaction, journal=disk, logFormatVersion=1," +
+                " logPart1Filename=target/btm1.tlog, logPart2Filename=target/btm2.tlog, maxLogSizeInMb=2, overflowThreshold=0, provisioning=zero, replicationTarget=null," +
+                " resourceConfigurationFilename=null, segmentCount=4, segmentDirectory=target/btm-segments, serverId=null," +
+                " shardCount=4, skipCorruptedLogs=false, skipSingleResourceJournaling=false, synchronousJmxRegistration=false," +
+                " warnAboutZeroResourceTransaction=true, writeBatchingEnabled=false]";
 
         assertEquals(expectation, new Configuration().toString());
     }
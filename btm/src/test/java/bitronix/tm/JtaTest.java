@@ -217,6 +217,24 @@ public class JtaTest {
         btm.commit();
     }
 
+    @Test
+    public void testSkipSingleResourceJournaling() throws Exception {
+        btm.shutdown(); // necessary to change the configuration
+        TransactionManagerServices.getConfiguration().setSkipSingleResourceJournaling(true);
+        btm = TransactionManagerServices.getTransactionManager();
+
+        btm.begin();
+        btm.commit();
+
+        assertEquals(0L, btm.getJournaledStatusChangeCount());
+        assertTrue(btm.getSkippedStatusChangeCount() >= 3, "ACTIVE, COMMITTING and COMMITTED must not be journaled");
+
+        // the counters belong to the transaction manager and start over with the next one
+        btm.shutdown();
+        assertEquals(0L, btm.getJournaledStatusChangeCount());
+        assertEquals(0L, btm.getSkippedStatusChangeCount());
+    }
+
     @Test
     public void testBeforeCompletionRuntimeExceptionRethrown() throws Exception {
         btm.begin();
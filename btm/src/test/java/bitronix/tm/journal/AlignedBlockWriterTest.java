@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * @author Ludovic Orban
+ */
+public class AlignedBlockWriterTest {
+
+    private final File file = new File("target/btm-direct-test.tlog");
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testDirectWritesAreReadableByCursor() throws Exception {
+        DiskJournal.createLogfile(file, 1, false);
+        TransactionLogAppender tla;
+        try {
+            tla = new TransactionLogAppender(file, file.length(), false, false, true);
+        } catch (IOException ex) {
+            assumeTrue(false, "direct I/O not supported: " + ex);
+            return;
+        }
+
+        // records of growing sizes land at unaligned positions and regularly straddle block boundaries, forcing
+        // after some of them makes later writes rewrite blocks already holding forced records
+        List<Uid> gtrids = new ArrayList<>();
+        List<Set<String>> names = new ArrayList<>();
+        try {
+            for (int i = 0; i < 500; i++) {
+                Uid gtrid = UidGenerator.generateUid();
+                Set<String> uniqueNames = new LinkedHashSet<>();
+                for (int j = 0; j <= i % 7; j++) {
+                    uniqueNames.add("resource-" + i + "-" + j);
+                }
+                ByteBuffer record = TransactionLogRecordEncoder.get().encode(tla, Status.STATUS_COMMITTING, gtrid, uniqueNames);
+                long position = tla.reserve(record.remaining());
+                assertTrue(position > 0, "log file too small for record " + i);
+                tla.writeLog(record, position, Status.STATUS_COMMITTING, gtrid, uniqueNames);
+                if (i % 3 == 0) {
+                    tla.force();
+                }
+                gtrids.add(gtrid);
+                names.add(uniqueNames);
+            }
+            tla.force();
+        } finally {
+            tla.close();
+        }
+
+        TransactionLogCursor cursor = new TransactionLogCursor(file);
+        try {
+            for (int i = 0; i < gtrids.size(); i++) {
+                TransactionLogRecord tlog = cursor.readLog();
+                assertNotNull(tlog, "missing record " + i);
+                assertEquals(Status.STATUS_COMMITTING, tlog.getStatus());
+                assertEquals(gtrids.get(i), tlog.getGtrid());
+                assertEquals(names.get(i), tlog.getUniqueNames());
+            }
+            assertNull(cursor.readLog());
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
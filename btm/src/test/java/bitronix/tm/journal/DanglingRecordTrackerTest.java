@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class DanglingRecordTrackerTest {
+
+    @Test
+    public void testAddRemove() throws Exception {
+        DanglingRecordTracker tracker = new DanglingRecordTracker();
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+
+        tracker.add(gtrid2, csvToSet("name1,name2"));
+        tracker.add(gtrid1, csvToSet("name2,name3"));
+        tracker.add(gtrid1, csvToSet("name4"));
+        tracker.remove(gtrid2, csvToSet("unknown"));
+        tracker.remove(gtrid1, csvToSet("name2"));
+
+        Map<Uid, Set<String>> snapshot = tracker.snapshot();
+        assertEquals(Arrays.asList(gtrid1, gtrid2), new ArrayList<>(snapshot.keySet()));
+        assertEquals(csvToSet("name3,name4"), snapshot.get(gtrid1));
+        assertEquals(csvToSet("name1,name2"), snapshot.get(gtrid2));
+
+        tracker.remove(gtrid2, csvToSet("name1,name2,name3"));
+        assertEquals(1, tracker.size());
+
+        tracker.clear();
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void testManyUniqueNames() throws Exception {
+        DanglingRecordTracker tracker = new DanglingRecordTracker();
+        Uid gtrid = UidGenerator.generateUid();
+
+        Set<String> uniqueNames = new TreeSet<>();
+        for (int i = 0; i < 200; i++) {
+            uniqueNames.add("name" + i);
+        }
+        tracker.add(gtrid, uniqueNames);
+        assertEquals(uniqueNames, tracker.snapshot().get(gtrid));
+
+        tracker.remove(gtrid, csvToSet("name0,name199"));
+        uniqueNames.removeAll(csvToSet("name0,name199"));
+        assertEquals(uniqueNames, tracker.snapshot().get(gtrid));
+
+        tracker.remove(gtrid, uniqueNames);
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final DanglingRecordTracker tracker = new DanglingRecordTracker();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Set<Uid> dangling = Collections.synchronizedSet(new HashSet<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int ndx = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    Set<String> uniqueNames = csvToSet(String.format("%d.name1,%d.name2,shared", ndx, ndx));
+                    for (int i = 1; i < 5000; i++) {
+                        Uid gtrid = UidGenerator.generateUid();
+                        tracker.add(gtrid, uniqueNames);
+                        if (i % 1000 == 0) {
+                            dangling.add(gtrid);
+                        } else {
+                            tracker.remove(gtrid, uniqueNames);
+                        }
+                    }
+                } catch (Exception ex) {
+                    failure.set(ex);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        Map<Uid, Set<String>> snapshot = tracker.snapshot();
+        assertEquals(dangling, snapshot.keySet());
+        int previous = Integer.MIN_VALUE;
+        for (Uid gtrid : snapshot.keySet()) {
+            assertTrue(gtrid.extractSequence() > previous);
+            previous = gtrid.extractSequence();
+        }
+    }
+
+    private static SortedSet<String> csvToSet(String s) {
+        String[] names = s.split(",");
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+}
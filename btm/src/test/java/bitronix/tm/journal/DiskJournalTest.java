@@ -24,9 +24,21 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 /**
  * @author Ludovic Orban
@@ -189,6 +201,31 @@ public class DiskJournalTest {
         assertTrue(tlr.isCrc32Correct());
     }
 
+    @Test
+    public void testEncodedRecord() throws Exception {
+        Uid gtrid = UidGenerator.generateUid();
+        TransactionLogRecord tlog = new TransactionLogRecord(Status.STATUS_COMMITTING, gtrid, csvToSet("name2,name1,name3"));
+
+        ByteBuffer record = TransactionLogRecordEncoder.get().encode(tlog);
+        assertEquals(tlog.calculateTotalRecordSize(), record.remaining());
+        assertEquals(Status.STATUS_COMMITTING, record.getInt());
+        assertEquals(tlog.getRecordLength(), record.getInt());
+        assertEquals(tlog.getHeaderLength(), record.getInt());
+        assertEquals(tlog.getTime(), record.getLong());
+        assertEquals(tlog.getSequenceNumber(), record.getInt());
+        assertEquals(tlog.getCrc32(), record.getInt());
+        assertEquals(gtrid.length(), record.get());
+        record.position(record.position() + gtrid.length());
+        assertEquals(3, record.getInt());
+        for (String name : tlog.getUniqueNames()) {
+            byte[] nameBytes = new byte[record.getShort()];
+            record.get(nameBytes);
+            assertEquals(name, new String(nameBytes, StandardCharsets.US_ASCII));
+        }
+        assertEquals(TransactionLogAppender.END_RECORD, record.getInt());
+        assertFalse(record.hasRemaining());
+    }
+
     @Test
     public void testRollover() throws Exception {
         TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
@@ -223,6 +260,204 @@ public class DiskJournalTest {
         journal.shutdown();
     }
 
+    @Test
+    public void testStatistics() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        // the fsync statistics are only updated when writes are forced
+        TransactionManagerServices.getConfiguration().setForcedWriteEnabled(true);
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+        assertEquals(0.0, journal.getFillPercentage());
+
+        Uid uncommitted = UidGenerator.generateUid();
+        journal.log(Status.STATUS_COMMITTING, uncommitted, csvToSet("name1"));
+        journal.force();
+        assertEquals(1, journal.getRecordsWritten());
+        assertEquals(1, journal.getFsyncCount());
+        assertTrue(journal.getFillPercentage() > 0.0);
+
+        // roll over several times
+        for (int i = 0; i < 30000; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+        }
+        journal.force();
+
+        assertEquals(60001, journal.getRecordsWritten());
+        assertTrue(journal.getBytesWritten() > 60001L * 16);
+        assertEquals(60001, Arrays.stream(journal.getLogLatencyHistogram()).sum());
+        assertEquals(2, Arrays.stream(journal.getForceLatencyHistogram()).sum());
+        assertEquals(2, journal.getFsyncCount());
+        long[] batchSizes = journal.getFsyncBatchSizeHistogram();
+        assertEquals(1, batchSizes[1]);
+        assertEquals(1, batchSizes[16]);
+        assertTrue(journal.getRolloverCount() >= 2);
+        // the uncommitted record, and sometimes the one of the transaction being logged, got copied on every rollover
+        assertTrue(journal.getRolloverDanglingRecords() >= journal.getRolloverCount());
+        assertTrue(journal.getLastRolloverDanglingRecords() >= 1);
+        assertTrue(journal.getFillPercentage() > 0.0 && journal.getFillPercentage() < 100.0);
+
+        journal.shutdown();
+        assertEquals(0.0, journal.getFillPercentage());
+        assertEquals(60001, journal.getRecordsWritten());
+    }
+
+    @Test
+    public void testProvisioning() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        File file1 = new File(TransactionManagerServices.getConfiguration().getLogPart1Filename());
+        File file2 = new File(TransactionManagerServices.getConfiguration().getLogPart2Filename());
+        try {
+            for (String provisioning : Arrays.asList(DiskJournal.SPARSE_PROVISIONING, DiskJournal.BACKGROUND_PROVISIONING)) {
+                file1.delete();
+                file2.delete();
+                TransactionManagerServices.getConfiguration().setProvisioning(provisioning);
+
+                DiskJournal journal = new DiskJournal();
+                journal.open();
+                assertEquals(TransactionLogHeader.HEADER_LENGTH + 1024 * 1024, file1.length());
+                assertEquals(file1.length(), file2.length());
+
+                Uid uncommitted = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, uncommitted, csvToSet("name1"));
+                // roll over several times
+                for (int i = 0; i < 30000; i++) {
+                    Uid gtrid = UidGenerator.generateUid();
+                    journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                    journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+                }
+                journal.close();
+
+                journal = new DiskJournal();
+                journal.open();
+                assertEquals(Collections.singleton(uncommitted), journal.collectDanglingRecords().keySet());
+                journal.shutdown();
+            }
+
+            TransactionManagerServices.getConfiguration().setProvisioning("preallocated");
+            file1.delete();
+            file2.delete();
+            try {
+                new DiskJournal().open();
+                fail("expected IOException");
+            } catch (IOException ex) {
+                assertEquals("unsupported log file provisioning 'preallocated', must be zero, sparse or background", ex.getMessage());
+            }
+        } finally {
+            TransactionManagerServices.getConfiguration().setProvisioning(DiskJournal.ZERO_PROVISIONING);
+        }
+    }
+
+    @Test
+    public void testLogFileTimestamps() throws Exception {
+        File file = new File("target/btm-test.tlog");
+        long previous = 0L;
+        for (int i = 0; i < 10; i++) {
+            DiskJournal.createLogfile(file, 1, false);
+            TransactionLogAppender tla = new TransactionLogAppender(file, file.length());
+            assertTrue(tla.getTimestamp() > previous);
+            previous = tla.getTimestamp();
+            tla.close();
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testOverflowStore() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        TransactionManagerServices.getConfiguration().setOverflowThreshold(10);
+        File overflowFile = OverflowStore.getFile(new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()));
+        try {
+            DiskJournal journal = new DiskJournal();
+            journal.open();
+
+            Set<Uid> uncommitted = new HashSet<>();
+            for (int i = 0; i < 50; i++) {
+                Uid gtrid = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                uncommitted.add(gtrid);
+            }
+            // roll over several times
+            for (int i = 0; i < 60000; i++) {
+                Uid gtrid = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            }
+            assertTrue(overflowFile.exists());
+            assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+            journal.close();
+
+            journal = new DiskJournal();
+            journal.open();
+            Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+            assertEquals(uncommitted, danglingRecords.keySet());
+            for (JournalRecord record : danglingRecords.values()) {
+                assertEquals(csvToSet("name1,name2"), record.getUniqueNames());
+            }
+
+            for (Uid gtrid : uncommitted) {
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1"));
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name2"));
+            }
+            assertEquals(0, journal.collectDanglingRecords().size());
+            journal.close();
+
+            journal = new DiskJournal();
+            journal.open();
+            assertEquals(0, journal.collectDanglingRecords().size());
+            journal.shutdown();
+        } finally {
+            TransactionManagerServices.getConfiguration().setOverflowThreshold(0);
+            overflowFile.delete();
+        }
+    }
+
+    @Test
+    public void testStreamRecords() throws Exception {
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+        journal.log(Status.STATUS_ACTIVE, gtrid1, csvToSet("name1"));
+        journal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+        journal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name2,name3"));
+        journal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1,name2"));
+        Thread.sleep(5);
+        long splitTime = System.currentTimeMillis();
+        Thread.sleep(5);
+        journal.log(Status.STATUS_COMMITTED, gtrid2, csvToSet("name2"));
+        journal.force();
+
+        try (Stream<JournalRecord> records = journal.streamRecords(JournalRecordFilter.all(), false)) {
+            assertEquals(5, records.count());
+        }
+        try (Stream<JournalRecord> records = journal.streamRecords(JournalRecordFilter.all().withStatus(Status.STATUS_COMMITTING), false)) {
+            assertEquals(Arrays.asList(gtrid1, gtrid2), records.map(JournalRecord::getGtrid).collect(Collectors.toList()));
+        }
+        try (Stream<JournalRecord> records = journal.streamRecords(JournalRecordFilter.all().withGtrid(gtrid2), false)) {
+            assertEquals(Arrays.asList(Status.STATUS_COMMITTING, Status.STATUS_COMMITTED), records.map(JournalRecord::getStatus).collect(Collectors.toList()));
+        }
+        try (Stream<JournalRecord> records = journal.streamRecords(JournalRecordFilter.all().withUniqueName("name1").withStatus(Status.STATUS_COMMITTED), false)) {
+            assertEquals(Collections.singletonList(gtrid1), records.map(JournalRecord::getGtrid).collect(Collectors.toList()));
+        }
+        try (Stream<JournalRecord> records = journal.streamRecords(JournalRecordFilter.all().withTimeRange(splitTime, Long.MAX_VALUE), false)) {
+            assertEquals(Collections.singletonList(gtrid2), records.map(JournalRecord::getGtrid).collect(Collectors.toList()));
+        }
+        // a partially consumed stream releases the file when closed
+        try (Stream<JournalRecord> records = journal.streamRecords(JournalRecordFilter.all(), false)) {
+            assertEquals(gtrid1, records.findFirst().get().getGtrid());
+        }
+
+        List<JournalRecord> read = new ArrayList<>();
+        journal.unsafeReadRecordsInto(read, false);
+        assertEquals(5, read.size());
+
+        journal.close();
+        journal.shutdown();
+    }
+
     @Test
     public void testJournalPerformance() throws IOException, InterruptedException {
         TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(40);
@@ -316,6 +551,505 @@ public class DiskJournalTest {
         journal.shutdown();
     }
 
+    @Test
+    public void testConcurrentWritersWithRollover() throws IOException, InterruptedException {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+
+        try {
+            for (boolean writeBatching : new boolean[]{false, true}) {
+                TransactionManagerServices.getConfiguration().setWriteBatchingEnabled(writeBatching);
+                assertConcurrentWritersWithRollover();
+            }
+        } finally {
+            TransactionManagerServices.getConfiguration().setWriteBatchingEnabled(false);
+        }
+    }
+
+    private void assertConcurrentWritersWithRollover() throws IOException, InterruptedException {
+        for (int threads : new int[]{1, 8, 32, 128}) {
+            new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+            new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+            final DiskJournal journal = new DiskJournal();
+            journal.open();
+
+            final int count = 24000 / threads;
+            final Set<Uid> dangling = Collections.synchronizedSet(new HashSet<>());
+            final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+            Thread[] writers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                final SortedSet<String> set = csvToSet(String.format("%d.name1,%d.name2", i, i));
+                writers[i] = new Thread(() -> {
+                    try {
+                        for (int j = 1; j <= count; j++) {
+                            Uid gtrid = UidGenerator.generateUid();
+                            journal.log(Status.STATUS_COMMITTING, gtrid, set);
+                            if (j % 50 == 0) {
+                                dangling.add(gtrid);
+                            } else {
+                                journal.log(Status.STATUS_COMMITTED, gtrid, set);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                });
+                writers[i].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+
+            assertTrue(errors.isEmpty(), "writers failed: " + errors);
+            assertEquals(dangling, journal.collectDanglingRecords().keySet(), threads + " thread(s)");
+            journal.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchedForces() throws IOException, InterruptedException {
+        TransactionManagerServices.getConfiguration().setForceBatchingEnabled(true);
+        TransactionManagerServices.getConfiguration().setForceBatchMaxWait(Duration.ofMillis(1));
+        final DiskJournal journal = new DiskJournal();
+        journal.open();
+
+        final Set<Uid> dangling = Collections.synchronizedSet(new HashSet<>());
+
+        class Runner extends Thread {
+            private final int ndx;
+
+            Runner(int i) {
+                this.ndx = i;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    SortedSet<String> set = csvToSet(String.format("%d.name1,%d.name2", ndx, ndx));
+                    for (int i = 1; i < 500; i++) {
+                        Uid gtrid = UidGenerator.generateUid();
+                        journal.log(Status.STATUS_COMMITTING, gtrid, set);
+                        journal.force();
+
+                        if (i % 100 == 0) {
+                            dangling.add(gtrid);
+                        } else {
+                            journal.log(Status.STATUS_COMMITTED, gtrid, set);
+                        }
+                    }
+                } catch (IOException io) {
+                    fail(io.getMessage());
+                }
+            }
+        }
+
+        Runner[] runners = new Runner[8];
+        for (int i = 0; i < runners.length; i++) {
+            runners[i] = new Runner(i);
+            runners[i].start();
+        }
+
+        for (Runner runner : runners) {
+            runner.join();
+        }
+
+        assertEquals(dangling, journal.collectDanglingRecords().keySet());
+
+        journal.shutdown();
+    }
+
+    @Test
+    public void testAsyncLogging() throws Exception {
+        DiskJournal journal = new DiskJournal();
+
+        try {
+            journal.forceAsync().toCompletableFuture().join();
+            fail("expected CompletionException");
+        } catch (CompletionException ex) {
+            assertEquals("cannot force log writing, disk logger is not open", ex.getCause().getMessage());
+        }
+
+        journal.open();
+        List<CompletableFuture<Void>> logged = new ArrayList<>();
+        Set<Uid> dangling = new HashSet<>();
+        for (int i = 1; i < 500; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            logged.add(journal.logAsync(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2")).toCompletableFuture());
+            if (i % 100 == 0) {
+                dangling.add(gtrid);
+            } else {
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            }
+        }
+        CompletableFuture.allOf(logged.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        journal.forceAsync().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        // nothing left to force
+        assertTrue(journal.forceAsync().toCompletableFuture().isDone());
+        journal.close();
+
+        journal = new DiskJournal();
+        journal.open();
+        assertEquals(dangling, journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+
+        NullJournal nullJournal = new NullJournal();
+        assertTrue(nullJournal.logAsync(Status.STATUS_COMMITTING, UidGenerator.generateUid(), csvToSet("name1")).toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        // the periodic flusher only runs when writes are forced
+        TransactionManagerServices.getConfiguration().setForcedWriteEnabled(true);
+        TransactionManagerServices.getConfiguration().setFlushInterval(Duration.ofMillis(50));
+        try {
+            DiskJournal journal = new DiskJournal();
+            journal.open();
+            long opened = journal.getFlushedTimestamp();
+            assertTrue(opened > 0L);
+
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+            journal.force();
+            CompletableFuture<Void> flushed = journal.forceAsync().toCompletableFuture();
+            flushed.get(30, TimeUnit.SECONDS);
+            assertEquals(0L, journal.getUnflushedRecordCount());
+            assertTrue(journal.getFlushedTimestamp() >= opened);
+
+            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            journal.close();
+            assertEquals(-1L, journal.getFlushedTimestamp());
+
+            journal = new DiskJournal();
+            journal.open();
+            assertEquals(0, journal.collectDanglingRecords().size());
+            journal.shutdown();
+        } finally {
+            TransactionManagerServices.getConfiguration().setFlushInterval(Duration.ZERO);
+        }
+    }
+
+    @Test
+    public void testMemoryMappedJournal() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        DiskJournal journal = new DiskJournal(true);
+        journal.open();
+
+        Set<Uid> uncommitted = new HashSet<>();
+        for (int i = 1; i < 8000; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+            journal.force();
+
+            if (i % 10 == 0) {
+                uncommitted.add(gtrid);
+            } else {
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            }
+        }
+        assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+        journal.close();
+
+        // memory mapped files must be readable by the regular disk journal
+        journal = new DiskJournal();
+        journal.open();
+        assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testDirectIoJournal() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        TransactionManagerServices.getConfiguration().setDirectIoEnabled(true);
+        final Set<Uid> uncommitted = Collections.synchronizedSet(new HashSet<>());
+        try {
+            final DiskJournal journal = new DiskJournal();
+            try {
+                journal.open();
+            } catch (IOException ex) {
+                assumeTrue(false, "direct I/O not supported: " + ex);
+            }
+
+            // concurrent writers share blocks and make the files swap
+            Thread[] writers = new Thread[4];
+            final AtomicInteger errors = new AtomicInteger();
+            for (int t = 0; t < writers.length; t++) {
+                writers[t] = new Thread(() -> {
+                    try {
+                        for (int i = 1; i < 4000; i++) {
+                            Uid gtrid = UidGenerator.generateUid();
+                            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                            journal.force();
+                            if (i % 10 == 0) {
+                                uncommitted.add(gtrid);
+                            } else {
+                                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+                            }
+                        }
+                    } catch (IOException ex) {
+                        errors.incrementAndGet();
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertEquals(0, errors.get());
+            assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+            journal.close();
+        } finally {
+            TransactionManagerServices.getConfiguration().setDirectIoEnabled(false);
+        }
+
+        // files written with direct I/O must be readable by the regular disk journal
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+        assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testCompactRecordFormat() throws Exception {
+        Set<Uid> uncommitted = new HashSet<>();
+        long[] usedSpace = new long[2];
+        try {
+            for (int formatVersion = 1; formatVersion <= 2; formatVersion++) {
+                setUp();
+                TransactionManagerServices.getConfiguration().setLogFormatVersion(formatVersion);
+                DiskJournal journal = new DiskJournal();
+                journal.open();
+                uncommitted.clear();
+                for (int i = 0; i < 100; i++) {
+                    Uid gtrid = UidGenerator.generateUid();
+                    journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2,name3"));
+                    if (i % 10 == 0) {
+                        uncommitted.add(gtrid);
+                    } else {
+                        journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2,name3"));
+                    }
+                }
+                journal.close();
+
+                File activeFile = findActiveFile();
+                assertEquals(formatVersion == 2 ? TransactionLogHeader.FORMAT_ID_V2 : TransactionLogHeader.FORMAT_ID_V1, readHeaderInt(activeFile, TransactionLogHeader.FORMAT_ID_HEADER));
+                usedSpace[formatVersion - 1] = readHeaderLong(activeFile, TransactionLogHeader.CURRENT_POSITION_HEADER) - TransactionLogHeader.HEADER_LENGTH;
+
+                journal = new DiskJournal();
+                journal.open();
+                Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+                assertEquals(uncommitted, danglingRecords.keySet());
+                for (JournalRecord record : danglingRecords.values()) {
+                    assertEquals(csvToSet("name1,name2,name3"), record.getUniqueNames());
+                    assertTrue(record.isValid());
+                }
+                journal.close();
+            }
+        } finally {
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+        }
+
+        assertTrue(usedSpace[1] * 3 < usedSpace[0] * 2, "compact records use " + usedSpace[1] + " bytes, original ones " + usedSpace[0]);
+    }
+
+    @Test
+    public void testLogFormatMigration() throws Exception {
+        // a v1 journal opened with v2 configured, then the reverse
+        assertLogFormatMigration(1, 2);
+        setUp();
+        assertLogFormatMigration(2, 1);
+    }
+
+    private void assertLogFormatMigration(int fromVersion, int toVersion) throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        Uid inDoubt = UidGenerator.generateUid();
+        try {
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(fromVersion);
+            DiskJournal journal = new DiskJournal();
+            journal.open();
+            journal.log(Status.STATUS_COMMITTING, inDoubt, csvToSet("name1,name2"));
+            journal.close();
+
+            // the active file holds records and keeps its format until the files get swapped
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(toVersion);
+            journal = new DiskJournal();
+            journal.open();
+            assertEquals(Collections.singleton(inDoubt), journal.collectDanglingRecords().keySet());
+            for (int i = 0; i < 20000; i++) {
+                Uid gtrid = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            }
+            assertEquals(Collections.singleton(inDoubt), journal.collectDanglingRecords().keySet());
+            journal.close();
+
+            int expectedFormatId = toVersion == 2 ? TransactionLogHeader.FORMAT_ID_V2 : TransactionLogHeader.FORMAT_ID_V1;
+            assertEquals(expectedFormatId, readHeaderInt(findActiveFile(), TransactionLogHeader.FORMAT_ID_HEADER));
+
+            journal = new DiskJournal();
+            journal.open();
+            Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+            assertEquals(Collections.singleton(inDoubt), danglingRecords.keySet());
+            assertEquals(csvToSet("name1,name2"), danglingRecords.get(inDoubt).getUniqueNames());
+            journal.shutdown();
+        } finally {
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        Set<Uid> uncommitted = new HashSet<>();
+        try {
+            TransactionManagerServices.getConfiguration().setCheckpointIntervalInKb(1);
+            DiskJournal journal = new DiskJournal();
+            journal.open();
+            for (int i = 0; i < 200; i++) {
+                Uid gtrid = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                if (i % 20 == 0) {
+                    uncommitted.add(gtrid);
+                } else {
+                    journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+                }
+            }
+            File checkpointFile = TransactionLogCheckpoint.getFile(findActiveFile());
+            // checkpoints are written by a background thread
+            awaitTrue(checkpointFile::exists, "expected a checkpoint to be written");
+            journal.close();
+
+            // records logged after the last checkpoint are read from the log file
+            TransactionManagerServices.getConfiguration().setCheckpointIntervalInKb(0);
+            journal = new DiskJournal();
+            journal.open();
+            assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+            uncommitted.add(gtrid);
+            Uid committed = uncommitted.iterator().next();
+            journal.log(Status.STATUS_COMMITTED, committed, csvToSet("name1,name2"));
+            uncommitted.remove(committed);
+            journal.close();
+
+            journal = new DiskJournal();
+            journal.open();
+            Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+            assertEquals(uncommitted, danglingRecords.keySet());
+            for (JournalRecord record : danglingRecords.values()) {
+                assertEquals(csvToSet("name1,name2"), record.getUniqueNames());
+            }
+            journal.close();
+
+            // a corrupted checkpoint is ignored
+            try (RandomAccessFile raf = new RandomAccessFile(checkpointFile, "rw")) {
+                raf.seek(20);
+                raf.writeByte(raf.readByte() ^ 0xFF);
+            }
+            assertNull(TransactionLogCheckpoint.read(checkpointFile));
+            journal = new DiskJournal();
+            journal.open();
+            assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+            journal.close();
+        } finally {
+            TransactionManagerServices.getConfiguration().setCheckpointIntervalInKb(0);
+        }
+    }
+
+    @Test
+    public void testCheckpointWithRelaxedDurability() throws Exception {
+        try {
+            TransactionManagerServices.getConfiguration().setCheckpointIntervalInKb(1);
+
+            // without forced writes, records could still be lost so no checkpoint is ever taken
+            TransactionManagerServices.getConfiguration().setForcedWriteEnabled(false);
+            DiskJournal journal = new DiskJournal();
+            journal.open();
+            logCommittedTransactions(journal, 100);
+            File checkpointFile = TransactionLogCheckpoint.getFile(findActiveFile());
+            journal.close();
+            assertFalse(checkpointFile.exists());
+
+            // with a flush interval, the checkpoint is written after the periodic force
+            setUp();
+            TransactionManagerServices.getConfiguration().setForcedWriteEnabled(true);
+            TransactionManagerServices.getConfiguration().setFlushInterval(Duration.ofMillis(200));
+            journal = new DiskJournal();
+            journal.open();
+            logCommittedTransactions(journal, 100);
+            checkpointFile = TransactionLogCheckpoint.getFile(findActiveFile());
+            awaitTrue(checkpointFile::exists, "expected a checkpoint to be written");
+            journal.close();
+        } finally {
+            TransactionManagerServices.getConfiguration().setForcedWriteEnabled(true);
+            TransactionManagerServices.getConfiguration().setFlushInterval(Duration.ZERO);
+            TransactionManagerServices.getConfiguration().setCheckpointIntervalInKb(0);
+        }
+    }
+
+    private void logCommittedTransactions(DiskJournal journal, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), message);
+    }
+
+    @Test
+    public void testRolloverAfterRestart() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        Uid inDoubt = UidGenerator.generateUid();
+
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+        journal.log(Status.STATUS_COMMITTING, inDoubt, csvToSet("name1,name2"));
+        journal.close();
+
+        // records logged before the restart must be copied over when the files get swapped
+        journal = new DiskJournal();
+        journal.open();
+        File activeFile = findActiveFile();
+        // stop after the first swap, the size of the records depends on the format version
+        for (int i = 0; i < 20000 && activeFile.equals(findActiveFile()); i++) {
+            for (int j = 0; j < 100; j++) {
+                Uid gtrid = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            }
+        }
+        assertNotEquals(activeFile, findActiveFile());
+        Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+        assertEquals(Collections.singleton(inDoubt), danglingRecords.keySet());
+        assertEquals(csvToSet("name1,name2"), danglingRecords.get(inDoubt).getUniqueNames());
+        journal.shutdown();
+    }
+
+    private static File findActiveFile() throws IOException {
+        File file1 = new File(TransactionManagerServices.getConfiguration().getLogPart1Filename());
+        File file2 = new File(TransactionManagerServices.getConfiguration().getLogPart2Filename());
+        return readHeaderLong(file1, TransactionLogHeader.TIMESTAMP_HEADER) > readHeaderLong(file2, TransactionLogHeader.TIMESTAMP_HEADER) ? file1 : file2;
+    }
+
+    private static int readHeaderInt(File file, int headerPosition) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(headerPosition);
+            return raf.readInt();
+        }
+    }
+
+    private static long readHeaderLong(File file, int headerPosition) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(headerPosition);
+            return raf.readLong();
+        }
+    }
+
     private SortedSet<String> csvToSet(String s) {
         String[] names = s.split(",");
         return new TreeSet<>(Arrays.asList(names));
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class ForceBatcherTest {
+
+    @Test
+    public void testForceOnlyWhenNeeded() throws Exception {
+        AtomicInteger forces = new AtomicInteger();
+        ForceBatcher batcher = new ForceBatcher(forces::incrementAndGet, 0L, 64);
+
+        batcher.force();
+        assertEquals(0, forces.get());
+
+        batcher.writeCompleted();
+        assertTrue(batcher.needsForce());
+        batcher.force();
+        batcher.force();
+        assertEquals(1, forces.get());
+        assertFalse(batcher.needsForce());
+        assertEquals(1L, batcher.getForcedSequence());
+    }
+
+    @Test
+    public void testConcurrentForcesAreCoalesced() throws Exception {
+        final int threads = 16;
+        final AtomicInteger forces = new AtomicInteger();
+        final ForceBatcher batcher = new ForceBatcher(() -> {
+            forces.incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+        }, TimeUnit.MILLISECONDS.toNanos(50), threads);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] committers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            committers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    batcher.writeCompleted();
+                    batcher.force();
+                } catch (Exception ex) {
+                    errors.incrementAndGet();
+                }
+            });
+            committers[i].start();
+        }
+        start.countDown();
+        for (Thread committer : committers) {
+            committer.join();
+        }
+
+        assertEquals(0, errors.get());
+        assertFalse(batcher.needsForce());
+        assertTrue(forces.get() < threads, "expected forces to be batched but got " + forces.get() + " of them");
+    }
+
+    @Test
+    public void testFailedForceIsRetriedByFollower() throws Exception {
+        final AtomicInteger forces = new AtomicInteger();
+        ForceBatcher batcher = new ForceBatcher(() -> {
+            if (forces.incrementAndGet() == 1) {
+                throw new IOException("disk failure");
+            }
+        }, 0L, 64);
+
+        batcher.writeCompleted();
+        try {
+            batcher.force();
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("disk failure", ex.getMessage());
+        }
+        assertTrue(batcher.needsForce());
+
+        batcher.force();
+        assertEquals(2, forces.get());
+        assertFalse(batcher.needsForce());
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class JournalStandbyTest {
+
+    private final File standbyFile1 = new File("target/btm-standby1.tlog");
+    private final File standbyFile2 = new File("target/btm-standby2.tlog");
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+        standbyFile1.delete();
+        standbyFile2.delete();
+    }
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        TransactionManagerServices.getConfiguration().setReplicationTarget(null);
+        standbyFile1.delete();
+        standbyFile2.delete();
+    }
+
+    @Test
+    public void testShipping() throws Exception {
+        JournalStandby standby = new JournalStandby(new DiskJournal(standbyFile1, standbyFile2, false), 0);
+        standby.start();
+        int port = standby.getLocalPort();
+        TransactionManagerServices.getConfiguration().setReplicationTarget("localhost:" + port);
+
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+        awaitEquals(true, standby::isConnected);
+
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+        journal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+        journal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name1,name2"));
+        journal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1,name2"));
+        journal.log(Status.STATUS_COMMITTED, gtrid2, csvToSet("name1"));
+        awaitEquals(Collections.singletonMap(gtrid2, csvToSet("name2")), () -> getDanglingUniqueNames(standby));
+
+        // the standby misses records while it is down
+        journal.close();
+        standby.close();
+        journal.open();
+        Uid gtrid3 = UidGenerator.generateUid();
+        journal.log(Status.STATUS_COMMITTED, gtrid2, csvToSet("name2"));
+        journal.log(Status.STATUS_COMMITTING, gtrid3, csvToSet("name3"));
+
+        JournalStandby restarted = new JournalStandby(new DiskJournal(standbyFile1, standbyFile2, false), port);
+        restarted.start();
+        assertEquals(Collections.singleton(gtrid2), restarted.getDanglingRecords().keySet());
+        // then catches up with the dangling records of the primary once it reconnects
+        awaitEquals(Collections.singleton(gtrid3), () -> restarted.getDanglingRecords().keySet());
+
+        Uid gtrid4 = UidGenerator.generateUid();
+        journal.log(Status.STATUS_COMMITTING, gtrid4, csvToSet("name4"));
+        journal.close();
+        assertEquals(new HashSet<>(Arrays.asList(gtrid3, gtrid4)), restarted.getDanglingRecords().keySet());
+        restarted.close();
+
+        // the standby files can be used to take over
+        DiskJournal copy = new DiskJournal(standbyFile1, standbyFile2, false);
+        copy.open();
+        assertEquals(new HashSet<>(Arrays.asList(gtrid3, gtrid4)), copy.collectDanglingRecords().keySet());
+        copy.close();
+    }
+
+    @Test
+    public void testCommittingRecordsAcknowledgedBeforeForce() throws Exception {
+        JournalStandby standby = new JournalStandby(new DiskJournal(standbyFile1, standbyFile2, false), 0);
+        standby.start();
+        TransactionManagerServices.getConfiguration().setReplicationTarget("localhost:" + standby.getLocalPort());
+
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+        awaitEquals(true, standby::isConnected);
+        try {
+            for (int i = 0; i < 50; i++) {
+                Uid gtrid = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                journal.force();
+                // no waiting: the standby stored the record before force returned
+                assertTrue(standby.getDanglingRecords().containsKey(gtrid), "record " + i + " not acknowledged");
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            }
+        } finally {
+            journal.close();
+            standby.close();
+        }
+    }
+
+    @Test
+    public void testStandbyInAnotherProcess() throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", getChildClassPath(), StandbyProcess.class.getName(), standbyFile1.getPath(), standbyFile2.getPath());
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        DiskJournal journal = new DiskJournal();
+        Set<Uid> committing = new HashSet<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null && !line.startsWith(StandbyProcess.PORT)) {
+            }
+            assertNotNull(line, "standby process did not start");
+            TransactionManagerServices.getConfiguration().setReplicationTarget("localhost:" + line.substring(StandbyProcess.PORT.length()));
+
+            journal.open();
+            long deadline = System.currentTimeMillis() + 10000L;
+            while (!journal.isReplicating()) {
+                assertTrue(System.currentTimeMillis() < deadline, "primary did not connect to the standby process");
+                Thread.sleep(10);
+            }
+
+            for (int i = 0; i < 20; i++) {
+                Uid gtrid = UidGenerator.generateUid();
+                journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                if (i % 2 == 0) {
+                    journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+                } else {
+                    committing.add(gtrid);
+                }
+            }
+            journal.force();
+
+            // the standby dies right after the force returned, without closing anything
+            process.destroyForcibly();
+            assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+        } finally {
+            process.destroyForcibly();
+            journal.close();
+        }
+
+        // its files must hold all the committing records the primary got acknowledged
+        DiskJournal copy = new DiskJournal(standbyFile1, standbyFile2, false);
+        copy.open();
+        assertEquals(committing, copy.collectDanglingRecords().keySet());
+        copy.close();
+    }
+
+    /**
+     * Runs a standby in its own JVM, printing its port then running until killed.
+     */
+    public static class StandbyProcess {
+        static final String PORT = "standby port: ";
+
+        public static void main(String[] args) throws Exception {
+            JournalStandby standby = new JournalStandby(new DiskJournal(new File(args[0]), new File(args[1]), false), 0);
+            standby.start();
+            System.out.println(PORT + standby.getLocalPort());
+            System.out.flush();
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * The build may run the tests on the module path with the test classes patched into the module, so the class path of
+     * this JVM does not always hold the classes under test. The child runs them all on its class path.
+     */
+    private static String getChildClassPath() throws Exception {
+        Set<String> entries = new LinkedHashSet<>();
+        entries.add(Paths.get(StandbyProcess.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+        entries.add(Paths.get(DiskJournal.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+        for (String property : new String[] {"jdk.module.path", "java.class.path"}) {
+            String path = System.getProperty(property);
+            if (path != null && !path.isEmpty()) {
+                entries.addAll(Arrays.asList(path.split(File.pathSeparator)));
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static <T> void awaitEquals(T expected, Supplier<T> actual) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!expected.equals(actual.get()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, actual.get());
+    }
+
+    private static Map<Uid, Set<String>> getDanglingUniqueNames(JournalStandby standby) {
+        Map<Uid, Set<String>> uniqueNames = new HashMap<>();
+        for (JournalRecord record : standby.getDanglingRecords().values()) {
+            uniqueNames.put(record.getGtrid(), record.getUniqueNames());
+        }
+        return uniqueNames;
+    }
+
+    private static SortedSet<String> csvToSet(String s) {
+        String[] names = s.split(",");
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class OverflowStoreTest {
+
+    private final File file = new File("target/btm-test.overflow");
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        file.delete();
+    }
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        OverflowStore store = new OverflowStore(file, 1);
+
+        Set<String> uniqueNames = new TreeSet<>(Arrays.asList("a-rather-long-resource-unique-name-1", "a-rather-long-resource-unique-name-2"));
+        Set<Uid> dangling = new HashSet<>();
+        for (int i = 1; i <= 30000; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            store.add(Collections.singletonList(new TransactionLogRecord(Status.STATUS_COMMITTING, gtrid, uniqueNames)));
+            if (i % 100 == 0) {
+                dangling.add(gtrid);
+            } else {
+                store.remove(Status.STATUS_COMMITTED, gtrid, uniqueNames);
+            }
+        }
+        // compacted several times without growing as few records are needed
+        assertTrue(file.length() < 2 * 1024 * 1024);
+        assertEquals(dangling, store.getDanglingRecords().keySet());
+        store.close();
+
+        store = new OverflowStore(file, 1);
+        assertEquals(dangling, store.getDanglingRecords().keySet());
+        for (Uid gtrid : dangling) {
+            assertTrue(store.contains(gtrid));
+            store.remove(Status.STATUS_COMMITTED, gtrid, uniqueNames);
+        }
+        assertEquals(0, store.size());
+        store.close();
+
+        store = new OverflowStore(file, 1);
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class SegmentedJournalTest {
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        TransactionManagerServices.getConfiguration().setSegmentCount(4);
+        File[] files = new File(TransactionManagerServices.getConfiguration().getSegmentDirectory()).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+        SegmentedJournal journal = new SegmentedJournal();
+
+        try {
+            journal.force();
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("cannot force log writing, segmented journal is not open", ex.getMessage());
+        }
+        try {
+            journal.log(0, null, null);
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("cannot write log, segmented journal is not open", ex.getMessage());
+        }
+        try {
+            journal.collectDanglingRecords();
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("cannot collect dangling records, segmented journal is not open", ex.getMessage());
+        }
+
+        TransactionManagerServices.getConfiguration().setSegmentCount(1);
+        try {
+            journal.open();
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("segmented journal needs at least 2 segments, configured: 1", ex.getMessage());
+        }
+
+        journal.close();
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+        SegmentedJournal journal = new SegmentedJournal();
+        journal.open();
+
+        List<Uid> uncommitted = new ArrayList<>();
+        for (int i = 1; i < 20000; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2,name3"));
+
+            if (i % 50 != 0) {
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1"));
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name2,name3"));
+            } else {
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name2"));
+                uncommitted.add(gtrid);
+            }
+        }
+
+        Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+        assertEquals(new HashSet<>(uncommitted), danglingRecords.keySet());
+        for (JournalRecord record : danglingRecords.values()) {
+            assertEquals(csvToSet("name1,name3"), record.getUniqueNames());
+        }
+        journal.close();
+
+        journal = new SegmentedJournal();
+        journal.open();
+        assertEquals(new HashSet<>(uncommitted), journal.collectDanglingRecords().keySet());
+
+        for (Uid gtrid : uncommitted) {
+            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name3"));
+        }
+        assertEquals(0, journal.collectDanglingRecords().size());
+
+        journal.shutdown();
+    }
+
+    @Test
+    public void testConcurrentWritersWithRollover() throws Exception {
+        final SegmentedJournal journal = new SegmentedJournal();
+        journal.open();
+
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Set<Uid> uncommitted = Collections.synchronizedSet(new HashSet<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 1; i < 2000; i++) {
+                        Uid gtrid = UidGenerator.generateUid();
+                        journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                        journal.force();
+                        if (i % 500 == 0) {
+                            uncommitted.add(gtrid);
+                        } else {
+                            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+                        }
+                    }
+                } catch (Exception ex) {
+                    failure.set(ex);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testDanglingRecordsOfDiskJournal() throws Exception {
+        // in-doubt transactions left by the disk journal
+        DiskJournal diskJournal = new DiskJournal();
+        diskJournal.open();
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+        diskJournal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+        diskJournal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1"));
+        diskJournal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name1,name2"));
+        diskJournal.log(Status.STATUS_COMMITTED, gtrid2, csvToSet("name1,name2"));
+        diskJournal.close();
+
+        // are taken over when switching journal
+        SegmentedJournal journal = new SegmentedJournal();
+        journal.open();
+        Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+        assertEquals(Collections.singleton(gtrid1), danglingRecords.keySet());
+        assertEquals(csvToSet("name2"), danglingRecords.get(gtrid1).getUniqueNames());
+        journal.close();
+
+        // and are not dangling in the disk journal files anymore
+        diskJournal = new DiskJournal();
+        diskJournal.open();
+        assertEquals(0, diskJournal.collectDanglingRecords().size());
+        diskJournal.close();
+
+        journal = new SegmentedJournal();
+        journal.open();
+        assertEquals(Collections.singleton(gtrid1), journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    private SortedSet<String> csvToSet(String s) {
+        String[] names = s.split(",");
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.Configuration;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class ShardedJournalTest {
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        TransactionManagerServices.getConfiguration().setShardCount(4);
+        deleteShardFiles();
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+    }
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        deleteShardFiles();
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+    }
+
+    private static void deleteShardFiles() {
+        Configuration configuration = TransactionManagerServices.getConfiguration();
+        for (int i = 0; i < 16; i++) {
+            for (String filename : new String[]{configuration.getLogPart1Filename(), configuration.getLogPart2Filename()}) {
+                File file = ShardedJournal.getShardFile(filename, i);
+                file.delete();
+                TransactionLogCheckpoint.getFile(file).delete();
+            }
+        }
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+        ShardedJournal journal = new ShardedJournal();
+
+        try {
+            journal.force();
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("cannot force log writing, sharded journal is not open", ex.getMessage());
+        }
+        try {
+            journal.log(0, null, null);
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("cannot write log, sharded journal is not open", ex.getMessage());
+        }
+        try {
+            journal.collectDanglingRecords();
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("cannot collect dangling records, sharded journal is not open", ex.getMessage());
+        }
+
+        TransactionManagerServices.getConfiguration().setShardCount(0);
+        try {
+            journal.open();
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertEquals("sharded journal needs at least 1 shard, configured: 0", ex.getMessage());
+        }
+
+        journal.close();
+    }
+
+    @Test
+    public void testShardFile() throws Exception {
+        assertEquals(new File("target", "btm1-3.tlog"), ShardedJournal.getShardFile("target/btm1.tlog", 3));
+        assertEquals(new File("btm-0"), ShardedJournal.getShardFile("btm", 0));
+    }
+
+    @Test
+    public void testDanglingRecordsOfAllShards() throws Exception {
+        ShardedJournal journal = new ShardedJournal();
+        journal.open();
+
+        Set<Uid> uncommitted = new HashSet<>();
+        BitSet usedShards = new BitSet();
+        for (int i = 1; i < 400; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            usedShards.set(ShardedJournal.getShard(gtrid, 4));
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+            if (i % 10 == 0) {
+                uncommitted.add(gtrid);
+            } else {
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+            }
+        }
+        journal.force();
+
+        assertEquals(4, usedShards.cardinality());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ShardedJournal.getShardFile(TransactionManagerServices.getConfiguration().getLogPart1Filename(), i).exists());
+        }
+        assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+
+        List<JournalRecord> records = new ArrayList<>();
+        journal.unsafeReadRecordsInto(records, false);
+        assertEquals(399 + 399 - uncommitted.size(), records.size());
+        journal.close();
+
+        journal = new ShardedJournal();
+        journal.open();
+        assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testShardCountChange() throws Exception {
+        ShardedJournal journal = new ShardedJournal();
+        journal.open();
+        Set<Uid> uncommitted = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+            uncommitted.add(gtrid);
+        }
+        journal.close();
+
+        for (int shardCount : new int[]{2, 5, 1}) {
+            TransactionManagerServices.getConfiguration().setShardCount(shardCount);
+            journal = new ShardedJournal();
+            journal.open();
+            assertEquals(uncommitted, journal.collectDanglingRecords().keySet(), "with " + shardCount + " shard(s)");
+            for (int i = shardCount; i < 5; i++) {
+                assertFalse(ShardedJournal.getShardFile(TransactionManagerServices.getConfiguration().getLogPart1Filename(), i).exists());
+                assertFalse(ShardedJournal.getShardFile(TransactionManagerServices.getConfiguration().getLogPart2Filename(), i).exists());
+            }
+            journal.close();
+        }
+
+        TransactionManagerServices.getConfiguration().setShardCount(3);
+        journal = new ShardedJournal();
+        journal.open();
+        for (Uid gtrid : uncommitted) {
+            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+        }
+        journal.close();
+
+        journal = new ShardedJournal();
+        journal.open();
+        assertEquals(0, journal.collectDanglingRecords().size());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final ShardedJournal journal = new ShardedJournal();
+        journal.open();
+
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Set<Uid> uncommitted = Collections.synchronizedSet(new HashSet<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 1; i < 500; i++) {
+                        Uid gtrid = UidGenerator.generateUid();
+                        journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2"));
+                        journal.force();
+                        if (i % 100 == 0) {
+                            uncommitted.add(gtrid);
+                        } else {
+                            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2"));
+                        }
+                    }
+                } catch (Exception ex) {
+                    failure.set(ex);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(uncommitted, journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testDanglingRecordsOfDiskJournal() throws Exception {
+        // in-doubt transactions left by the disk journal
+        DiskJournal diskJournal = new DiskJournal();
+        diskJournal.open();
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+        diskJournal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+        diskJournal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1"));
+        diskJournal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name1,name2"));
+        diskJournal.log(Status.STATUS_COMMITTED, gtrid2, csvToSet("name1,name2"));
+        diskJournal.close();
+
+        // are taken over when switching journal
+        ShardedJournal journal = new ShardedJournal();
+        journal.open();
+        Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+        assertEquals(Collections.singleton(gtrid1), danglingRecords.keySet());
+        assertEquals(csvToSet("name2"), danglingRecords.get(gtrid1).getUniqueNames());
+        journal.close();
+
+        // and are not dangling in the disk journal files anymore
+        diskJournal = new DiskJournal();
+        diskJournal.open();
+        assertEquals(0, diskJournal.collectDanglingRecords().size());
+        diskJournal.close();
+
+        journal = new ShardedJournal();
+        journal.open();
+        assertEquals(Collections.singleton(gtrid1), journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    private SortedSet<String> csvToSet(String s) {
+        String[] names = s.split(",");
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class TransactionLogScannerTest {
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+    }
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+    }
+
+    @Test
+    public void testParallelReadMatchesSequentialRead() throws Exception {
+        for (int formatVersion = 1; formatVersion <= 2; formatVersion++) {
+            setUp();
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(formatVersion);
+            File file = writeRecords();
+
+            List<String> sequential = read(file, 0);
+            assertEquals(6000, sequential.size());
+            assertEquals(sequential, read(file, 4096), "format version " + formatVersion);
+            assertEquals(sequential, read(file, 50000), "format version " + formatVersion);
+        }
+    }
+
+    @Test
+    public void testCorruptedChunk() throws Exception {
+        File file = writeRecords();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(TransactionLogHeader.CURRENT_POSITION_HEADER);
+            raf.seek(raf.readLong() / 2);
+            raf.writeByte(raf.readByte() ^ 0xFF);
+        }
+
+        List<String> sequential = read(file, 0);
+        assertTrue(sequential.contains("corrupted"));
+        assertEquals(sequential, read(file, 4096));
+    }
+
+    /**
+     * Write records referencing a growing set of unique names so that names get defined all along the file.
+     */
+    private File writeRecords() throws IOException {
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+        for (int i = 0; i < 3000; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            Set<String> uniqueNames = new TreeSet<>(Arrays.asList("name" + (i % 7), "name" + (i / 100)));
+            journal.log(Status.STATUS_COMMITTING, gtrid, uniqueNames);
+            journal.log(Status.STATUS_COMMITTED, gtrid, uniqueNames);
+        }
+        journal.close();
+
+        File file1 = new File(TransactionManagerServices.getConfiguration().getLogPart1Filename());
+        File file2 = new File(TransactionManagerServices.getConfiguration().getLogPart2Filename());
+        try (RandomAccessFile raf1 = new RandomAccessFile(file1, "r"); RandomAccessFile raf2 = new RandomAccessFile(file2, "r")) {
+            raf1.seek(TransactionLogHeader.TIMESTAMP_HEADER);
+            raf2.seek(TransactionLogHeader.TIMESTAMP_HEADER);
+            return raf1.readLong() > raf2.readLong() ? file1 : file2;
+        }
+    }
+
+    private static List<String> read(File file, int chunkSize) throws IOException {
+        List<String> result = new ArrayList<>();
+        TransactionLogScanner tls = new TransactionLogScanner(file, TransactionLogHeader.HEADER_LENGTH, Collections.<Integer, String>emptyMap(), false, chunkSize);
+        try {
+            while (true) {
+                TransactionLogRecord tlog;
+                try {
+                    tlog = tls.readLog();
+                } catch (CorruptedTransactionLogException ex) {
+                    result.add("corrupted");
+                    continue;
+                }
+                if (tlog == null) {
+                    break;
+                }
+                result.add(tlog.getStatus() + " " + tlog.getGtrid() + " " + tlog.getSequenceNumber() + " " + new TreeSet<>(tlog.getUniqueNames()));
+            }
+        } finally {
+            tls.close();
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class WriteBatcherTest {
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final int threads = 16;
+        final int writesPerThread = 500;
+        final int recordSize = 24;
+
+        File file = new File("target/write-batcher.tmp");
+        file.delete();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final FileChannel fc = raf.getChannel();
+            final WriteBatcher batcher = new WriteBatcher(fc);
+            final AtomicLong position = new AtomicLong();
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicInteger errors = new AtomicInteger();
+            Thread[] writers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                final byte value = (byte) (i + 1);
+                writers[i] = new Thread(() -> {
+                    ByteBuffer record = ByteBuffer.allocateDirect(recordSize);
+                    try {
+                        start.await();
+                        for (int j = 0; j < writesPerThread; j++) {
+                            record.clear();
+                            while (record.hasRemaining()) {
+                                record.put(value);
+                            }
+                            record.flip();
+                            batcher.write(record, position.getAndAdd(recordSize));
+                        }
+                    } catch (Exception ex) {
+                        errors.incrementAndGet();
+                    }
+                });
+                writers[i].start();
+            }
+            start.countDown();
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertEquals(0, errors.get());
+
+            // every record was written entirely at its own position
+            assertEquals((long) threads * writesPerThread * recordSize, fc.size());
+            ByteBuffer content = ByteBuffer.allocate((int) fc.size());
+            while (content.hasRemaining() && fc.read(content, content.position()) >= 0) {
+                // read the whole file
+            }
+            int[] counts = new int[threads + 1];
+            for (int offset = 0; offset < content.capacity(); offset += recordSize) {
+                byte value = content.get(offset);
+                for (int i = 1; i < recordSize; i++) {
+                    assertEquals(value, content.get(offset + i), "torn record at " + offset);
+                }
+                counts[value]++;
+            }
+            for (int i = 1; i <= threads; i++) {
+                assertEquals(writesPerThread, counts[i]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ package bitronix.tm.mock;
 import bitronix.tm.BitronixTransaction;
 import bitronix.tm.BitronixTransactionManager;
 import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.journal.Journal;
 import bitronix.tm.mock.events.ConnectionDequeuedEvent;
 import bitronix.tm.mock.events.ConnectionQueuedEvent;
 import bitronix.tm.mock.events.Event;
@@ -30,6 +31,7 @@ import bitronix.tm.mock.events.XAResourceIsSameRmEvent;
 import bitronix.tm.mock.events.XAResourcePrepareEvent;
 import bitronix.tm.mock.events.XAResourceRollbackEvent;
 import bitronix.tm.mock.events.XAResourceStartEvent;
+import bitronix.tm.mock.resource.MockJournal;
 import bitronix.tm.mock.resource.MockXAResource;
 import bitronix.tm.mock.resource.jdbc.MockDriver;
 import bitronix.tm.resource.common.XAPool;
@@ -58,7 +60,9 @@ import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -128,6 +132,235 @@ public class NewJdbcProperUsageMockTest extends AbstractMockJdbcTest {
         assertEquals(DATASOURCE2_NAME, ((ConnectionQueuedEvent) orderedEvents.get(i++)).getPooledConnectionImpl().getPoolingDataSource().getUniqueName());
     }
 
+    @Test
+    public void testReadOnlyBranchDetection() throws Exception {
+        Thread.currentThread().setName("testReadOnlyBranchDetection");
+        poolingDataSource1.setDetectReadOnlyBranches(true);
+        poolingDataSource2.setDetectReadOnlyBranches(true);
+        BitronixTransactionManager tm = TransactionManagerServices.getTransactionManager();
+        tm.begin();
+
+        Connection connection1 = poolingDataSource1.getConnection();
+        connection1.createStatement().executeQuery("SELECT 1");
+        Connection connection2 = poolingDataSource2.getConnection();
+        connection2.createStatement().executeQuery("SELECT 1");
+        connection2.prepareStatement("UPDATE t SET c = 1").executeUpdate();
+
+        connection1.close();
+        connection2.close();
+
+        tm.commit();
+
+        // check flow
+        List orderedEvents = EventRecorder.getOrderedEvents();
+        log.info(EventRecorder.dumpToString());
+
+        assertEquals(15, orderedEvents.size());
+        int i=0;
+        assertEquals(Status.STATUS_ACTIVE, ((JournalLogEvent) orderedEvents.get(i++)).getStatus());
+        assertEquals(DATASOURCE1_NAME, ((ConnectionDequeuedEvent) orderedEvents.get(i++)).getPooledConnectionImpl().getPoolingDataSource().getUniqueName());
+        XAResourceStartEvent startEvent1 = (XAResourceStartEvent) orderedEvents.get(i++);
+        assertEquals(XAResource.TMNOFLAGS, startEvent1.getFlag());
+        assertEquals(DATASOURCE2_NAME, ((ConnectionDequeuedEvent) orderedEvents.get(i++)).getPooledConnectionImpl().getPoolingDataSource().getUniqueName());
+        XAResourceStartEvent startEvent2 = (XAResourceStartEvent) orderedEvents.get(i++);
+        assertEquals(XAResource.TMNOFLAGS, startEvent2.getFlag());
+        assertEquals(XAResource.TMSUCCESS, ((XAResourceEndEvent) orderedEvents.get(i++)).getFlag());
+        assertEquals(XAResource.TMSUCCESS, ((XAResourceEndEvent) orderedEvents.get(i++)).getFlag());
+        assertEquals(Status.STATUS_PREPARING, ((JournalLogEvent) orderedEvents.get(i++)).getStatus());
+        // the read-only branch is committed instead of prepared
+        XAResourceCommitEvent readOnlyCommitEvent = (XAResourceCommitEvent) orderedEvents.get(i++);
+        assertSame(startEvent1.getSource(), readOnlyCommitEvent.getSource());
+        assertTrue(readOnlyCommitEvent.isOnePhase());
+        assertEquals(Status.STATUS_PREPARED, ((JournalLogEvent) orderedEvents.get(i++)).getStatus());
+        assertEquals(Status.STATUS_COMMITTING, ((JournalLogEvent) orderedEvents.get(i++)).getStatus());
+        // the only writing branch is committed in one phase
+        XAResourceCommitEvent writingCommitEvent = (XAResourceCommitEvent) orderedEvents.get(i++);
+        assertSame(startEvent2.getSource(), writingCommitEvent.getSource());
+        assertTrue(writingCommitEvent.isOnePhase());
+        assertEquals(Status.STATUS_COMMITTED, ((JournalLogEvent) orderedEvents.get(i++)).getStatus());
+        assertEquals(DATASOURCE1_NAME, ((ConnectionQueuedEvent) orderedEvents.get(i++)).getPooledConnectionImpl().getPoolingDataSource().getUniqueName());
+        assertEquals(DATASOURCE2_NAME, ((ConnectionQueuedEvent) orderedEvents.get(i++)).getPooledConnectionImpl().getPoolingDataSource().getUniqueName());
+    }
+
+    @Test
+    public void testReadOnlyBranchDetectionWithoutWriter() throws Exception {
+        Thread.currentThread().setName("testReadOnlyBranchDetectionWithoutWriter");
+        BitronixTransactionManager tm = restartWithSkipSingleResourceJournaling();
+        poolingDataSource1.setDetectReadOnlyBranches(true);
+        poolingDataSource2.setDetectReadOnlyBranches(true);
+        tm.begin();
+
+        Connection connection1 = poolingDataSource1.getConnection();
+        connection1.createStatement().executeQuery("SELECT 1");
+        Connection connection2 = poolingDataSource2.getConnection();
+        connection2.createStatement().executeQuery("SELECT 1");
+
+        connection1.close();
+        connection2.close();
+
+        tm.commit();
+
+        // check flow
+        List<? extends Event> orderedEvents = EventRecorder.getOrderedEvents();
+        log.info(EventRecorder.dumpToString());
+
+        // both branches are committed without being prepared, nothing needs to be journaled nor forced
+        List<XAResourceCommitEvent> commitEvents = new ArrayList<>();
+        for (Event event : orderedEvents) {
+            assertFalse(event instanceof JournalLogEvent, "unexpected journal record: " + event);
+            assertFalse(event instanceof XAResourcePrepareEvent, "unexpected prepare: " + event);
+            if (event instanceof XAResourceCommitEvent commitEvent) {
+                commitEvents.add(commitEvent);
+            }
+        }
+        assertEquals(2, commitEvents.size());
+        assertTrue(commitEvents.get(0).isOnePhase());
+        assertTrue(commitEvents.get(1).isOnePhase());
+        assertEquals(0, ((MockJournal) TransactionManagerServices.getJournal()).getForceCount());
+        assertEquals(0L, tm.getJournaledStatusChangeCount());
+    }
+
+    @Test
+    public void testReadOnlyBranchDetectionWriterFailure() throws Exception {
+        Thread.currentThread().setName("testReadOnlyBranchDetectionWriterFailure");
+        poolingDataSource1.setDetectReadOnlyBranches(true);
+        poolingDataSource2.setDetectReadOnlyBranches(true);
+        BitronixTransactionManager tm = TransactionManagerServices.getTransactionManager();
+        tm.begin();
+
+        Connection connection1 = poolingDataSource1.getConnection();
+        connection1.createStatement().executeQuery("SELECT 1");
+        Connection connection2 = poolingDataSource2.getConnection();
+        JdbcPooledConnection pc2 = ((PooledConnectionProxy) connection2).getPooledConnection();
+        XAConnection mockXAConnection2 = (XAConnection) getWrappedXAConnectionOf(pc2);
+        MockXAResource mockXAResource2 = (MockXAResource) mockXAConnection2.getXAResource();
+        mockXAResource2.setCommitException(new XAException(XAException.XA_RBROLLBACK));
+        connection2.prepareStatement("UPDATE t SET c = 1").executeUpdate();
+
+        connection1.close();
+        connection2.close();
+
+        try {
+            tm.commit();
+            fail("expected RollbackException");
+        } catch (RollbackException ex) {
+            assertTrue(ex.getMessage().startsWith("transaction failed during 1PC commit of "), ex.getMessage());
+        }
+
+        // check flow
+        List<? extends Event> orderedEvents = EventRecorder.getOrderedEvents();
+        log.info(EventRecorder.dumpToString());
+
+        // the read-only branch got committed before the writing branch failed its one-phase commit, only the writing
+        // branch got rolled back by its failure
+        List<XAResourceCommitEvent> commitEvents = new ArrayList<>();
+        for (Event event : orderedEvents) {
+            assertFalse(event instanceof XAResourcePrepareEvent, "unexpected prepare: " + event);
+            assertFalse(event instanceof XAResourceRollbackEvent, "unexpected rollback: " + event);
+            if (event instanceof XAResourceCommitEvent commitEvent) {
+                commitEvents.add(commitEvent);
+            }
+        }
+        assertEquals(2, commitEvents.size());
+
+        XAResourceCommitEvent readOnlyCommitEvent = commitEvents.get(0);
+        assertNotSame(mockXAResource2, readOnlyCommitEvent.getSource());
+        assertTrue(readOnlyCommitEvent.isOnePhase());
+        assertNull(readOnlyCommitEvent.getException());
+
+        XAResourceCommitEvent writingCommitEvent = commitEvents.get(1);
+        assertSame(mockXAResource2, writingCommitEvent.getSource());
+        assertTrue(writingCommitEvent.isOnePhase());
+        assertEquals(XAException.XA_RBROLLBACK, ((XAException) writingCommitEvent.getException()).errorCode);
+    }
+
+    @Test
+    public void testSkipSingleResourceJournaling() throws Exception {
+        Thread.currentThread().setName("testSkipSingleResourceJournaling");
+        BitronixTransactionManager tm = restartWithSkipSingleResourceJournaling();
+        tm.begin();
+
+        Connection connection1 = poolingDataSource1.getConnection();
+        connection1.createStatement();
+        connection1.close();
+
+        tm.commit();
+
+        // check flow
+        List<? extends Event> orderedEvents = EventRecorder.getOrderedEvents();
+        log.info(EventRecorder.dumpToString());
+
+        // the single resource is committed in one phase, recovery never needs any record of the transaction
+        List<Integer> journaledStatuses = new ArrayList<>();
+        List<XAResourceCommitEvent> commitEvents = new ArrayList<>();
+        for (Event event : orderedEvents) {
+            if (event instanceof JournalLogEvent journalLogEvent) {
+                journaledStatuses.add(journalLogEvent.getStatus());
+            } else if (event instanceof XAResourceCommitEvent commitEvent) {
+                commitEvents.add(commitEvent);
+            }
+        }
+        assertEquals(new ArrayList<Integer>(), journaledStatuses);
+        assertEquals(1, commitEvents.size());
+        assertTrue(commitEvents.get(0).isOnePhase());
+        assertEquals(0, ((MockJournal) TransactionManagerServices.getJournal()).getForceCount());
+        // ACTIVE, PREPARING, PREPARED, COMMITTING and COMMITTED
+        assertEquals(0L, tm.getJournaledStatusChangeCount());
+        assertEquals(5L, tm.getSkippedStatusChangeCount());
+    }
+
+    @Test
+    public void testSkipSingleResourceJournalingTwoResources() throws Exception {
+        Thread.currentThread().setName("testSkipSingleResourceJournalingTwoResources");
+        BitronixTransactionManager tm = restartWithSkipSingleResourceJournaling();
+        tm.begin();
+
+        Connection connection1 = poolingDataSource1.getConnection();
+        connection1.createStatement();
+        Connection connection2 = poolingDataSource2.getConnection();
+        connection2.createStatement();
+        connection1.close();
+        connection2.close();
+
+        tm.commit();
+
+        // check flow
+        List<? extends Event> orderedEvents = EventRecorder.getOrderedEvents();
+        log.info(EventRecorder.dumpToString());
+
+        // only the ACTIVE status is not journaled as no resource was enlisted yet, two phase commit is journaled as usual
+        List<Integer> journaledStatuses = new ArrayList<>();
+        int prepareCount = 0;
+        for (Event event : orderedEvents) {
+            if (event instanceof JournalLogEvent journalLogEvent) {
+                journaledStatuses.add(journalLogEvent.getStatus());
+            } else if (event instanceof XAResourcePrepareEvent) {
+                prepareCount++;
+            }
+        }
+        assertEquals(Arrays.asList(Status.STATUS_PREPARING, Status.STATUS_PREPARED, Status.STATUS_COMMITTING, Status.STATUS_COMMITTED), journaledStatuses);
+        assertEquals(2, prepareCount);
+        // the COMMITTING record is forced
+        assertEquals(1, ((MockJournal) TransactionManagerServices.getJournal()).getForceCount());
+        assertEquals(4L, tm.getJournaledStatusChangeCount());
+        assertEquals(1L, tm.getSkippedStatusChangeCount());
+    }
+
+    private BitronixTransactionManager restartWithSkipSingleResourceJournaling() throws Exception {
+        // shutting down clears the services, the configuration and the mock journal included
+        TransactionManagerServices.getTransactionManager().shutdown();
+        TransactionManagerServices.getConfiguration().setGracefulShutdownInterval(2);
+        TransactionManagerServices.getConfiguration().setSkipSingleResourceJournaling(true);
+        Field field = TransactionManagerServices.class.getDeclaredField("journalRef");
+        field.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        AtomicReference<Journal> journalRef = (AtomicReference<Journal>) field.get(TransactionManagerServices.class);
+        journalRef.set(new MockJournal());
+        BitronixTransactionManager tm = TransactionManagerServices.getTransactionManager();
+        EventRecorder.clear();
+        return tm;
+    }
+
     @Test
     public void testOrderedCommitResources() throws Exception {
         Thread.currentThread().setName("testOrderedCommitResources");
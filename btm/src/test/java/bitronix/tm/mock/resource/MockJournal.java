@@ -35,6 +35,7 @@ import java.util.Set;
 public class MockJournal implements Journal {
 
     private Map<Uid, JournalRecord> danglingRecords;
+    private int forceCount;
 
     private EventRecorder getEventRecorder() {
         return EventRecorder.getEventRecorder(this);
@@ -64,6 +65,11 @@ public class MockJournal implements Journal {
 
     @Override
     public void force() throws IOException {
+        forceCount++;
+    }
+
+    public int getForceCount() {
+        return forceCount;
     }
 
     @Override
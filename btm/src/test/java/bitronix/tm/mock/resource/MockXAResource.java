@@ -47,6 +47,7 @@ public class MockXAResource implements XAResource {
     private RuntimeException prepareRuntimeException;
     private XAException recoverException;
     private long recoveryDelay;
+    private long prepareDelay;
 
     public MockXAResource(MockitoXADataSource xads) {
         this.xads = xads;
@@ -56,6 +57,10 @@ public class MockXAResource implements XAResource {
         this.recoveryDelay = recoveryDelay;
     }
 
+    public void setPrepareDelay(long prepareDelay) {
+        this.prepareDelay = prepareDelay;
+    }
+
     public void setPrepareRc(int prepareRc) {
         this.prepareRc = prepareRc;
     }
@@ -104,6 +109,13 @@ public class MockXAResource implements XAResource {
     }
 
     public int prepare(Xid xid) throws XAException {
+        if (prepareDelay > 0) {
+            try {
+                Thread.sleep(prepareDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         if (prepareException != null) {
             getEventRecorder().addEvent(new XAResourcePrepareEvent(this, prepareException, xid, -1));
             prepareException.fillInStackTrace();
@@ -21,6 +21,7 @@ import bitronix.tm.utils.Uid;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javax.transaction.xa.XAResource;
 
 /**
@@ -69,6 +70,16 @@ public class DummyResourceHolder implements XAResourceHolder<DummyResourceHolder
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public void setInFlightCall(CompletableFuture<Void> inFlightCall) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public CompletableFuture<Void> getInFlightCall() {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public State getState() {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -29,9 +29,11 @@ import bitronix.tm.mock.resource.MockJournal;
 import bitronix.tm.mock.resource.MockXAResource;
 import bitronix.tm.mock.resource.jdbc.MockDriver;
 import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
+import bitronix.tm.resource.jdbc.JdbcPooledConnection;
 import bitronix.tm.resource.jdbc.PooledConnectionProxy;
 import bitronix.tm.resource.jdbc.PoolingDataSource;
 import bitronix.tm.resource.jdbc.lrc.LrcXADataSource;
+import bitronix.tm.twopc.executor.AsyncExecutor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -44,6 +46,7 @@ import jakarta.transaction.Status;
 import javax.transaction.xa.XAException;
 import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -63,6 +66,110 @@ public class Phase1FailureTest {
     private PoolingDataSource poolingDataSourceLrc;
     private BitronixTransactionManager tm;
 
+    /**
+     * Test scenario:
+     *
+     * XAResources: 2
+     * TX timeout: 10s
+     * TX resolution: rollback
+     *
+     * XAResource 1 resolution: successful prepare
+     * XAResource 2 resolution: prepare takes 3s, longer than its 1s prepare timeout
+     *
+     * Expected outcome:
+     *   TM stops waiting for resource 2 after 1s, considers its prepare failed and rolls back resource 1 without
+     *   waiting for the prepare to finish. Resource 2 is left to the recoverer as rolling it back would run
+     *   concurrently with its prepare.
+     * Expected TM events:
+     *  1 XAResourcePrepareEvent, 1 XAResourceRollbackEvent, then 1 late XAResourcePrepareEvent
+     * @throws Exception if any error happens.
+     */
+    @Test
+    public void testPrepareTimeout() throws Exception {
+        // deadlines require asynchronous 2PC, the configuration gets cleared again by the shutdown in tearDown()
+        tm.shutdown();
+        TransactionManagerServices.getConfiguration().setAsynchronous2Pc(true);
+        installMockJournal();
+        tm = TransactionManagerServices.getTransactionManager();
+        assertEquals(AsyncExecutor.class, TransactionManagerServices.getExecutor().getClass());
+        poolingDataSource2.setTwoPcPrepareTimeout(1);
+
+        tm.begin();
+        tm.setTransactionTimeout(10); // TX must not timeout
+
+        Connection connection1 = poolingDataSource1.getConnection();
+        connection1.createStatement();
+
+        Connection connection2 = poolingDataSource2.getConnection();
+        PooledConnectionProxy handle2 = (PooledConnectionProxy) connection2;
+        XAConnection xaConnection2 = (XAConnection) AbstractMockJdbcTest.getWrappedXAConnectionOf(handle2.getPooledConnection());
+        connection2.createStatement();
+
+        MockXAResource mockXAResource2 = (MockXAResource) xaConnection2.getXAResource();
+        mockXAResource2.setPrepareDelay(3000);
+        JdbcPooledConnection timedOutConnection = handle2.getPooledConnection();
+        connection2.close();
+
+        long before = System.currentTimeMillis();
+        try {
+            tm.commit();
+            fail("TM should have thrown an exception");
+        } catch (RollbackException ex) {
+            assertTrue(ex.getCause().getCause().getMessage().contains("did not complete prepare within 1s"), ex.getCause().getCause().getMessage());
+        }
+        assertTrue(System.currentTimeMillis() - before < 3000, "TM should not have waited for the prepare to finish");
+
+        log.info(EventRecorder.dumpToString());
+
+        int prepareEventCount = 0;
+        int rollbackEventCount = 0;
+        for (Event event : EventRecorder.getOrderedEvents()) {
+            if (event instanceof XAResourceRollbackEvent)
+                rollbackEventCount++;
+
+            if (event instanceof XAResourcePrepareEvent)
+                prepareEventCount++;
+        }
+        assertEquals(1, prepareEventCount, "TM should have logged 1 prepare before giving up on resource 2");
+        assertEquals(1, rollbackEventCount, "TM should only have rolled back resource 1");
+
+        // the connection of resource 2 must not be handed out while its prepare is still running
+        List<Connection> otherConnections = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Connection connection = poolingDataSource2.getConnection();
+            otherConnections.add(connection);
+            assertNotSame(timedOutConnection, ((PooledConnectionProxy) connection).getPooledConnection());
+        }
+        assertEquals(0, poolingDataSource2.getInPoolSize());
+        assertEquals(1, countEvents(XAResourcePrepareEvent.class), "resource 2 should still be preparing");
+
+        // the late prepare must finish within this test, its vote is ignored
+        long deadline = System.currentTimeMillis() + 10000L;
+        while ((countEvents(XAResourcePrepareEvent.class) < 2 || poolingDataSource2.getInPoolSize() < 1) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, countEvents(XAResourcePrepareEvent.class), "resource 2 should have finished its prepare");
+        assertEquals(1, countEvents(XAResourceRollbackEvent.class), "TM should not have rolled back resource 2");
+        // then its connection goes back to the pool
+        assertEquals(1, poolingDataSource2.getInPoolSize());
+        Connection connection = poolingDataSource2.getConnection();
+        assertSame(timedOutConnection, ((PooledConnectionProxy) connection).getPooledConnection());
+        connection.close();
+        for (Connection otherConnection : otherConnections) {
+            otherConnection.close();
+        }
+    }
+
+    private static int countEvents(Class<? extends Event> eventClass) {
+        int count = 0;
+        for (Event event : EventRecorder.getOrderedEvents()) {
+            if (eventClass.isInstance(event)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Test scenario:
      *
@@ -293,12 +400,7 @@ public class Phase1FailureTest {
     protected void setUp() throws Exception {
         EventRecorder.clear();
 
-        // change disk journal into mock journal
-        Field field = TransactionManagerServices.class.getDeclaredField("journalRef");
-        field.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        AtomicReference<Journal> journalRef = (AtomicReference<Journal>) field.get(TransactionManagerServices.class);
-        journalRef.set(new MockJournal());
+        installMockJournal();
 
         poolingDataSource1 = new PoolingDataSource();
         poolingDataSource1.setClassName(MockitoXADataSource.class.getName());
@@ -338,6 +440,15 @@ public class Phase1FailureTest {
         tm = TransactionManagerServices.getTransactionManager();
     }
 
+    private static void installMockJournal() throws Exception {
+        // change disk journal into mock journal
+        Field field = TransactionManagerServices.class.getDeclaredField("journalRef");
+        field.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        AtomicReference<Journal> journalRef = (AtomicReference<Journal>) field.get(TransactionManagerServices.class);
+        journalRef.set(new MockJournal());
+    }
+
     @AfterEach
     protected void tearDown() throws Exception {
         poolingDataSource1.close();
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc.executor;
+
+import bitronix.tm.TransactionManagerServices;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class BoundedExecutorTest {
+
+    private BoundedExecutor executor;
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        TransactionManagerServices.getConfiguration()
+                .setAsyncExecutorCoreThreads(1)
+                .setAsyncExecutorMaxThreads(2)
+                .setAsyncExecutorQueueSize(1);
+        executor = new BoundedExecutor();
+    }
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        TransactionManagerServices.getConfiguration()
+                .setAsyncExecutorCoreThreads(8)
+                .setAsyncExecutorMaxThreads(64)
+                .setAsyncExecutorQueueSize(1024);
+    }
+
+    @Test
+    public void testSaturation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        // one job on the core thread, one queued, one on the extra thread
+        for (int i = 0; i < 3; i++) {
+            futures.add(executor.submit(new BlockingJob(Job.Phase.COMMIT, release)));
+        }
+        assertEquals(2, executor.getPoolSize());
+        assertEquals(1, executor.getQueueDepth());
+        assertEquals(0L, executor.getRejectedSubmissionCount());
+
+        // the pool is saturated, the submitting thread executes the job itself
+        String[] threadName = new String[1];
+        CompletableFuture<Void> callerRun = executor.submit(new Job(null) {
+            @Override
+            public Phase getPhase() {
+                return Phase.ROLLBACK;
+            }
+
+            @Override
+            protected void execute() {
+                threadName[0] = Thread.currentThread().getName();
+            }
+        });
+        assertTrue(callerRun.isDone());
+        assertEquals(Thread.currentThread().getName(), threadName[0]);
+        assertEquals(1L, executor.getRejectedSubmissionCount());
+        assertEquals(1L, executor.getRollbackJobCount());
+
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(3L, executor.getCommitJobCount());
+        assertTrue(executor.getCommitJobMaxLatency() >= executor.getCommitJobAverageLatency());
+        assertEquals(0L, executor.getPrepareJobCount());
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void testSaturationWithTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(executor.submit(new BlockingJob(Job.Phase.PREPARE, release)));
+        }
+
+        // a job with a timeout must not run on the submitting thread, which could then not stop waiting for it
+        CountDownLatch timedRelease = new CountDownLatch(1);
+        String[] threadName = new String[1];
+        CompletableFuture<Void> timed = executor.submit(new BlockingJob(Job.Phase.PREPARE, timedRelease) {
+            @Override
+            public int getTimeout() {
+                return 1;
+            }
+
+            @Override
+            protected void execute() {
+                threadName[0] = Thread.currentThread().getName();
+                super.execute();
+            }
+        });
+        assertFalse(timed.isDone());
+        assertEquals(1L, executor.getRejectedSubmissionCount());
+
+        timedRelease.countDown();
+        timed.get(10, TimeUnit.SECONDS);
+        assertTrue(threadName[0].startsWith("bounded-executor-overflow-"), "job executed by " + threadName[0]);
+
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(4L, executor.getPrepareJobCount());
+    }
+
+    @Test
+    public void testJobWithoutPhase() throws Exception {
+        // jobs not overriding getPhase() run but are not accounted to any 2PC phase
+        boolean[] executed = new boolean[1];
+        executor.submit(new Job(null) {
+            @Override
+            protected void execute() {
+                executed[0] = true;
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertTrue(executed[0]);
+        assertEquals(0L, executor.getPrepareJobCount());
+        assertEquals(0L, executor.getCommitJobCount());
+        assertEquals(0L, executor.getRollbackJobCount());
+    }
+
+    private static class BlockingJob extends Job {
+        private final Phase phase;
+        private final CountDownLatch release;
+
+        private BlockingJob(Phase phase, CountDownLatch release) {
+            super(null);
+            this.phase = phase;
+            this.release = release;
+        }
+
+        @Override
+        public Phase getPhase() {
+            return phase;
+        }
+
+        @Override
+        protected void execute() {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc.executor;
+
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * @author Ludovic Orban
+ */
+public class VirtualThreadExecutorTest {
+
+    @Test
+    public void testVirtualThreadLookup() throws Exception {
+        // virtual threads are a preview feature of Java 19 and 20, they may or may not be enabled there
+        int version = Runtime.version().feature();
+        assumeTrue(version < 19 || version >= 21, "virtual threads are a preview feature of Java " + version);
+
+        ExecutorService executorService = VirtualThreadExecutor.createVirtualThreadExecutorService();
+        try {
+            assertEquals(version >= 21, executorService != null);
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+        }
+
+        VirtualThreadExecutor executor = new VirtualThreadExecutor();
+        try {
+            assertEquals(version >= 21, executor.isVirtual());
+            Thread thread = runJob(executor);
+            assertEquals(executor.isVirtual(), Thread.class.getMethod("isVirtual").invoke(thread));
+        } catch (NoSuchMethodException ex) {
+            // Thread.isVirtual() does not exist before Java 19
+            assertFalse(executor.isVirtual());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFallbackToAsyncExecutor() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(() -> null);
+        try {
+            assertFalse(executor.isVirtual());
+            Thread thread = runJob(executor);
+            assertTrue(thread.getName().startsWith("async-executor-pool-"), "job executed by " + thread.getName());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSelectedByConfiguration() throws Exception {
+        // shutting down clears the services, the configuration included
+        TransactionManagerServices.getTransactionManager().shutdown();
+        System.setProperty("bitronix.tm.2pc.async", "true");
+        System.setProperty("bitronix.tm.2pc.asyncExecutor", "virtual");
+        BitronixTransactionManager btm = null;
+        try {
+            btm = TransactionManagerServices.getTransactionManager();
+            assertEquals(VirtualThreadExecutor.class, TransactionManagerServices.getExecutor().getClass());
+
+            btm.begin();
+            btm.commit();
+        } finally {
+            System.clearProperty("bitronix.tm.2pc.async");
+            System.clearProperty("bitronix.tm.2pc.asyncExecutor");
+            if (btm != null) {
+                btm.shutdown();
+            }
+        }
+    }
+
+    private static Thread runJob(Executor executor) throws Exception {
+        Thread[] thread = new Thread[1];
+        executor.submit(new Job(null) {
+            @Override
+            protected void execute() {
+                thread[0] = Thread.currentThread();
+            }
+        }).get(10, TimeUnit.SECONDS);
+        return thread[0];
+    }
+
+}